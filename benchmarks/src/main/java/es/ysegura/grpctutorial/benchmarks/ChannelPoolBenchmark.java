@@ -0,0 +1,101 @@
+package es.ysegura.grpctutorial.benchmarks;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.client.BalancingPolicy;
+import es.ysegura.grpctutorial.client.ChannelPool;
+import es.ysegura.grpctutorial.protobuff.*;
+import es.ysegura.grpctutorial.server.RouteGuideServerRunner;
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GetFeature and ListFeatures from 64 client threads through a {@link ChannelPool} over several
+ * localhost Netty servers holding the same features. {@code servers=1, connectionsPerServer=1} is the
+ * plain single-connection client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class ChannelPoolBenchmark {
+
+    @Param({"1", "3"})
+    public int servers;
+
+    @Param({"1", "4"})
+    public int connectionsPerServer;
+
+    @Param({"ROUND_ROBIN", "LEAST_OUTSTANDING"})
+    public BalancingPolicy policy;
+
+    @Param({"100000"})
+    public int features;
+
+    private final List<RouteGuideServerRunner> runners = new ArrayList<>();
+    private ChannelPool pool;
+    private RouteGuideGrpc.RouteGuideBlockingStub blockingStub;
+
+    private Point[] points;
+    private Rectangle area;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Feature> database = SyntheticFeatures.generate(features);
+        List<String> targets = new ArrayList<>();
+        for (int i = 0; i < servers; i++) {
+            RouteGuideServerRunner server = new RouteGuideServerRunner(
+                    Grpc.newServerBuilderForPort(0, InsecureServerCredentials.create()), 0, database, RouteGuideConfig.defaults());
+            server.start();
+            runners.add(server);
+            targets.add("localhost:" + server.getPort());
+        }
+        pool = ChannelPool.forTargets(targets, connectionsPerServer, policy);
+        blockingStub = RouteGuideGrpc.newBlockingStub(pool);
+
+        Random random = new Random(1);
+        points = new Point[1024];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = database.get(random.nextInt(database.size())).getLocation();
+        }
+        int lat = SyntheticFeatures.MIN_LAT + SyntheticFeatures.SPAN / 2;
+        int lon = SyntheticFeatures.MIN_LON + SyntheticFeatures.SPAN / 2;
+        int side = SyntheticFeatures.SPAN / 20;
+        area = Rectangle.newBuilder()
+                .setLo(Point.newBuilder().setLatitude(lat).setLongitude(lon))
+                .setHi(Point.newBuilder().setLatitude(lat + side).setLongitude(lon + side))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pool.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        for (RouteGuideServerRunner server : runners) {
+            server.stop();
+        }
+    }
+
+    @Benchmark
+    public Feature getFeature() {
+        return blockingStub.getFeature(points[next.getAndIncrement() & (points.length - 1)]);
+    }
+
+    @Benchmark
+    public void listFeatures(Blackhole blackhole) {
+        Iterator<Feature> result = blockingStub.listFeatures(area);
+        result.forEachRemaining(blackhole::consume);
+    }
+}
@@ -0,0 +1,89 @@
+package es.ysegura.grpctutorial.benchmarks;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.client.RouteGuideClient;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.server.RouteGuideServerRunner;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.ManagedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GetFeature calls one client thread can make over localhost Netty: the blocking, logging
+ * {@link RouteGuideClient#getFeature(int, int)} against {@link RouteGuideClient#getFeatureAsync(Point)}
+ * with {@value #IN_FLIGHT} calls in flight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientApiBenchmark {
+
+    private static final int IN_FLIGHT = 256;
+
+    @Param({"100000"})
+    public int features;
+
+    private RouteGuideServerRunner server;
+    private ManagedChannel channel;
+    private RouteGuideClient client;
+    private Point[] points;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<Feature> database = SyntheticFeatures.generate(features);
+        server = new RouteGuideServerRunner(Grpc.newServerBuilderForPort(0, InsecureServerCredentials.create()), 0,
+                database, RouteGuideConfig.defaults());
+        server.start();
+        channel = Grpc.newChannelBuilderForAddress("localhost", server.getPort(), InsecureChannelCredentials.create()).build();
+        client = new RouteGuideClient(channel);
+
+        Random random = new Random(1);
+        points = new Point[1024];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = database.get(random.nextInt(database.size())).getLocation();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        client.close();
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.stop();
+    }
+
+    private Point nextPoint() {
+        return points[next++ & (points.length - 1)];
+    }
+
+    @Benchmark
+    public Feature blockingGetFeature() {
+        Point point = nextPoint();
+        return client.getFeature(point.getLatitude(), point.getLongitude());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IN_FLIGHT)
+    public void asyncGetFeature(Blackhole blackhole) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Feature>[] calls = new CompletableFuture[IN_FLIGHT];
+        for (int i = 0; i < IN_FLIGHT; i++) {
+            calls[i] = client.getFeatureAsync(nextPoint());
+        }
+        for (CompletableFuture<Feature> call : calls) {
+            blackhole.consume(call.join());
+        }
+    }
+}
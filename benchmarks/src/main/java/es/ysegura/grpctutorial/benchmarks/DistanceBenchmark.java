@@ -0,0 +1,63 @@
+package es.ysegura.grpctutorial.benchmarks;
+
+import es.ysegura.grpctutorial.DistanceMode;
+import es.ysegura.grpctutorial.RouteDistance;
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Point;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of adding up a route of {@value #POINTS} points: {@link RouteGuideUtil#calcDistance} per pair
+ * against the cached {@link RouteDistance} in each {@link DistanceMode}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+    private static final int POINTS = 10_000;
+
+    @Param({"HAVERSINE", "FAST_HAVERSINE", "EQUIRECTANGULAR"})
+    public DistanceMode mode;
+
+    private Point[] route;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        route = new Point[POINTS];
+        int lat = 407838351;
+        int lon = -746143763;
+        for (int i = 0; i < POINTS; i++) {
+            // Traza tipo GPS: saltos de unos pocos cientos de metros
+            lat += random.nextInt(20_000) - 10_000;
+            lon += random.nextInt(20_000) - 10_000;
+            route[i] = Point.newBuilder().setLatitude(lat).setLongitude(lon).build();
+        }
+    }
+
+    @Benchmark
+    public long calcDistance() {
+        long total = 0;
+        for (int i = 1; i < route.length; i++) {
+            total += RouteGuideUtil.calcDistance(route[i - 1], route[i]);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long routeDistance() {
+        RouteDistance routeDistance = new RouteDistance(mode);
+        long total = 0;
+        for (Point point : route) {
+            total += routeDistance.next(point);
+        }
+        return total;
+    }
+}
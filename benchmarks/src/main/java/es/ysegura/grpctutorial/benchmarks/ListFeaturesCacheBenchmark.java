@@ -0,0 +1,78 @@
+package es.ysegura.grpctutorial.benchmarks;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.protobuff.*;
+import es.ysegura.grpctutorial.server.RouteGuideServerRunner;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ListFeatures over localhost Netty for a dashboard that keeps asking for the same {@value #VIEWPORTS}
+ * viewports, with and without {@code routeguide.list-features-cache-bytes}. Over a real transport the
+ * uncached path encodes every Feature; the in-process transport skips encoding, so it would hide what
+ * the cache saves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListFeaturesCacheBenchmark {
+
+    private static final int VIEWPORTS = 8;
+
+    @Param({"0", "67108864"})
+    public long cacheBytes;
+
+    // Lado de cada viewport como fracción de la zona: 1/100 son unas decenas de features con 1M
+    @Param({"100", "20"})
+    public int viewportDivisor;
+
+    private RouteGuideServerRunner server;
+    private ManagedChannel channel;
+    private RouteGuideGrpc.RouteGuideBlockingStub blockingStub;
+    private Rectangle[] viewports;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Feature> database = SyntheticFeatures.generate(1_000_000);
+        RouteGuideConfig config = RouteGuideConfig.builder().listFeaturesCacheBytes(cacheBytes).build();
+        server = new RouteGuideServerRunner(0, SyntheticFeatures.writeJson(database).toUri().toURL(), config);
+        server.start();
+        channel = Grpc.newChannelBuilderForAddress("localhost", server.getPort(), InsecureChannelCredentials.create()).build();
+        blockingStub = RouteGuideGrpc.newBlockingStub(channel);
+
+        Random random = new Random(1);
+        int side = SyntheticFeatures.SPAN / viewportDivisor;
+        viewports = new Rectangle[VIEWPORTS];
+        for (int i = 0; i < viewports.length; i++) {
+            int lat = SyntheticFeatures.MIN_LAT + random.nextInt(SyntheticFeatures.SPAN - side);
+            int lon = SyntheticFeatures.MIN_LON + random.nextInt(SyntheticFeatures.SPAN - side);
+            viewports[i] = Rectangle.newBuilder()
+                    .setLo(Point.newBuilder().setLatitude(lat).setLongitude(lon))
+                    .setHi(Point.newBuilder().setLatitude(lat + side).setLongitude(lon + side))
+                    .build();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.stop();
+    }
+
+    @Benchmark
+    public void listFeatures(Blackhole blackhole) {
+        blockingStub.listFeatures(viewports[next++ & (VIEWPORTS - 1)]).forEachRemaining(blackhole::consume);
+    }
+}
@@ -0,0 +1,145 @@
+package es.ysegura.grpctutorial.benchmarks;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.protobuff.*;
+import es.ysegura.grpctutorial.server.RouteGuideServerRunner;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * gRPC's default Netty transport against the tuned profile of {@code RouteGuideConfig.nettyTuned}
+ * (epoll, sized event loops, pooled direct buffers, larger flow-control window), over localhost with
+ * 64 client threads. The large ListFeatures area streams tens of thousands of features per call, which
+ * is where the flow-control window shows. {@code -p preSerializedFeatures=false,true} compares both
+ * transports with GetFeature and ListFeatures answered from bytes encoded at load time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class NettyTransportBenchmark {
+
+    private static final int ROUTE_POINTS = 50;
+
+    @Param({"false", "true"})
+    public boolean tuned;
+
+    @Param({"false"})
+    public boolean preSerializedFeatures;
+
+    @Param({"1000000"})
+    public int features;
+
+    private RouteGuideServerRunner server;
+    private ManagedChannel channel;
+    private RouteGuideGrpc.RouteGuideBlockingStub blockingStub;
+    private RouteGuideGrpc.RouteGuideStub asyncStub;
+
+    private Point[] points;
+    private Rectangle smallArea;
+    private Rectangle largeArea;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Feature> database = SyntheticFeatures.generate(features);
+        RouteGuideConfig config = RouteGuideConfig.builder()
+                .nettyTuned(tuned)
+                .preSerializedFeatures(preSerializedFeatures)
+                .build();
+        server = new RouteGuideServerRunner(0, SyntheticFeatures.writeJson(database).toUri().toURL(), config);
+        server.start();
+        channel = Grpc.newChannelBuilderForAddress("localhost", server.getPort(), InsecureChannelCredentials.create()).build();
+        blockingStub = RouteGuideGrpc.newBlockingStub(channel);
+        asyncStub = RouteGuideGrpc.newStub(channel);
+
+        Random random = new Random(1);
+        points = new Point[1024];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = database.get(random.nextInt(database.size())).getLocation();
+        }
+        smallArea = area(SyntheticFeatures.SPAN / 100);
+        largeArea = area(SyntheticFeatures.SPAN / 5);
+    }
+
+    private static Rectangle area(int side) {
+        int lat = SyntheticFeatures.MIN_LAT + SyntheticFeatures.SPAN / 2;
+        int lon = SyntheticFeatures.MIN_LON + SyntheticFeatures.SPAN / 2;
+        return Rectangle.newBuilder()
+                .setLo(Point.newBuilder().setLatitude(lat).setLongitude(lon))
+                .setHi(Point.newBuilder().setLatitude(lat + side).setLongitude(lon + side))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.stop();
+    }
+
+    private Point nextPoint() {
+        return points[next.getAndIncrement() & (points.length - 1)];
+    }
+
+    @Benchmark
+    public Feature getFeature() {
+        return blockingStub.getFeature(nextPoint());
+    }
+
+    @Benchmark
+    public void listFeaturesSmallArea(Blackhole blackhole) {
+        Iterator<Feature> result = blockingStub.listFeatures(smallArea);
+        result.forEachRemaining(blackhole::consume);
+    }
+
+    @Benchmark
+    public void listFeaturesLargeArea(Blackhole blackhole) {
+        Iterator<Feature> result = blockingStub.listFeatures(largeArea);
+        result.forEachRemaining(blackhole::consume);
+    }
+
+    @Benchmark
+    public int recordRoute() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicInteger featureCount = new AtomicInteger();
+        StreamObserver<Point> requests = asyncStub.recordRoute(new StreamObserver<>() {
+            @Override
+            public void onNext(RouteSummary summary) {
+                featureCount.set(summary.getFeatureCount());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                done.countDown();
+            }
+        });
+        for (int i = 0; i < ROUTE_POINTS; i++) {
+            requests.onNext(nextPoint());
+        }
+        requests.onCompleted();
+        if (!done.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("RPC did not finish");
+        }
+        return featureCount.get();
+    }
+}
@@ -0,0 +1,136 @@
+package es.ysegura.grpctutorial.benchmarks;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.client.PointBatches;
+import es.ysegura.grpctutorial.protobuff.*;
+import es.ysegura.grpctutorial.service.RouteGuideService;
+import es.ysegura.grpctutorial.store.InMemoryFeatureStore;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest of one {@value #ROUTE_POINTS}-point GPS trace over the in-process transport: RecordRoute with
+ * one message per point against RecordRouteBatched with {@link #batchSize} points per message, with
+ * exact feature matching and with {@code routeguide.route.feature-radius-meters}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordRouteBenchmark {
+
+    private static final int ROUTE_POINTS = 100_000;
+
+    @Param({"0", "50"})
+    public int featureRadius;
+
+    @Param({"1024", "32768"})
+    public int batchSize;
+
+    private Server server;
+    private ManagedChannel channel;
+    private RouteGuideGrpc.RouteGuideStub asyncStub;
+    private List<Point> route;
+    private List<PointBatch> batches;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Feature> database = SyntheticFeatures.generate(100_000);
+        RouteGuideConfig config = RouteGuideConfig.builder().routeFeatureRadius(featureRadius).build();
+        RouteGuideService service = new RouteGuideService(
+                new InMemoryFeatureStore(database, config.getSpatialIndexType()), config);
+
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).directExecutor()
+                .addService(service.serviceDefinition())
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        asyncStub = RouteGuideGrpc.newStub(channel);
+
+        // Traza tipo GPS: saltos de unos pocos metros desde el centro de la zona
+        Random random = new Random(42);
+        route = new ArrayList<>(ROUTE_POINTS);
+        int lat = SyntheticFeatures.MIN_LAT + SyntheticFeatures.SPAN / 2;
+        int lon = SyntheticFeatures.MIN_LON + SyntheticFeatures.SPAN / 2;
+        for (int i = 0; i < ROUTE_POINTS; i++) {
+            lat += random.nextInt(1_001) - 500;
+            lon += random.nextInt(1_001) - 500;
+            route.add(Point.newBuilder().setLatitude(lat).setLongitude(lon).build());
+        }
+        batches = PointBatches.encode(route, batchSize);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public RouteSummary recordRoute() throws InterruptedException {
+        SummaryObserver responses = new SummaryObserver();
+        StreamObserver<Point> requests = asyncStub.recordRoute(responses);
+        route.forEach(requests::onNext);
+        requests.onCompleted();
+        return responses.await();
+    }
+
+    @Benchmark
+    public RouteSummary recordRouteBatched() throws InterruptedException {
+        SummaryObserver responses = new SummaryObserver();
+        StreamObserver<PointBatch> requests = asyncStub.recordRouteBatched(responses);
+        batches.forEach(requests::onNext);
+        requests.onCompleted();
+        return responses.await();
+    }
+
+    @Benchmark
+    public RouteSummary recordRouteBatchedWithEncoding() throws InterruptedException {
+        SummaryObserver responses = new SummaryObserver();
+        StreamObserver<PointBatch> requests = asyncStub.recordRouteBatched(responses);
+        PointBatches.encode(route, batchSize).forEach(requests::onNext);
+        requests.onCompleted();
+        return responses.await();
+    }
+
+    private static final class SummaryObserver implements StreamObserver<RouteSummary> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private RouteSummary summary;
+
+        @Override
+        public void onNext(RouteSummary value) {
+            summary = value;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            done.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            done.countDown();
+        }
+
+        RouteSummary await() throws InterruptedException {
+            if (!done.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("RPC did not finish");
+            }
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package es.ysegura.grpctutorial.benchmarks;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.protobuff.*;
+import es.ysegura.grpctutorial.service.RouteGuideService;
+import es.ysegura.grpctutorial.store.InMemoryFeatureStore;
+import es.ysegura.grpctutorial.store.SpatialIndexType;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The four RouteGuide RPCs end to end over the in-process transport, against synthetic databases
+ * of increasing size. Server and channel use {@code directExecutor()}, so the numbers measure the
+ * service and the stubs rather than thread hand-offs.
+ * <p>
+ * The 10M database needs a large heap, hence the {@code -Xmx} below.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class RouteGuideServiceBenchmark {
+
+    private static final int ROUTE_POINTS = 100;
+    private static final int CHAT_NOTES = 20;
+
+    @Param({"1000", "100000", "10000000"})
+    public int features;
+
+    @Param({"GRID"})
+    public SpatialIndexType spatialIndex;
+
+    // routeguide.list-features-cache-bytes; 0 desactiva la caché de ListFeatures
+    @Param({"0"})
+    public long listFeaturesCacheBytes;
+
+    private Server server;
+    private ManagedChannel channel;
+    private RouteGuideGrpc.RouteGuideBlockingStub blockingStub;
+    private RouteGuideGrpc.RouteGuideStub asyncStub;
+
+    private Point[] hits;
+    private Point[] misses;
+    private Rectangle smallArea;
+    private Rectangle largeArea;
+    private Point[] route;
+    private RouteNote[] notes;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Feature> database = SyntheticFeatures.generate(features);
+        RouteGuideConfig config = RouteGuideConfig.builder()
+                .spatialIndexType(spatialIndex)
+                .listFeaturesCacheBytes(listFeaturesCacheBytes)
+                .build();
+        RouteGuideService service = new RouteGuideService(
+                new InMemoryFeatureStore(database, config.getSpatialIndexType()), config);
+
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).directExecutor()
+                .addService(service.serviceDefinition())
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        blockingStub = RouteGuideGrpc.newBlockingStub(channel);
+        asyncStub = RouteGuideGrpc.newStub(channel);
+
+        Random random = new Random(1);
+        hits = new Point[1024];
+        misses = new Point[1024];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = database.get(random.nextInt(database.size())).getLocation();
+            misses[i] = Point.newBuilder().setLatitude(random.nextInt(1000)).setLongitude(random.nextInt(1000)).build();
+        }
+        // Unas 0.01% y 1% de la superficie total, respectivamente
+        smallArea = area(SyntheticFeatures.MIN_LAT + SyntheticFeatures.SPAN / 2, SyntheticFeatures.MIN_LON + SyntheticFeatures.SPAN / 2, SyntheticFeatures.SPAN / 100);
+        largeArea = area(SyntheticFeatures.MIN_LAT + SyntheticFeatures.SPAN / 2, SyntheticFeatures.MIN_LON + SyntheticFeatures.SPAN / 2, SyntheticFeatures.SPAN / 10);
+        route = new Point[ROUTE_POINTS];
+        for (int i = 0; i < route.length; i++) {
+            route[i] = i % 2 == 0 ? hits[i] : SyntheticFeatures.randomPoint(random);
+        }
+        notes = new RouteNote[CHAT_NOTES];
+        for (int i = 0; i < notes.length; i++) {
+            notes[i] = RouteNote.newBuilder().setLocation(hits[i % 4]).setMessage("note " + i).build();
+        }
+    }
+
+    private static Rectangle area(int lat, int lon, int side) {
+        return Rectangle.newBuilder()
+                .setLo(Point.newBuilder().setLatitude(lat).setLongitude(lon).build())
+                .setHi(Point.newBuilder().setLatitude(lat + side).setLongitude(lon + side).build())
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Feature getFeatureHit() {
+        return blockingStub.getFeature(hits[next++ & (hits.length - 1)]);
+    }
+
+    @Benchmark
+    public Feature getFeatureMiss() {
+        return blockingStub.getFeature(misses[next++ & (misses.length - 1)]);
+    }
+
+    @Benchmark
+    public NearestResponse findNearest() {
+        return blockingStub.findNearest(NearestRequest.newBuilder()
+                .setPoint(hits[next++ & (hits.length - 1)]).setK(10).build());
+    }
+
+    @Benchmark
+    public void listFeaturesSmallArea(Blackhole blackhole) {
+        Iterator<Feature> result = blockingStub.listFeatures(smallArea);
+        result.forEachRemaining(blackhole::consume);
+    }
+
+    @Benchmark
+    public void listFeaturesLargeArea(Blackhole blackhole) {
+        Iterator<Feature> result = blockingStub.listFeatures(largeArea);
+        result.forEachRemaining(blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUTE_POINTS)
+    public RouteSummary recordRoute() throws InterruptedException {
+        CollectingObserver<RouteSummary> responses = new CollectingObserver<>();
+        StreamObserver<Point> requests = asyncStub.recordRoute(responses);
+        for (Point point : route) {
+            requests.onNext(point);
+        }
+        requests.onCompleted();
+        responses.await();
+        return responses.last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHAT_NOTES)
+    public int routeChat() throws InterruptedException {
+        CollectingObserver<RouteNote> responses = new CollectingObserver<>();
+        StreamObserver<RouteNote> requests = asyncStub.routeChat(responses);
+        for (RouteNote note : notes) {
+            requests.onNext(note);
+        }
+        requests.onCompleted();
+        responses.await();
+        return responses.count;
+    }
+
+    private static final class CollectingObserver<T> implements StreamObserver<T> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private T last;
+        private int count;
+
+        @Override
+        public void onNext(T value) {
+            last = value;
+            count++;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            done.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            if (!done.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("RPC did not finish");
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package es.ysegura.grpctutorial.benchmarks;
+
+import com.google.protobuf.util.JsonFormat;
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.FeatureDatabase;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.store.FeatureSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmarks for the helpers in {@link RouteGuideUtil}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteGuideUtilBenchmark {
+
+    private Point[] points;
+    private Feature[] features;
+    private URL syntheticDatabase;
+    private URL syntheticSnapshot;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(3);
+        points = new Point[1024];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = SyntheticFeatures.randomPoint(random);
+        }
+        features = SyntheticFeatures.generate(1024).toArray(new Feature[0]);
+        List<Feature> synthetic = SyntheticFeatures.generate(100_000);
+        syntheticDatabase = SyntheticFeatures.writeJson(synthetic).toUri().toURL();
+        Path snapshot = Files.createTempFile("route_guide_db", ".bin");
+        snapshot.toFile().deleteOnExit();
+        FeatureSnapshot.write(synthetic, snapshot);
+        syntheticSnapshot = snapshot.toUri().toURL();
+    }
+
+    @Benchmark
+    public int calcDistance() {
+        int i = next++ & (points.length - 1);
+        return RouteGuideUtil.calcDistance(points[i], points[(i + 1) & (points.length - 1)]);
+    }
+
+    @Benchmark
+    public boolean exists() {
+        return RouteGuideUtil.exists(features[next++ & (features.length - 1)]);
+    }
+
+    @Benchmark
+    public long pack() {
+        return RouteGuideUtil.pack(points[next++ & (points.length - 1)]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Feature> parseDefaultFeatures() throws IOException {
+        return RouteGuideUtil.parseFeatures(RouteGuideUtil.getDefaultFeaturesFile());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Feature> parse100kFeatures() throws IOException {
+        return RouteGuideUtil.parseFeatures(syntheticDatabase);
+    }
+
+    /**
+     * The original {@code JsonFormat} loader, kept as the baseline for {@link #parse100kFeatures()}.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Feature> parse100kFeaturesJsonFormat() throws IOException {
+        try (Reader reader = new InputStreamReader(syntheticDatabase.openStream(), StandardCharsets.UTF_8)) {
+            FeatureDatabase.Builder database = FeatureDatabase.newBuilder();
+            JsonFormat.parser().merge(reader, database);
+            return database.getFeatureList();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Feature> read100kSnapshot() throws IOException {
+        return RouteGuideUtil.parseFeatures(syntheticSnapshot);
+    }
+}
@@ -0,0 +1,155 @@
+package es.ysegura.grpctutorial.benchmarks;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.protobuff.*;
+import es.ysegura.grpctutorial.server.RouteGuideServerRunner;
+import es.ysegura.grpctutorial.server.ServerExecutorMode;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The four RouteGuide RPCs over a real localhost Netty connection with 64 client threads, for each
+ * {@link ServerExecutorMode}. Throughput and the latency distribution are both reported, since the
+ * modes trade one for the other.
+ * <p>
+ * {@code VIRTUAL} needs Java 21 (or 19/20 with {@code -jvmArgsAppend --enable-preview}); on older
+ * JVMs that parameter fails in setup and the others still run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class ServerExecutorBenchmark {
+
+    private static final int ROUTE_POINTS = 50;
+    private static final int CHAT_NOTES = 10;
+
+    @Param({"DEFAULT", "FIXED", "DIRECT", "VIRTUAL"})
+    public ServerExecutorMode executor;
+
+    @Param({"100000"})
+    public int features;
+
+    private RouteGuideServerRunner server;
+    private ManagedChannel channel;
+    private RouteGuideGrpc.RouteGuideBlockingStub blockingStub;
+    private RouteGuideGrpc.RouteGuideStub asyncStub;
+
+    private Point[] points;
+    private Rectangle area;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Feature> database = SyntheticFeatures.generate(features);
+        RouteGuideConfig config = RouteGuideConfig.builder().serverExecutor(executor).build();
+        server = new RouteGuideServerRunner(
+                Grpc.newServerBuilderForPort(0, InsecureServerCredentials.create()), 0, database, config);
+        server.start();
+        channel = Grpc.newChannelBuilderForAddress("localhost", server.getPort(), InsecureChannelCredentials.create()).build();
+        blockingStub = RouteGuideGrpc.newBlockingStub(channel);
+        asyncStub = RouteGuideGrpc.newStub(channel);
+
+        Random random = new Random(1);
+        points = new Point[1024];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = i % 2 == 0
+                    ? database.get(random.nextInt(database.size())).getLocation()
+                    : SyntheticFeatures.randomPoint(random);
+        }
+        int lat = SyntheticFeatures.MIN_LAT + SyntheticFeatures.SPAN / 2;
+        int lon = SyntheticFeatures.MIN_LON + SyntheticFeatures.SPAN / 2;
+        int side = SyntheticFeatures.SPAN / 100;
+        area = Rectangle.newBuilder()
+                .setLo(Point.newBuilder().setLatitude(lat).setLongitude(lon))
+                .setHi(Point.newBuilder().setLatitude(lat + side).setLongitude(lon + side))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.stop();
+    }
+
+    private Point nextPoint() {
+        return points[next.getAndIncrement() & (points.length - 1)];
+    }
+
+    @Benchmark
+    public Feature getFeature() {
+        return blockingStub.getFeature(nextPoint());
+    }
+
+    @Benchmark
+    public void listFeatures(Blackhole blackhole) {
+        Iterator<Feature> result = blockingStub.listFeatures(area);
+        result.forEachRemaining(blackhole::consume);
+    }
+
+    @Benchmark
+    public RouteSummary recordRoute() throws InterruptedException {
+        AwaitingObserver<RouteSummary> responses = new AwaitingObserver<>();
+        StreamObserver<Point> requests = asyncStub.recordRoute(responses);
+        for (int i = 0; i < ROUTE_POINTS; i++) {
+            requests.onNext(nextPoint());
+        }
+        requests.onCompleted();
+        return responses.await();
+    }
+
+    @Benchmark
+    public RouteNote routeChat() throws InterruptedException {
+        AwaitingObserver<RouteNote> responses = new AwaitingObserver<>();
+        StreamObserver<RouteNote> requests = asyncStub.routeChat(responses);
+        Point location = nextPoint();
+        for (int i = 0; i < CHAT_NOTES; i++) {
+            requests.onNext(RouteNote.newBuilder().setLocation(location).setMessage("note " + i).build());
+        }
+        requests.onCompleted();
+        return responses.await();
+    }
+
+    private static final class AwaitingObserver<T> implements StreamObserver<T> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile T last;
+
+        @Override
+        public void onNext(T value) {
+            last = value;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            done.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            done.countDown();
+        }
+
+        T await() throws InterruptedException {
+            if (!done.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("RPC did not finish");
+            }
+            return last;
+        }
+    }
+}
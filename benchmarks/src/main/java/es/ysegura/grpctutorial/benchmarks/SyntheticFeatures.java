@@ -0,0 +1,63 @@
+package es.ysegura.grpctutorial.benchmarks;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.FeatureDatabase;
+import es.ysegura.grpctutorial.protobuff.Point;
+import com.google.protobuf.util.JsonFormat;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic feature databases for the benchmarks, spread over the same area as the bundled
+ * {@code route_guide_db.json} (New Jersey / New York, roughly 2 x 2 degrees).
+ */
+final class SyntheticFeatures {
+
+    static final int MIN_LAT = 400000000;
+    static final int MIN_LON = -750000000;
+    static final int SPAN = 20000000;
+
+    private SyntheticFeatures() {
+    }
+
+    /**
+     * {@code size} features; one in ten is unnamed, like the empty entries of the real database.
+     */
+    static List<Feature> generate(int size) {
+        Random random = new Random(size);
+        List<Feature> features = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            features.add(Feature.newBuilder()
+                    .setName(i % 10 == 0 ? "" : "Synthetic feature " + i)
+                    .setLocation(randomPoint(random))
+                    .build());
+        }
+        return features;
+    }
+
+    static Point randomPoint(Random random) {
+        return Point.newBuilder()
+                .setLatitude(MIN_LAT + random.nextInt(SPAN))
+                .setLongitude(MIN_LON + random.nextInt(SPAN))
+                .build();
+    }
+
+    /**
+     * Writes the features in the JSON format read by {@code RouteGuideUtil.parseFeatures}.
+     */
+    static Path writeJson(List<Feature> features) throws IOException {
+        Path file = Files.createTempFile("route_guide_db", ".json");
+        file.toFile().deleteOnExit();
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            JsonFormat.printer().appendTo(FeatureDatabase.newBuilder().addAllFeature(features).build(), writer);
+        }
+        return file;
+    }
+}
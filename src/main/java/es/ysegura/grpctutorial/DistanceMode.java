@@ -0,0 +1,25 @@
+package es.ysegura.grpctutorial;
+
+/**
+ * How {@link RouteDistance} computes the length of each route segment.
+ */
+public enum DistanceMode {
+    /**
+     * Same haversine formula as {@link RouteGuideUtil#calcDistance}, with the same result, but
+     * reusing the previous point's radians and cosine.
+     */
+    HAVERSINE,
+    /**
+     * Haversine with {@code asin} instead of {@code atan2} and a single multiply for the E7 to radians
+     * conversion. Differs from {@link #HAVERSINE} only by floating point rounding, so the integer
+     * meters can change by one at most.
+     */
+    FAST_HAVERSINE,
+    /**
+     * Equirectangular projection using the average of the two cached latitude cosines, so it needs no
+     * trigonometric call at all. Measured relative error against haversine, for random segments:
+     * below 1e-6 up to 10 km and below 1e-4 up to 100 km with {@code |latitude| <= 70}; it grows
+     * towards the poles (3.5e-4 at 80 degrees and 100 km). Meant for GPS traces with short segments.
+     */
+    EQUIRECTANGULAR
+}
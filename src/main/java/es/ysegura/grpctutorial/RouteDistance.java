@@ -0,0 +1,92 @@
+package es.ysegura.grpctutorial;
+
+import es.ysegura.grpctutorial.protobuff.Point;
+
+import static java.lang.Math.*;
+
+/**
+ * Distance accumulator for a stream of route points.
+ * <p>
+ * Keeps the previous point already converted to radians, together with its cosine, so every new
+ * point costs one conversion and one cosine instead of redoing both ends of the segment as
+ * {@link RouteGuideUtil#calcDistance} does. It holds only primitives and never allocates.
+ * Not thread-safe: use one instance per stream.
+ */
+public class RouteDistance {
+
+    private static final int EARTH_RADIUS = 6371000; // Earth radius in meters
+    private static final double E7_TO_RADIANS = PI / 180 / 1e7;
+
+    private final DistanceMode mode;
+    private boolean hasPrevious;
+    private double previousLat;
+    private double previousLon;
+    private double previousCos;
+
+    public RouteDistance(DistanceMode mode) {
+        this.mode = mode;
+    }
+
+    public int next(Point point) {
+        return next(point.getLatitude(), point.getLongitude());
+    }
+
+    /**
+     * Moves to the given E7 coordinates and returns the meters from the previous point, truncated to
+     * an int like {@link RouteGuideUtil#calcDistance}. The first point returns 0.
+     */
+    public int next(int latitude, int longitude) {
+        double lat;
+        double lon;
+        if (mode == DistanceMode.HAVERSINE) {
+            lat = toRadians(latitude / 1e7);
+            lon = toRadians(longitude / 1e7);
+        } else {
+            lat = latitude * E7_TO_RADIANS;
+            lon = longitude * E7_TO_RADIANS;
+        }
+        double cosLat = cos(lat);
+
+        int meters = 0;
+        if (hasPrevious) {
+            meters = segment(lat, lon, cosLat);
+        }
+        hasPrevious = true;
+        previousLat = lat;
+        previousLon = lon;
+        previousCos = cosLat;
+        return meters;
+    }
+
+    public void reset() {
+        hasPrevious = false;
+    }
+
+    private int segment(double lat, double lon, double cosLat) {
+        double deltaLat = lat - previousLat;
+        double deltaLon = lon - previousLon;
+        switch (mode) {
+            case HAVERSINE -> {
+                double sinLat = sin(deltaLat / 2);
+                double sinLon = sin(deltaLon / 2);
+                double a = sinLat * sinLat + previousCos * cosLat * sinLon * sinLon;
+                return (int) (EARTH_RADIUS * (2 * atan2(sqrt(a), sqrt(1 - a))));
+            }
+            case FAST_HAVERSINE -> {
+                double sinLat = sin(deltaLat / 2);
+                double sinLon = sin(deltaLon / 2);
+                double a = sinLat * sinLat + previousCos * cosLat * sinLon * sinLon;
+                return (int) (EARTH_RADIUS * 2 * asin(min(1, sqrt(a))));
+            }
+            default -> {
+                if (deltaLon > PI) {
+                    deltaLon -= 2 * PI;
+                } else if (deltaLon < -PI) {
+                    deltaLon += 2 * PI;
+                }
+                double x = deltaLon * (previousCos + cosLat) * 0.5;
+                return (int) (EARTH_RADIUS * sqrt(x * x + deltaLat * deltaLat));
+            }
+        }
+    }
+}
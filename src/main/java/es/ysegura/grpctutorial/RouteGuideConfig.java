@@ -0,0 +1,281 @@
+package es.ysegura.grpctutorial;
+
+import es.ysegura.grpctutorial.chat.ChatDeliveryMode;
+import es.ysegura.grpctutorial.server.ServerExecutorMode;
+import es.ysegura.grpctutorial.store.SpatialIndexType;
+import lombok.Builder;
+import lombok.Value;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Server-side tuning options. Every option has a default, so {@link #defaults()} reproduces the
+ * plain tutorial behaviour; {@link #fromSystemProperties()} lets each one be overridden with a
+ * {@code -Drouteguide.<option>=<value>} flag.
+ */
+@Value
+@Builder(toBuilder = true)
+public class RouteGuideConfig {
+
+    private static final String PREFIX = "routeguide.";
+
+    /**
+     * Executor running the RPC handlers ({@code routeguide.server.executor}).
+     */
+    @Builder.Default
+    ServerExecutorMode serverExecutor = ServerExecutorMode.DEFAULT;
+
+    /**
+     * Threads of the {@link ServerExecutorMode#FIXED} executor ({@code routeguide.server.executor-threads}).
+     */
+    @Builder.Default
+    int serverExecutorThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Use the tuned Netty transport below instead of gRPC's defaults when listening on a TCP port
+     * ({@code routeguide.netty.tuned}).
+     */
+    @Builder.Default
+    boolean nettyTuned = false;
+
+    /**
+     * Native epoll transport when available, NIO otherwise ({@code routeguide.netty.epoll}).
+     */
+    @Builder.Default
+    boolean nettyEpoll = true;
+
+    /**
+     * Threads accepting connections ({@code routeguide.netty.boss-threads}).
+     */
+    @Builder.Default
+    int nettyBossThreads = 1;
+
+    /**
+     * Threads doing the network I/O ({@code routeguide.netty.worker-threads}).
+     */
+    @Builder.Default
+    int nettyWorkerThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Pooled direct buffers shared by all connections ({@code routeguide.netty.pooled-allocator}).
+     */
+    @Builder.Default
+    boolean nettyPooledAllocator = true;
+
+    /**
+     * Initial HTTP/2 flow-control window per stream, in bytes; it is still tuned automatically afterwards
+     * ({@code routeguide.netty.flow-control-window}).
+     */
+    @Builder.Default
+    int nettyFlowControlWindow = 4 * 1024 * 1024;
+
+    /**
+     * Concurrent calls allowed on one connection ({@code routeguide.netty.max-concurrent-streams}).
+     */
+    @Builder.Default
+    int nettyMaxConcurrentStreams = 1000;
+
+    /**
+     * Idle time before the server pings a connection ({@code routeguide.netty.keepalive-time-seconds}).
+     */
+    @Builder.Default
+    Duration nettyKeepAliveTime = Duration.ofMinutes(1);
+
+    /**
+     * Time to wait for a ping acknowledgement before closing the connection
+     * ({@code routeguide.netty.keepalive-timeout-seconds}).
+     */
+    @Builder.Default
+    Duration nettyKeepAliveTimeout = Duration.ofSeconds(20);
+
+    /**
+     * Shortest client keepalive interval accepted ({@code routeguide.netty.permit-keepalive-time-seconds}).
+     */
+    @Builder.Default
+    Duration nettyPermitKeepAliveTime = Duration.ofSeconds(30);
+
+    /**
+     * Index used to answer ListFeatures rectangles ({@code routeguide.spatial-index}).
+     */
+    @Builder.Default
+    SpatialIndexType spatialIndexType = SpatialIndexType.GRID;
+
+    /**
+     * Notes kept per RouteChat location ({@code routeguide.chat.max-notes-per-location}).
+     */
+    @Builder.Default
+    int chatMaxNotesPerLocation = 1000;
+
+    /**
+     * Distinct RouteChat locations kept before the least recently used are evicted
+     * ({@code routeguide.chat.max-locations}).
+     */
+    @Builder.Default
+    int chatMaxLocations = 100_000;
+
+    /**
+     * How long a RouteChat note is kept ({@code routeguide.chat.note-ttl-seconds}).
+     */
+    @Builder.Default
+    Duration chatNoteTtl = Duration.ofHours(1);
+
+    /**
+     * Which notes RouteChat sends back for each posted note ({@code routeguide.chat.delivery}).
+     */
+    @Builder.Default
+    ChatDeliveryMode chatDeliveryMode = ChatDeliveryMode.REPLAY;
+
+    /**
+     * Worker threads writing broadcast notes to RouteChat streams
+     * ({@code routeguide.chat.dispatcher-threads}).
+     */
+    @Builder.Default
+    int chatDispatcherThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Notes queued per RouteChat stream in broadcast mode before the oldest are dropped
+     * ({@code routeguide.chat.subscriber-queue-size}).
+     */
+    @Builder.Default
+    int chatSubscriberQueueSize = 256;
+
+    /**
+     * Formula used by RecordRoute to add up segment lengths ({@code routeguide.distance}).
+     */
+    @Builder.Default
+    DistanceMode distanceMode = DistanceMode.HAVERSINE;
+
+    /**
+     * Meters from a recorded route within which RecordRoute counts a feature, found through the spatial
+     * index segment by segment ({@code routeguide.route.feature-radius-meters}). With {@code 0} only the
+     * features exactly at a route point are counted.
+     */
+    @Builder.Default
+    int routeFeatureRadius = 0;
+
+    /**
+     * Threads of the pool that adds up large RecordRouteBatched batches in chunks
+     * ({@code routeguide.route.batch-threads}). The calling thread works on a chunk too; with {@code 1}
+     * or less every batch is added on the calling thread alone.
+     */
+    @Builder.Default
+    int routeBatchThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Local port serving the RPC metrics as text, negative to disable it and {@code 0} for any free port
+     * ({@code routeguide.metrics.http-port}).
+     */
+    @Builder.Default
+    int metricsHttpPort = -1;
+
+    /**
+     * Bytes of serialized ListFeatures results kept by area, {@code 0} to disable the cache
+     * ({@code routeguide.list-features-cache-bytes}).
+     */
+    @Builder.Default
+    long listFeaturesCacheBytes = 0;
+
+    /**
+     * Encode every feature once when the features are loaded and answer GetFeature and ListFeatures with
+     * those bytes, at the cost of keeping a serialized copy of the database on the heap
+     * ({@code routeguide.pre-serialized-features}). That copy would undo {@link #featureStoreFile}, so
+     * the two cannot be combined.
+     */
+    @Builder.Default
+    boolean preSerializedFeatures = false;
+
+    /**
+     * Serve RecordRoute and the replay and incremental RouteChat modes as {@code java.util.concurrent.Flow}
+     * pipelines, which pull request messages only as fast as the answers can be sent
+     * ({@code routeguide.reactive-streaming}).
+     */
+    @Builder.Default
+    boolean reactiveStreaming = false;
+
+    /**
+     * Binary snapshot of the feature database, written on the first start and read instead of the JSON
+     * afterwards ({@code routeguide.features-snapshot}). No snapshot is used when it is {@code null}.
+     */
+    Path featuresSnapshot;
+
+    /**
+     * Memory-mapped columnar file used as the feature store instead of keeping the features on the
+     * heap; it is created from the feature database if it does not exist yet
+     * ({@code routeguide.feature-store-file}). The heap store is used when it is {@code null}.
+     */
+    Path featureStoreFile;
+
+    /**
+     * Reload the features whenever the features file changes on disk ({@code routeguide.watch-features}).
+     */
+    @Builder.Default
+    boolean watchFeatures = false;
+
+    public static RouteGuideConfig defaults() {
+        return builder().build();
+    }
+
+    public static RouteGuideConfig fromSystemProperties() {
+        RouteGuideConfig defaults = defaults();
+        return builder()
+                .serverExecutor(enumProperty("server.executor", defaults.getServerExecutor()))
+                .serverExecutorThreads(intProperty("server.executor-threads", defaults.getServerExecutorThreads()))
+                .nettyTuned(booleanProperty("netty.tuned", defaults.isNettyTuned()))
+                .nettyEpoll(booleanProperty("netty.epoll", defaults.isNettyEpoll()))
+                .nettyBossThreads(intProperty("netty.boss-threads", defaults.getNettyBossThreads()))
+                .nettyWorkerThreads(intProperty("netty.worker-threads", defaults.getNettyWorkerThreads()))
+                .nettyPooledAllocator(booleanProperty("netty.pooled-allocator", defaults.isNettyPooledAllocator()))
+                .nettyFlowControlWindow(intProperty("netty.flow-control-window", defaults.getNettyFlowControlWindow()))
+                .nettyMaxConcurrentStreams(intProperty("netty.max-concurrent-streams", defaults.getNettyMaxConcurrentStreams()))
+                .nettyKeepAliveTime(secondsProperty("netty.keepalive-time-seconds", defaults.getNettyKeepAliveTime()))
+                .nettyKeepAliveTimeout(secondsProperty("netty.keepalive-timeout-seconds", defaults.getNettyKeepAliveTimeout()))
+                .nettyPermitKeepAliveTime(secondsProperty("netty.permit-keepalive-time-seconds", defaults.getNettyPermitKeepAliveTime()))
+                .spatialIndexType(enumProperty("spatial-index", defaults.getSpatialIndexType()))
+                .chatMaxNotesPerLocation(intProperty("chat.max-notes-per-location", defaults.getChatMaxNotesPerLocation()))
+                .chatMaxLocations(intProperty("chat.max-locations", defaults.getChatMaxLocations()))
+                .chatNoteTtl(Duration.ofSeconds(longProperty("chat.note-ttl-seconds", defaults.getChatNoteTtl().toSeconds())))
+                .chatDeliveryMode(enumProperty("chat.delivery", defaults.getChatDeliveryMode()))
+                .chatDispatcherThreads(intProperty("chat.dispatcher-threads", defaults.getChatDispatcherThreads()))
+                .chatSubscriberQueueSize(intProperty("chat.subscriber-queue-size", defaults.getChatSubscriberQueueSize()))
+                .distanceMode(enumProperty("distance", defaults.getDistanceMode()))
+                .routeFeatureRadius(intProperty("route.feature-radius-meters", defaults.getRouteFeatureRadius()))
+                .routeBatchThreads(intProperty("route.batch-threads", defaults.getRouteBatchThreads()))
+                .metricsHttpPort(intProperty("metrics.http-port", defaults.getMetricsHttpPort()))
+                .listFeaturesCacheBytes(longProperty("list-features-cache-bytes", defaults.getListFeaturesCacheBytes()))
+                .preSerializedFeatures(booleanProperty("pre-serialized-features", defaults.isPreSerializedFeatures()))
+                .reactiveStreaming(booleanProperty("reactive-streaming", defaults.isReactiveStreaming()))
+                .featuresSnapshot(pathProperty("features-snapshot"))
+                .featureStoreFile(pathProperty("feature-store-file"))
+                .watchFeatures(booleanProperty("watch-features", defaults.isWatchFeatures()))
+                .build();
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        return Integer.getInteger(PREFIX + name, defaultValue);
+    }
+
+    private static long longProperty(String name, long defaultValue) {
+        return Long.getLong(PREFIX + name, defaultValue);
+    }
+
+    private static boolean booleanProperty(String name, boolean defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    private static Duration secondsProperty(String name, Duration defaultValue) {
+        return Duration.ofSeconds(longProperty(name, defaultValue.toSeconds()));
+    }
+
+    private static Path pathProperty(String name) {
+        String value = System.getProperty(PREFIX + name);
+        return value == null ? null : Path.of(value);
+    }
+
+    private static <E extends Enum<E>> E enumProperty(String name, E defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        return value == null ? defaultValue : Enum.valueOf(defaultValue.getDeclaringClass(), value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
@@ -1,17 +1,12 @@
 package es.ysegura.grpctutorial;
 
-import com.google.protobuf.util.JsonFormat;
 import es.ysegura.grpctutorial.protobuff.Feature;
-import es.ysegura.grpctutorial.protobuff.FeatureDatabase;
 import es.ysegura.grpctutorial.protobuff.Point;
 import es.ysegura.grpctutorial.server.RouteGuideServerRunner;
+import es.ysegura.grpctutorial.store.FeatureLoader;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static java.lang.Math.*;
@@ -30,21 +25,26 @@ public class RouteGuideUtil {
         return location.getLongitude() / COORD_FACTOR;
     }
 
+    /**
+     * Packs the E7 latitude and longitude of a point into a single {@code long} key.
+     */
+    public static long pack(int latitude, int longitude){
+        return ((long) latitude << 32) | (longitude & 0xFFFFFFFFL);
+    }
+
+    public static long pack(Point location){
+        return pack(location.getLatitude(), location.getLongitude());
+    }
+
     public static URL getDefaultFeaturesFile(){
         return RouteGuideServerRunner.class.getResource("route_guide_db.json");
     }
 
+    /**
+     * Loads a JSON database or a binary snapshot, see {@link FeatureLoader}.
+     */
     public static List<Feature> parseFeatures(URL file) throws IOException {
-        InputStream input = file.openStream();
-
-        try (input) {
-            Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
-            try (reader) {
-                FeatureDatabase.Builder database = FeatureDatabase.newBuilder();
-                JsonFormat.parser().merge(reader, database);
-                return database.getFeatureList();
-            }
-        }
+        return FeatureLoader.load(file);
     }
 
     public static boolean exists(Feature feature){
@@ -52,11 +52,18 @@ public class RouteGuideUtil {
     }
 
     public static int calcDistance(Point start, Point end){
+        return calcDistance(start.getLatitude(), start.getLongitude(), end.getLatitude(), end.getLongitude());
+    }
+
+    /**
+     * Same as {@link #calcDistance(Point, Point)} on E7 coordinates, without building points.
+     */
+    public static int calcDistance(int startLatitude, int startLongitude, int endLatitude, int endLongitude){
         int r = 6371000; // Earth radius in meters
-        double lat1 = toRadians(RouteGuideUtil.getLatitude(start));
-        double lat2 = toRadians(RouteGuideUtil.getLatitude(end));
-        double lon1 = toRadians(RouteGuideUtil.getLongitude(start));
-        double lon2 = toRadians(RouteGuideUtil.getLongitude(end));
+        double lat1 = toRadians(startLatitude / COORD_FACTOR);
+        double lat2 = toRadians(endLatitude / COORD_FACTOR);
+        double lon1 = toRadians(startLongitude / COORD_FACTOR);
+        double lon2 = toRadians(endLongitude / COORD_FACTOR);
 
         double deltaLat = lat2 - lat1;
         double deltaLon = lon2 - lon1;
@@ -0,0 +1,100 @@
+package es.ysegura.grpctutorial.chat;
+
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.protobuff.RouteNote;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publish/subscribe engine behind RouteChat in {@link ChatDeliveryMode#BROADCAST} mode.
+ * <p>
+ * Keeps a registry of the calls subscribed to each location and fans every posted note out to
+ * them. Publishing only queues the note on each subscriber; a small pool of dispatcher workers
+ * writes the queues to the streams, so a slow client never blocks the one publishing.
+ */
+public class ChatBroker {
+
+    private static final int MAX_BATCH = 64;
+
+    private final RouteNoteStore store;
+    private final ConcurrentMap<Long, Set<ChatSubscriber>> subscriptions = new ConcurrentHashMap<>();
+    private final ExecutorService dispatcher;
+    private final int queueCapacity;
+
+    public ChatBroker(RouteNoteStore store, int dispatcherThreads, int queueCapacity) {
+        this.store = store;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(dispatcherThreads, runnable -> {
+            Thread thread = new Thread(runnable, "route-chat-dispatcher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ChatSubscriber register(StreamObserver<RouteNote> responseObserver) {
+        return new ChatSubscriber(responseObserver, dispatcher, queueCapacity, MAX_BATCH);
+    }
+
+    /**
+     * Subscribes the call to {@code location}, queueing the notes already retained there.
+     */
+    public void subscribe(ChatSubscriber subscriber, Point location) {
+        long key = RouteGuideUtil.pack(location);
+        subscriber.subscribe(key, location, store, () -> subscriptions.compute(key, (k, subscribers) -> {
+            Set<ChatSubscriber> result = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+            result.add(subscriber);
+            return result;
+        }));
+    }
+
+    /**
+     * Stores the note and queues it for every other call subscribed to its location.
+     */
+    public void publish(ChatSubscriber sender, RouteNote note) {
+        long key = RouteGuideUtil.pack(note.getLocation());
+        long sequence = store.post(note);
+        Set<ChatSubscriber> subscribers = subscriptions.get(key);
+        if (subscribers == null) {
+            return;
+        }
+        for (ChatSubscriber subscriber : subscribers) {
+            if (subscriber != sender) {
+                subscriber.deliver(key, sequence, note);
+            }
+        }
+    }
+
+    /**
+     * Removes the call from every location. With {@code graceful} the notes already queued are
+     * still sent before completing the stream; otherwise they are discarded.
+     */
+    public void unregister(ChatSubscriber subscriber, boolean graceful) {
+        for (Long key : subscriber.locations()) {
+            subscriptions.computeIfPresent(key, (k, subscribers) -> {
+                subscribers.remove(subscriber);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+        if (graceful) {
+            subscriber.complete();
+        } else {
+            subscriber.cancel();
+        }
+    }
+
+    public int subscribedLocations() {
+        return subscriptions.size();
+    }
+
+    public void shutdown() {
+        dispatcher.shutdown();
+    }
+}
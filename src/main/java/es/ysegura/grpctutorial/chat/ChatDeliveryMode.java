@@ -0,0 +1,23 @@
+package es.ysegura.grpctutorial.chat;
+
+/**
+ * Which notes a RouteChat call gets back after posting a note.
+ */
+public enum ChatDeliveryMode {
+    /**
+     * Every retained note at the same location, as in the classic RouteGuide example. Costs O(n) per
+     * note for n notes at that location.
+     */
+    REPLAY,
+    /**
+     * Only the notes at the same location that have not been sent to this call yet, tracked with a
+     * per-call cursor into the location log. Every note is delivered at most once per call.
+     */
+    INCREMENTAL,
+    /**
+     * Publish/subscribe: a call subscribes to every location it posts at (a note with an empty
+     * message only subscribes) and gets that location's history once, then every note other calls
+     * post there, pushed as it arrives. See {@link ChatBroker}.
+     */
+    BROADCAST
+}
@@ -0,0 +1,174 @@
+package es.ysegura.grpctutorial.chat;
+
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.protobuff.RouteNote;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One RouteChat call registered with a {@link ChatBroker}.
+ * <p>
+ * Notes for the call are queued in a bounded outbound queue and written by a dispatcher worker in
+ * batches, only while the stream {@code isReady()}. When the queue is full the oldest note is
+ * dropped, so a slow client loses notes instead of holding memory or stalling the publishers.
+ */
+@Slf4j
+public class ChatSubscriber {
+
+    private final StreamObserver<RouteNote> responseObserver;
+    private final ServerCallStreamObserver<RouteNote> flowControl;
+    private final Executor dispatcher;
+    private final int queueCapacity;
+    private final int maxBatch;
+
+    private final ArrayDeque<RouteNote> queue = new ArrayDeque<>();
+    // Por ubicación, primera secuencia que no se envió con el histórico. Las notas en vivo pueden llegar
+    // desordenadas desde varios publicadores, así que solo se filtra contra este límite
+    private final Map<Long, Long> historyEnds = new HashMap<>();
+    private final Set<Long> locations = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private boolean completing;
+    private boolean closed;
+    private long dropped;
+
+    ChatSubscriber(StreamObserver<RouteNote> responseObserver, Executor dispatcher, int queueCapacity, int maxBatch) {
+        this.responseObserver = responseObserver;
+        this.dispatcher = dispatcher;
+        this.queueCapacity = queueCapacity;
+        this.maxBatch = maxBatch;
+        if (responseObserver instanceof ServerCallStreamObserver<RouteNote> serverObserver) {
+            this.flowControl = serverObserver;
+            serverObserver.setOnReadyHandler(this::scheduleDrain);
+        } else {
+            this.flowControl = null;
+        }
+    }
+
+    Set<Long> locations() {
+        return locations;
+    }
+
+    /**
+     * Registers the location and queues its retained history, under the subscriber lock so that live
+     * notes published meanwhile are neither lost nor duplicated.
+     */
+    synchronized void subscribe(long location, Point point, RouteNoteStore store, Runnable register) {
+        if (!locations.add(location)) {
+            return;
+        }
+        register.run();
+        long next = store.nextSequence(point);
+        List<RouteNote> history = store.read(point, 0, next);
+        history.forEach(this::offer);
+        historyEnds.put(location, next);
+        scheduleDrain();
+    }
+
+    /**
+     * Queues a live note unless it was already delivered as part of the history.
+     */
+    void deliver(long location, long sequence, RouteNote note) {
+        synchronized (this) {
+            if (closed || sequence < historyEnds.getOrDefault(location, 0L)) {
+                return;
+            }
+            offer(note);
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Completes the call once every queued note has been written.
+     */
+    void complete() {
+        synchronized (this) {
+            completing = true;
+        }
+        scheduleDrain();
+    }
+
+    synchronized void cancel() {
+        closed = true;
+        queue.clear();
+    }
+
+    synchronized long droppedCount() {
+        return dropped;
+    }
+
+    private void offer(RouteNote note) {
+        if (queue.size() == queueCapacity) {
+            queue.pollFirst();
+            if (dropped++ % 1000 == 0) {
+                log.debug("Slow RouteChat subscriber, {} notes dropped so far", dropped);
+            }
+        }
+        queue.addLast(note);
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            dispatcher.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        boolean reschedule = false;
+        try {
+            int sent = 0;
+            while (true) {
+                RouteNote note;
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    if (queue.isEmpty()) {
+                        if (completing) {
+                            closed = true;
+                            responseObserver.onCompleted();
+                        }
+                        return;
+                    }
+                    if (!isReady()) {
+                        // El onReadyHandler volverá a programar el vaciado
+                        return;
+                    }
+                    if (sent == maxBatch) {
+                        // Cedemos el worker para que un suscriptor con mucha cola no acapare el dispatcher
+                        reschedule = true;
+                        return;
+                    }
+                    note = queue.pollFirst();
+                }
+                responseObserver.onNext(note);
+                sent++;
+            }
+        } catch (RuntimeException e) {
+            log.warn("RouteChat delivery failed: " + e.getMessage());
+            cancel();
+        } finally {
+            draining.set(false);
+            if (reschedule || hasDeliverableWork()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private synchronized boolean hasDeliverableWork() {
+        return !closed && (!queue.isEmpty() || completing) && isReady();
+    }
+
+    private boolean isReady() {
+        return flowControl == null || flowControl.isReady();
+    }
+}
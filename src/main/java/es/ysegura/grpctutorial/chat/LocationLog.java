@@ -0,0 +1,112 @@
+package es.ysegura.grpctutorial.chat;
+
+import es.ysegura.grpctutorial.protobuff.RouteNote;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only log of the notes posted at one location, kept in a fixed-size ring.
+ * <p>
+ * Every note gets a sequence number; once the ring is full or a note outlives its TTL the oldest
+ * notes are dropped and {@link #firstSequence()} moves forward. Each log has its own lock, so
+ * chats at different locations never contend.
+ */
+class LocationLog {
+
+    private final RouteNote[] notes;
+    private final long[] postedAt;
+    private final long ttlNanos;
+
+    private long first;
+    private long next;
+    private long lastPostedAt;
+    private boolean retired;
+
+    /**
+     * Empty log whose first note gets sequence number {@code firstSequence}.
+     */
+    LocationLog(int capacity, long ttlNanos, long firstSequence) {
+        this.notes = new RouteNote[capacity];
+        this.postedAt = new long[capacity];
+        this.ttlNanos = ttlNanos;
+        this.first = firstSequence;
+        this.next = firstSequence;
+    }
+
+    /**
+     * Appends a note and returns its sequence number, or {@code -1} if the log was already retired
+     * from the store and the caller must use a fresh one.
+     */
+    synchronized long append(RouteNote note, long now) {
+        if (retired) {
+            return -1;
+        }
+        expire(now);
+        if (next - first == notes.length) {
+            drop();
+        }
+        int slot = slot(next);
+        notes[slot] = note;
+        postedAt[slot] = now;
+        lastPostedAt = now;
+        return next++;
+    }
+
+    /**
+     * Notes with sequence numbers in {@code [from, to)} that are still retained, oldest first.
+     */
+    synchronized List<RouteNote> read(long from, long to, long now) {
+        expire(now);
+        long start = Math.max(from, first);
+        long end = Math.min(to, next);
+        List<RouteNote> result = new ArrayList<>((int) Math.max(0, end - start));
+        for (long seq = start; seq < end; seq++) {
+            result.add(notes[slot(seq)]);
+        }
+        return result;
+    }
+
+    synchronized long firstSequence() {
+        return first;
+    }
+
+    synchronized long nextSequence() {
+        return next;
+    }
+
+    synchronized long lastPostedAt() {
+        return lastPostedAt;
+    }
+
+    synchronized int size() {
+        return (int) (next - first);
+    }
+
+    /**
+     * Marks the log as removed from the store if {@code force} is set or all its notes expired.
+     * Returns whether it was retired.
+     */
+    synchronized boolean retire(long now, boolean force) {
+        expire(now);
+        if (force || first == next) {
+            retired = true;
+        }
+        return retired;
+    }
+
+    private void expire(long now) {
+        while (first < next && now - postedAt[slot(first)] > ttlNanos) {
+            drop();
+        }
+    }
+
+    private void drop() {
+        notes[slot(first)] = null;
+        first++;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % notes.length);
+    }
+}
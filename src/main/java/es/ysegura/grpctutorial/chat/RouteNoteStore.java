@@ -0,0 +1,143 @@
+package es.ysegura.grpctutorial.chat;
+
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.protobuff.RouteNote;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Server-wide RouteChat notes, shared by every call and keyed by packed location.
+ * <p>
+ * Memory is bounded three ways: each location keeps at most {@code maxNotesPerLocation} notes,
+ * notes older than {@code noteTtl} are dropped, and when more than {@code maxLocations} locations
+ * are live the least recently used ones are evicted. Expiry is done lazily by the callers, so the
+ * store needs no background thread.
+ * <p>
+ * Sequence numbers only grow at each location, even across a location being expired or evicted and
+ * posted to again: a new log starts past every sequence handed out by the logs retired before it, so
+ * callers can keep cursors into a location for as long as they like.
+ */
+@Slf4j
+public class RouteNoteStore {
+
+    private final ConcurrentMap<Long, LocationLog> logs = new ConcurrentHashMap<>();
+    private final int maxNotesPerLocation;
+    private final int maxLocations;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final AtomicLong lastSweep;
+    // Primera secuencia de los logs nuevos: la siguiente a la última de cualquier log retirado
+    private final AtomicLong firstSequence = new AtomicLong();
+
+    public RouteNoteStore(int maxNotesPerLocation, int maxLocations, Duration noteTtl) {
+        this(maxNotesPerLocation, maxLocations, noteTtl, System::nanoTime);
+    }
+
+    RouteNoteStore(int maxNotesPerLocation, int maxLocations, Duration noteTtl, LongSupplier clock) {
+        if (maxNotesPerLocation <= 0 || maxLocations <= 0) {
+            throw new IllegalArgumentException("RouteNoteStore limits must be positive");
+        }
+        this.maxNotesPerLocation = maxNotesPerLocation;
+        this.maxLocations = maxLocations;
+        this.ttlNanos = noteTtl.toNanos();
+        this.clock = clock;
+        this.lastSweep = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Stores a note and returns its sequence number within its location.
+     */
+    public long post(RouteNote note) {
+        long location = RouteGuideUtil.pack(note.getLocation());
+        long now = clock.getAsLong();
+        while (true) {
+            LocationLog log = logs.computeIfAbsent(location,
+                    k -> new LocationLog(maxNotesPerLocation, ttlNanos, firstSequence.get()));
+            long sequence = log.append(note, now);
+            if (sequence >= 0) {
+                maybeSweep(now);
+                return sequence;
+            }
+            // El log se retiró entre computeIfAbsent y append: lo quitamos y reintentamos con uno nuevo
+            remove(location, log);
+        }
+    }
+
+    /**
+     * Retained notes at {@code location} with sequence numbers in {@code [from, to)}.
+     */
+    public List<RouteNote> read(Point location, long from, long to) {
+        LocationLog log = logs.get(RouteGuideUtil.pack(location));
+        return log == null ? List.of() : log.read(from, to, clock.getAsLong());
+    }
+
+    /**
+     * All retained notes at {@code location}.
+     */
+    public List<RouteNote> read(Point location) {
+        return read(location, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Sequence number the next note posted at {@code location} will get.
+     */
+    public long nextSequence(Point location) {
+        LocationLog log = logs.get(RouteGuideUtil.pack(location));
+        return log == null ? firstSequence.get() : log.nextSequence();
+    }
+
+    public int locationCount() {
+        return logs.size();
+    }
+
+    private void maybeSweep(long now) {
+        long last = lastSweep.get();
+        boolean overCapacity = logs.size() > maxLocations;
+        if ((overCapacity || now - last > ttlNanos) && lastSweep.compareAndSet(last, now)) {
+            sweep(now);
+        }
+    }
+
+    private void sweep(long now) {
+        logs.forEach((location, locationLog) -> {
+            if (locationLog.retire(now, false)) {
+                remove(location, locationLog);
+            }
+        });
+        int excess = logs.size() - maxLocations;
+        if (excess > 0) {
+            // Desalojamos un 10% extra para no volver a ordenar en cada post
+            int toEvict = excess + maxLocations / 10;
+            List<Candidate> candidates = new ArrayList<>(logs.size());
+            logs.forEach((location, locationLog) -> candidates.add(new Candidate(location, locationLog, locationLog.lastPostedAt())));
+            candidates.sort(Comparator.comparingLong(Candidate::lastPostedAt));
+            for (int i = 0; i < toEvict && i < candidates.size(); i++) {
+                Candidate candidate = candidates.get(i);
+                candidate.locationLog().retire(now, true);
+                remove(candidate.location(), candidate.locationLog());
+            }
+            log.debug("Evicted {} RouteChat locations", toEvict);
+        }
+    }
+
+    /**
+     * Removes a retired log, making sure the log that replaces it starts after its last sequence.
+     */
+    private void remove(Long location, LocationLog locationLog) {
+        // Antes de quitarlo del mapa, para que ningún log nuevo pueda empezar por debajo
+        firstSequence.accumulateAndGet(locationLog.nextSequence(), Math::max);
+        logs.remove(location, locationLog);
+    }
+
+    private record Candidate(Long location, LocationLog locationLog, long lastPostedAt) {
+    }
+}
@@ -0,0 +1,30 @@
+package es.ysegura.grpctutorial.client;
+
+/**
+ * How a {@link ChannelPool} picks the connection for each new call.
+ */
+public enum BalancingPolicy {
+    /** Each call goes to the next connection in turn. */
+    ROUND_ROBIN("round-robin"),
+    /** Each call goes to the connection with fewest calls still open, streams included. */
+    LEAST_OUTSTANDING("least-outstanding");
+
+    private final String shortName;
+
+    BalancingPolicy(String shortName) {
+        this.shortName = shortName;
+    }
+
+    public String getShortName() {
+        return shortName;
+    }
+
+    public static BalancingPolicy fromShortName(String shortName) {
+        for (BalancingPolicy policy : values()) {
+            if (policy.shortName.equalsIgnoreCase(shortName) || policy.name().equalsIgnoreCase(shortName)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown balancing policy: " + shortName);
+    }
+}
@@ -0,0 +1,194 @@
+package es.ysegura.grpctutorial.client;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A channel spreading its calls over several connections, possibly to several servers.
+ * <p>
+ * One HTTP/2 connection carries at most the server's max-concurrent-streams calls at a time and is
+ * served by a single event loop on each side, which caps a busy client long before the servers do.
+ * The pool keeps its own {@link ManagedChannel} per connection and assigns each call, unary or
+ * streaming, to one of them with its {@link BalancingPolicy}; the call then stays on that connection
+ * until it closes. Every stub made on the pool, like the ones of {@link RouteGuideClient}, is balanced.
+ */
+public class ChannelPool extends ManagedChannel {
+
+    private final ManagedChannel[] channels;
+    private final AtomicInteger[] outstanding;
+    private final BalancingPolicy policy;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Takes ownership of {@code channels}: shutting the pool down shuts them down.
+     */
+    public ChannelPool(List<? extends ManagedChannel> channels, BalancingPolicy policy) {
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("A channel pool needs at least one channel");
+        }
+        this.channels = channels.toArray(new ManagedChannel[0]);
+        this.outstanding = new AtomicInteger[this.channels.length];
+        for (int i = 0; i < outstanding.length; i++) {
+            outstanding[i] = new AtomicInteger();
+        }
+        this.policy = policy;
+    }
+
+    /**
+     * Plaintext pool with {@code connectionsPerTarget} connections to each of {@code targets}
+     * ({@code host:port} or any target gRPC resolves). Connections to different targets are interleaved,
+     * so round robin alternates between servers.
+     */
+    public static ChannelPool forTargets(List<String> targets, int connectionsPerTarget, BalancingPolicy policy) {
+        if (connectionsPerTarget < 1) {
+            throw new IllegalArgumentException("connectionsPerTarget must be positive: " + connectionsPerTarget);
+        }
+        List<ManagedChannel> channels = new ArrayList<>(targets.size() * connectionsPerTarget);
+        for (int i = 0; i < connectionsPerTarget; i++) {
+            for (String target : targets) {
+                // Cada ManagedChannel abre su propia conexión aunque el destino se repita
+                channels.add(Grpc.newChannelBuilder(target, InsecureChannelCredentials.create()).build());
+            }
+        }
+        return new ChannelPool(channels, policy);
+    }
+
+    public int size() {
+        return channels.length;
+    }
+
+    public BalancingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Calls started and not yet closed on each connection, in pool order.
+     */
+    public int[] outstandingCalls() {
+        int[] counts = new int[outstanding.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = outstanding[i].get();
+        }
+        return counts;
+    }
+
+    @Override
+    public <Q, R> ClientCall<Q, R> newCall(MethodDescriptor<Q, R> method, CallOptions callOptions) {
+        int index = pick();
+        return new CountingCall<>(channels[index].newCall(method, callOptions), outstanding[index]);
+    }
+
+    private int pick() {
+        int start = Math.floorMod(next.getAndIncrement(), channels.length);
+        if (policy == BalancingPolicy.ROUND_ROBIN) {
+            return start;
+        }
+        // Empezar en una posición rotatoria reparte los empates en vez de cargar siempre la primera conexión
+        int best = start;
+        int bestCount = outstanding[start].get();
+        for (int i = 1; i < channels.length && bestCount > 0; i++) {
+            int candidate = (start + i) % channels.length;
+            int count = outstanding[candidate].get();
+            if (count < bestCount) {
+                best = candidate;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String authority() {
+        return channels[0].authority();
+    }
+
+    @Override
+    public ManagedChannel shutdown() {
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+        }
+        return this;
+    }
+
+    @Override
+    public ManagedChannel shutdownNow() {
+        for (ManagedChannel channel : channels) {
+            channel.shutdownNow();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        for (ManagedChannel channel : channels) {
+            if (!channel.isShutdown()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        for (ManagedChannel channel : channels) {
+            if (!channel.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ManagedChannel channel : channels) {
+            if (!channel.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the call as outstanding on its connection from start until close.
+     */
+    private static final class CountingCall<Q, R> extends ForwardingClientCall.SimpleForwardingClientCall<Q, R> {
+
+        private final AtomicInteger outstanding;
+
+        CountingCall(ClientCall<Q, R> delegate, AtomicInteger outstanding) {
+            super(delegate);
+            this.outstanding = outstanding;
+        }
+
+        @Override
+        public void start(Listener<R> responseListener, Metadata headers) {
+            outstanding.incrementAndGet();
+            try {
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        outstanding.decrementAndGet();
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            } catch (RuntimeException e) {
+                outstanding.decrementAndGet();
+                throw e;
+            }
+        }
+    }
+}
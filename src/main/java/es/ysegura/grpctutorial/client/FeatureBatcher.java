@@ -0,0 +1,138 @@
+package es.ysegura.grpctutorial.client;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.protobuff.PointList;
+import es.ysegura.grpctutorial.protobuff.RouteGuideGrpc;
+import es.ysegura.grpctutorial.reactive.ReactiveClientCalls;
+import io.grpc.Channel;
+import io.grpc.Status;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Coalesces single GetFeature lookups into BatchGetFeature calls.
+ * <p>
+ * The first lookup after a batch is sent opens a window of {@code delay}; every lookup made during the
+ * window goes into the same batch, which is sent when the window closes or as soon as it holds
+ * {@code maxBatchSize} points. Each lookup gets its own future, completed when the batch answers.
+ * Once closed, the batcher sends what is pending and rejects further lookups.
+ */
+public class FeatureBatcher implements AutoCloseable {
+
+    private final RouteGuideGrpc.RouteGuideStub asyncStub;
+    private final long delayNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "feature-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private List<Point> points = new ArrayList<>();
+    private List<CompletableFuture<Feature>> futures = new ArrayList<>();
+    // Ventana abierta y su temporizador; el número evita que un temporizador ya en marcha envíe la siguiente
+    private long window;
+    private ScheduledFuture<?> timer;
+    private boolean closed;
+
+    public FeatureBatcher(Channel channel, Duration delay, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.asyncStub = RouteGuideGrpc.newStub(channel);
+        this.delayNanos = delay.toNanos();
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @throws IllegalStateException if the batcher was closed
+     */
+    public CompletableFuture<Feature> getFeature(Point point) {
+        CompletableFuture<Feature> future = new CompletableFuture<>();
+        boolean full;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("FeatureBatcher is closed");
+            }
+            points.add(point);
+            futures.add(future);
+            full = points.size() >= maxBatchSize;
+            if (points.size() == 1 && !full) {
+                long current = window;
+                timer = scheduler.schedule(() -> flush(current), delayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full) {
+            flush();
+        }
+        return future;
+    }
+
+    /**
+     * Sends the pending lookups now, without waiting for the window to close.
+     */
+    public void flush() {
+        List<Point> batch;
+        List<CompletableFuture<Feature>> batchFutures;
+        synchronized (this) {
+            if (points.isEmpty()) {
+                return;
+            }
+            batch = points;
+            batchFutures = futures;
+            points = new ArrayList<>();
+            futures = new ArrayList<>();
+            window++;
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+        }
+        send(batch, batchFutures);
+    }
+
+    private void flush(long expired) {
+        synchronized (this) {
+            if (expired != window) {
+                // La ventana ya se envió por tamaño o con flush(); no adelantamos la siguiente
+                return;
+            }
+        }
+        flush();
+    }
+
+    private void send(List<Point> batch, List<CompletableFuture<Feature>> batchFutures) {
+        ReactiveClientCalls.unary(asyncStub::batchGetFeature, PointList.newBuilder().addAllPoints(batch).build())
+                .whenComplete((result, error) -> {
+                    if (error == null && result.getFeaturesCount() != batchFutures.size()) {
+                        error = Status.INTERNAL.withDescription("BatchGetFeature answered "
+                                + result.getFeaturesCount() + " features for " + batchFutures.size() + " points")
+                                .asRuntimeException();
+                    }
+                    if (error != null) {
+                        Throwable failure = error;
+                        batchFutures.forEach(future -> future.completeExceptionally(failure));
+                        return;
+                    }
+                    for (int i = 0; i < batchFutures.size(); i++) {
+                        batchFutures.get(i).complete(result.getFeatures(i));
+                    }
+                });
+    }
+
+    /**
+     * Sends whatever is pending and stops the window timer.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        flush();
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,11 @@
+package es.ysegura.grpctutorial.client;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+
+import java.util.List;
+
+/**
+ * One page of ListFeatures results. {@code nextPageToken} is {@code null} on the last page.
+ */
+public record FeaturePage(List<Feature> features, String nextPageToken) {
+}
@@ -0,0 +1,138 @@
+package es.ysegura.grpctutorial.client;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Options of {@link RouteGuideLoadGenerator}. {@link #parse(String[])} reads them from
+ * {@code --name=value} command line arguments.
+ */
+@Value
+@Builder
+public class LoadGeneratorConfig {
+
+    /**
+     * Server to call, or several separated by commas to spread the calls over them.
+     */
+    @Builder.Default
+    String target = "localhost:8980";
+
+    /**
+     * Connections opened to each target; calls are spread over all of them by {@link #balancing}.
+     */
+    @Builder.Default
+    int connectionsPerTarget = 1;
+
+    @Builder.Default
+    BalancingPolicy balancing = BalancingPolicy.ROUND_ROBIN;
+
+    /**
+     * Number of calls kept in flight at the same time.
+     */
+    @Builder.Default
+    int concurrency = 16;
+
+    /**
+     * Target calls per second across all workers; 0 sends as fast as the server answers.
+     */
+    @Builder.Default
+    int qps = 0;
+
+    @Builder.Default
+    Duration duration = Duration.ofSeconds(30);
+
+    @Builder.Default
+    Duration warmup = Duration.ofSeconds(5);
+
+    /**
+     * Relative weight of each RPC in the generated traffic.
+     */
+    @Builder.Default
+    Map<RpcType, Integer> mix = defaultMix();
+
+    /**
+     * Points sent in each RecordRoute call.
+     */
+    @Builder.Default
+    int routePoints = 20;
+
+    /**
+     * Notes sent in each RouteChat call.
+     */
+    @Builder.Default
+    int chatNotes = 5;
+
+    private static Map<RpcType, Integer> defaultMix() {
+        Map<RpcType, Integer> mix = new EnumMap<>(RpcType.class);
+        mix.put(RpcType.GET_FEATURE, 70);
+        mix.put(RpcType.LIST_FEATURES, 10);
+        mix.put(RpcType.RECORD_ROUTE, 10);
+        mix.put(RpcType.ROUTE_CHAT, 10);
+        return mix;
+    }
+
+    /**
+     * Reads {@code --target=host:port[,host:port...] --connections-per-target=N
+     * --balancing=round-robin|least-outstanding --concurrency=N --qps=N --duration=SECONDS --warmup=SECONDS
+     * --mix=get:70,list:10,record:10,chat:10 --route-points=N --chat-notes=N}; missing options keep
+     * their defaults.
+     */
+    public static LoadGeneratorConfig parse(String[] args) {
+        LoadGeneratorConfigBuilder builder = builder();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                continue;
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (name) {
+                case "target" -> builder.target(value);
+                case "connections-per-target" -> builder.connectionsPerTarget(Integer.parseInt(value));
+                case "balancing" -> builder.balancing(BalancingPolicy.fromShortName(value));
+                case "concurrency" -> builder.concurrency(Integer.parseInt(value));
+                case "qps" -> builder.qps(Integer.parseInt(value));
+                case "duration" -> builder.duration(Duration.ofSeconds(Long.parseLong(value)));
+                case "warmup" -> builder.warmup(Duration.ofSeconds(Long.parseLong(value)));
+                case "mix" -> builder.mix(parseMix(value));
+                case "route-points" -> builder.routePoints(Integer.parseInt(value));
+                case "chat-notes" -> builder.chatNotes(Integer.parseInt(value));
+                default -> throw new IllegalArgumentException("Unknown load option: " + arg);
+            }
+        }
+        return builder.build();
+    }
+
+    public List<String> getTargets() {
+        return Arrays.stream(target.split(",")).map(String::trim).filter(t -> !t.isEmpty()).collect(Collectors.toList());
+    }
+
+    /**
+     * Reads {@code get:70,list:10,...}. RPCs left out get no calls; a mix whose weights are all zero is
+     * rejected here rather than when the generator starts.
+     */
+    static Map<RpcType, Integer> parseMix(String value) {
+        Map<RpcType, Integer> mix = new EnumMap<>(RpcType.class);
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Mix entries look like get:70, not: " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Mix weights must not be negative: " + entry);
+            }
+            mix.put(RpcType.fromShortName(parts[0].trim()), weight);
+        }
+        if (mix.values().stream().allMatch(weight -> weight == 0)) {
+            throw new IllegalArgumentException("The RPC mix must have some positive weight");
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,65 @@
+package es.ysegura.grpctutorial.client;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Throughput and latency percentiles per RPC of a {@link RouteGuideLoadGenerator} run. Latencies
+ * are recorded in microseconds and printed in milliseconds.
+ */
+public class LoadReport {
+
+    private final Duration duration;
+    private final Map<RpcType, Histogram> latencies = new EnumMap<>(RpcType.class);
+    private final Map<RpcType, Long> errors = new EnumMap<>(RpcType.class);
+
+    LoadReport(Duration duration) {
+        this.duration = duration;
+    }
+
+    void add(RpcType type, Histogram histogram, long errorCount) {
+        latencies.put(type, histogram);
+        errors.put(type, errorCount);
+    }
+
+    public Histogram getLatencies(RpcType type) {
+        return latencies.get(type);
+    }
+
+    public long getErrors(RpcType type) {
+        return errors.getOrDefault(type, 0L);
+    }
+
+    public double getThroughput(RpcType type) {
+        return latencies.get(type).getTotalCount() / (duration.toMillis() / 1000.0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(String.format("%-14s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "rpc", "calls", "errors", "calls/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        long total = 0;
+        for (RpcType type : RpcType.values()) {
+            Histogram histogram = latencies.get(type);
+            if (histogram == null || histogram.getTotalCount() + getErrors(type) == 0) {
+                continue;
+            }
+            total += histogram.getTotalCount();
+            text.append(String.format("%-14s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    type.getShortName(),
+                    histogram.getTotalCount(),
+                    getErrors(type),
+                    getThroughput(type),
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0));
+        }
+        text.append(String.format("total %.1f calls/s over %d s", total / (duration.toMillis() / 1000.0), duration.toSeconds()));
+        return text.toString();
+    }
+}
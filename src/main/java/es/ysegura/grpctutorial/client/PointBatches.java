@@ -0,0 +1,45 @@
+package es.ysegura.grpctutorial.client;
+
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.protobuff.PointBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Delta encoding of routes for RecordRouteBatched.
+ */
+public final class PointBatches {
+
+    private PointBatches() {
+    }
+
+    /**
+     * Splits the route in batches of at most {@code batchSize} points, each coordinate being the
+     * difference with the previous point as {@link PointBatch} describes.
+     */
+    public static List<PointBatch> encode(List<Point> points, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        List<PointBatch> batches = new ArrayList<>((points.size() + batchSize - 1) / batchSize);
+        int latitude = 0;
+        int longitude = 0;
+        PointBatch.Builder batch = PointBatch.newBuilder();
+        for (Point point : points) {
+            // Se desborda a propósito: el servidor deshace la resta con la misma aritmética modular
+            batch.addLatitudeDeltas(point.getLatitude() - latitude);
+            batch.addLongitudeDeltas(point.getLongitude() - longitude);
+            latitude = point.getLatitude();
+            longitude = point.getLongitude();
+            if (batch.getLatitudeDeltasCount() == batchSize) {
+                batches.add(batch.build());
+                batch = PointBatch.newBuilder();
+            }
+        }
+        if (batch.getLatitudeDeltasCount() > 0) {
+            batches.add(batch.build());
+        }
+        return batches;
+    }
+}
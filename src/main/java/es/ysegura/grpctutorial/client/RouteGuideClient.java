@@ -2,20 +2,29 @@ package es.ysegura.grpctutorial.client;
 
 import es.ysegura.grpctutorial.RouteGuideUtil;
 import es.ysegura.grpctutorial.protobuff.*;
+import es.ysegura.grpctutorial.reactive.ReactiveClientCalls;
+import es.ysegura.grpctutorial.service.NextPageTokenInterceptor;
 import io.grpc.Channel;
+import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.MetadataUtils;
 import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
-public class RouteGuideClient {
+public class RouteGuideClient implements AutoCloseable {
 
     // Define las llamadas bloqueantes, que nos aparecerán como métodos del blockingStub
     private final RouteGuideGrpc.RouteGuideBlockingStub blockingStub;
@@ -23,17 +32,27 @@ public class RouteGuideClient {
     // Define las llamadas que utilizan stream (asíncronas). Se invocan como métodos del asyncStub
     private final RouteGuideGrpc.RouteGuideStub asyncStub;
     private final Random random = new Random();
+    private final FeatureBatcher featureBatcher;
 
     public RouteGuideClient(Channel channel) {
+        this(channel, Duration.ofMillis(2), 512);
+    }
+
+    /**
+     * @param batchDelay    how long {@link #getFeatureBatched} waits for more lookups to send together
+     * @param maxBatchSize  lookups that make a batch be sent without waiting for {@code batchDelay}
+     */
+    public RouteGuideClient(Channel channel, Duration batchDelay, int maxBatchSize) {
         blockingStub = RouteGuideGrpc.newBlockingStub(channel);
         asyncStub = RouteGuideGrpc.newStub(channel);
+        featureBatcher = new FeatureBatcher(channel, batchDelay, maxBatchSize);
     }
 
     /**
      * Blocking unary call example.  Calls getFeature and prints the response.
      */
     public Feature getFeature(int lat, int lon) {
-        log.info(String.format("*** GetFeature: lat=%d lon=%d", lat, lon));
+        log.debug("*** GetFeature: lat={} lon={}", lat, lon);
 
         Point request = Point.newBuilder().setLatitude(lat).setLongitude(lon).build();
 
@@ -47,15 +66,53 @@ public class RouteGuideClient {
         }
     }
 
+    /**
+     * Non-blocking GetFeature for high call rates: nothing is formatted or logged, and the future fails
+     * with the call's {@link StatusRuntimeException} instead of returning {@code null}. Cancelling the
+     * future cancels the call.
+     */
+    public CompletableFuture<Feature> getFeatureAsync(int lat, int lon) {
+        return getFeatureAsync(Point.newBuilder().setLatitude(lat).setLongitude(lon).build());
+    }
+
+    public CompletableFuture<Feature> getFeatureAsync(Point point) {
+        return ReactiveClientCalls.unary(asyncStub::getFeature, point);
+    }
+
+    /**
+     * Looks the point up in the next BatchGetFeature call, together with the other lookups made within
+     * the batch delay. Nothing is logged, since this is meant for many lookups at a time.
+     */
+    public CompletableFuture<Feature> getFeatureBatched(int lat, int lon) {
+        return featureBatcher.getFeature(Point.newBuilder().setLatitude(lat).setLongitude(lon).build());
+    }
+
+    /**
+     * Blocking unary call resolving all {@code points} in one round trip. The features come back in the
+     * same order as the points.
+     */
+    public List<Feature> getFeatures(List<Point> points) {
+        log.info("*** BatchGetFeature: {} points", points.size());
+        try {
+            return blockingStub.batchGetFeature(PointList.newBuilder().addAllPoints(points).build()).getFeaturesList();
+        } catch (StatusRuntimeException e) {
+            log.warn("RPC failed: {}", e.getStatus());
+            return null;
+        }
+    }
+
     private void printFeatureInformation(Feature feature) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
         Point location = feature.getLocation();
         if (RouteGuideUtil.exists(feature)) {
-            log.info(String.format("Found feature called \"%s\" at %f, %f",
+            log.debug(String.format("Found feature called \"%s\" at %f, %f",
                     feature.getName(),
                     RouteGuideUtil.getLatitude(location),
                     RouteGuideUtil.getLongitude(location)));
         } else {
-            log.info(String.format("Found no feature at %f, %f",
+            log.debug(String.format("Found no feature at %f, %f",
                     RouteGuideUtil.getLatitude(location),
                     RouteGuideUtil.getLongitude(location)));
         }
@@ -76,7 +133,7 @@ public class RouteGuideClient {
         try {
             // Mostramos los resultados obtenidos
             Iterator<Feature> features = blockingStub.listFeatures(rectangle);
-            features.forEachRemaining(f -> log.info(String.format("Feature found:%n%s", f)));
+            features.forEachRemaining(f -> log.debug("Feature found:\n{}", f));
             return features;
         } catch (StatusRuntimeException e) {
             log.warn(String.format("RPC failed: %s", e.getStatus()));
@@ -84,6 +141,48 @@ public class RouteGuideClient {
         }
     }
 
+    /**
+     * Non-blocking ListFeatures for high call rates. Each subscription makes one call, which reads
+     * features from the server only as fast as the subscriber requests them; nothing is formatted or
+     * logged per feature.
+     */
+    public Flow.Publisher<Feature> listFeaturesAsync(int lowLat, int lowLon, int hiLat, int hiLon) {
+        return listFeaturesAsync(Rectangle.newBuilder()
+                .setLo(Point.newBuilder().setLatitude(lowLat).setLongitude(lowLon).build())
+                .setHi(Point.newBuilder().setLatitude(hiLat).setLongitude(hiLon).build())
+                .build());
+    }
+
+    public Flow.Publisher<Feature> listFeaturesAsync(Rectangle area) {
+        return ReactiveClientCalls.serverStreaming(asyncStub::listFeatures, area);
+    }
+
+    /**
+     * Blocking server-streaming call that reads one page of at most {@code maxResults} features. Pass
+     * the {@link FeaturePage#nextPageToken()} of a page to read the next one.
+     */
+    public FeaturePage listFeatures(int lowLat, int lowLon, int hiLat, int hiLon, int maxResults, String pageToken) {
+        Rectangle rectangle =
+                Rectangle.newBuilder()
+                        .setLo(Point.newBuilder().setLatitude(lowLat).setLongitude(lowLon).build())
+                        .setHi(Point.newBuilder().setLatitude(hiLat).setLongitude(hiLon).build())
+                        .setMaxResults(maxResults)
+                        .setPageToken(pageToken == null ? "" : pageToken)
+                        .build();
+        AtomicReference<Metadata> headers = new AtomicReference<>();
+        AtomicReference<Metadata> trailers = new AtomicReference<>();
+        try {
+            List<Feature> features = new ArrayList<>();
+            blockingStub.withInterceptors(MetadataUtils.newCaptureMetadataInterceptor(headers, trailers))
+                    .listFeatures(rectangle)
+                    .forEachRemaining(features::add);
+            return new FeaturePage(features, trailers.get().get(NextPageTokenInterceptor.NEXT_PAGE_TOKEN));
+        } catch (StatusRuntimeException e) {
+            log.warn(String.format("RPC failed: %s", e.getStatus()));
+            return null;
+        }
+    }
+
     /**
      * Async client-streaming example. Sends {@code numPoints} randomly chosen points from {@code
      * features} with a variable delay in between. Prints the statistics when they are sent from the
@@ -99,9 +198,11 @@ public class RouteGuideClient {
         try {
             points.forEach(point -> {
                 if (finishLatch.getCount() != 0) {
-                    log.info(String.format("Visiting point %f, %f",
-                            RouteGuideUtil.getLatitude(point),
-                            RouteGuideUtil.getLongitude(point)));
+                    if (log.isDebugEnabled()) {
+                        log.debug(String.format("Visiting point %f, %f",
+                                RouteGuideUtil.getLatitude(point),
+                                RouteGuideUtil.getLongitude(point)));
+                    }
                     requestObserver.onNext(point);
 
                     // Simulamos que el cliente envía la información poco a poco (comportamiento humano)
@@ -126,6 +227,56 @@ public class RouteGuideClient {
         }
     }
 
+    /**
+     * Non-blocking RecordRoute: the points are sent as {@code points} produces them and only while the
+     * call can take them, without delays or logging.
+     */
+    public CompletableFuture<RouteSummary> recordRouteAsync(Flow.Publisher<Point> points) {
+        return ReactiveClientCalls.clientStreaming(asyncStub::recordRoute, points);
+    }
+
+    /**
+     * Sends the whole route through RecordRouteBatched, {@code batchSize} points per message and without
+     * delays, and waits for the summary. Returns {@code null} if the call fails.
+     */
+    public RouteSummary recordRouteBatched(List<Point> points, int batchSize) throws InterruptedException {
+        log.info("*** RecordRouteBatched: {} points", points.size());
+        final CountDownLatch finishLatch = new CountDownLatch(1);
+        AtomicReference<RouteSummary> summary = new AtomicReference<>();
+        StreamObserver<PointBatch> requestObserver = asyncStub.recordRouteBatched(new StreamObserver<>() {
+            @Override
+            public void onNext(RouteSummary value) {
+                summary.set(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                log.warn("RecordRouteBatched Failed: {}", Status.fromThrowable(t));
+                finishLatch.countDown();
+            }
+
+            @Override
+            public void onCompleted() {
+                finishLatch.countDown();
+            }
+        });
+
+        PointBatches.encode(points, batchSize).forEach(requestObserver::onNext);
+        requestObserver.onCompleted();
+        if (!finishLatch.await(1, TimeUnit.MINUTES)) {
+            log.warn("recordRouteBatched can not finish within 1 minutes");
+        }
+        return summary.get();
+    }
+
+    /**
+     * Non-blocking RouteChat. Each subscription makes one call that sends {@code notes} while the call is
+     * ready and reads the replies as the subscriber requests them; nothing is logged per note.
+     */
+    public Flow.Publisher<RouteNote> routeChatAsync(Flow.Publisher<RouteNote> notes) {
+        return ReactiveClientCalls.bidiStreaming(asyncStub::routeChat, notes);
+    }
+
     /**
      * Bidirectional example, which can only be asynchronous. Send some chat messages, and print any
      * chat messages that are sent from the server.
@@ -137,10 +288,10 @@ public class RouteGuideClient {
                 asyncStub.routeChat(new StreamObserver<>() {
                     @Override
                     public void onNext(RouteNote note) {
-                        log.info(String.format("Got message \"%s\" at %d, %d",
+                        log.debug("Got message \"{}\" at {}, {}",
                                 note.getMessage(),
                                 note.getLocation().getLatitude(),
-                                note.getLocation().getLongitude()));
+                                note.getLocation().getLongitude());
                     }
 
                     @Override
@@ -158,10 +309,10 @@ public class RouteGuideClient {
 
         try {
             routeNotes.forEach(request -> {
-                log.info(String.format("Sending message \"%s\" at %d, %d",
+                log.debug("Sending message \"{}\" at {}, {}",
                         request.getMessage(),
                         request.getLocation().getLatitude(),
-                        request.getLocation().getLongitude()));
+                        request.getLocation().getLongitude());
                 requestObserver.onNext(request);
             });
         } catch (RuntimeException e) {
@@ -176,5 +327,12 @@ public class RouteGuideClient {
         return finishLatch;
     }
 
-
+    /**
+     * Sends the lookups still waiting in {@link #getFeatureBatched} and stops its timer thread. The
+     * channel is not closed: it belongs to the caller.
+     */
+    @Override
+    public void close() {
+        featureBatcher.close();
+    }
 }
@@ -11,6 +11,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -26,13 +27,26 @@ public class RouteGuideClientRunner {
 
     private static final String SERVER = "localhost:8980";
 
+    /**
+     * Runs one call of each RPC as a demo, or with {@code load} as first argument runs a
+     * {@link RouteGuideLoadGenerator} (see {@link LoadGeneratorConfig#parse(String[])} for options).
+     * The demo calls {@code localhost:8980}, or the comma separated servers given as first argument,
+     * round robin.
+     */
     public static void main(String[] args) throws InterruptedException {
 
         // Cargamos la lista de features para poder probar con algún punto conocido
         features = getDefaultFeatures();
 
+        if (args.length > 0 && args[0].equals("load")) {
+            runLoad(LoadGeneratorConfig.parse(args));
+            return;
+        }
+
         // Definimos la conexión con el servidor gRPC
-        ManagedChannel channel = Grpc.newChannelBuilder(SERVER, InsecureChannelCredentials.create()).build();
+        ManagedChannel channel = args.length > 0
+                ? ChannelPool.forTargets(Arrays.asList(args[0].split(",")), 1, BalancingPolicy.ROUND_ROBIN)
+                : Grpc.newChannelBuilder(SERVER, InsecureChannelCredentials.create()).build();
 
         try {
             client = new RouteGuideClient(channel);
@@ -45,6 +59,20 @@ public class RouteGuideClientRunner {
             testRouteChat();
         } finally {
             // Aseguramos cerrar de forma ordenada la conexión
+            if (client != null) {
+                client.close();
+            }
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void runLoad(LoadGeneratorConfig config) throws InterruptedException {
+        // Con un único destino y una conexión el pool equivale a un canal normal
+        ManagedChannel channel = ChannelPool.forTargets(config.getTargets(), config.getConnectionsPerTarget(), config.getBalancing());
+        try {
+            LoadReport report = new RouteGuideLoadGenerator(channel, features, config).run();
+            log.info("Load test finished:\n{}", report);
+        } finally {
             channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
         }
     }
@@ -0,0 +1,217 @@
+package es.ysegura.grpctutorial.client;
+
+import es.ysegura.grpctutorial.protobuff.*;
+import io.grpc.Channel;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Recorder;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Closed-loop load generator for a RouteGuide server, used for capacity planning.
+ * <p>
+ * Runs {@code concurrency} worker threads that issue the configured mix of RPCs back to back, with no
+ * artificial pauses. With a target QPS each call gets a slot on a shared schedule and its latency is
+ * measured from that intended start, so a stalled server is not hidden by the workers waiting on it
+ * (coordinated omission). Latencies go to one lock-free HdrHistogram {@link Recorder} per RPC.
+ */
+@Slf4j
+public class RouteGuideLoadGenerator {
+
+    private static final long CALL_TIMEOUT_SECONDS = 30;
+    private static final int LIST_HALF_SIDE = 500_000; // 0.05 grados
+
+    private final LoadGeneratorConfig config;
+    private final RouteGuideGrpc.RouteGuideBlockingStub blockingStub;
+    private final RouteGuideGrpc.RouteGuideStub asyncStub;
+    private final List<Feature> features;
+    private final RpcType[] schedule;
+    private final Map<RpcType, Recorder> recorders = new EnumMap<>(RpcType.class);
+    private final Map<RpcType, LongAdder> errors = new EnumMap<>(RpcType.class);
+    private final AtomicLong nextSlot = new AtomicLong();
+
+    public RouteGuideLoadGenerator(Channel channel, List<Feature> features, LoadGeneratorConfig config) {
+        if (features.isEmpty()) {
+            throw new IllegalArgumentException("The load generator needs some features to pick points from");
+        }
+        this.config = config;
+        this.blockingStub = RouteGuideGrpc.newBlockingStub(channel);
+        this.asyncStub = RouteGuideGrpc.newStub(channel);
+        this.features = features;
+
+        // Tabla ponderada: cada RPC aparece tantas veces como su peso
+        List<RpcType> weighted = new ArrayList<>();
+        config.getMix().forEach((type, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(type);
+            }
+        });
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("The RPC mix must have some positive weight");
+        }
+        this.schedule = weighted.toArray(new RpcType[0]);
+        for (RpcType type : RpcType.values()) {
+            recorders.put(type, new Recorder(3));
+            errors.put(type, new LongAdder());
+        }
+    }
+
+    /**
+     * Runs the warm-up and the measured period, blocking until both are over.
+     */
+    public LoadReport run() throws InterruptedException {
+        long start = System.nanoTime();
+        long measureStart = start + config.getWarmup().toNanos();
+        long end = measureStart + config.getDuration().toNanos();
+        nextSlot.set(start);
+
+        log.info("Running {} workers against {} for {} s (+{} s warm-up), target QPS {}",
+                config.getConcurrency(), config.getTarget(), config.getDuration().toSeconds(),
+                config.getWarmup().toSeconds(), config.getQps() == 0 ? "unbounded" : config.getQps());
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < config.getConcurrency(); i++) {
+            Thread worker = new Thread(() -> work(measureStart, end), "load-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        LoadReport report = new LoadReport(config.getDuration());
+        for (RpcType type : RpcType.values()) {
+            report.add(type, recorders.get(type).getIntervalHistogram(), errors.get(type).sum());
+        }
+        return report;
+    }
+
+    private void work(long measureStart, long end) {
+        long interval = config.getQps() > 0 ? TimeUnit.SECONDS.toNanos(1) / config.getQps() : 0;
+        while (true) {
+            long intended = System.nanoTime();
+            if (interval > 0) {
+                intended = nextSlot.getAndAdd(interval);
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            if (intended >= end) {
+                return;
+            }
+            RpcType type = schedule[ThreadLocalRandom.current().nextInt(schedule.length)];
+            boolean ok = call(type);
+            long latency = System.nanoTime() - intended;
+            if (intended >= measureStart) {
+                if (ok) {
+                    recorders.get(type).recordValue(TimeUnit.NANOSECONDS.toMicros(latency));
+                } else {
+                    errors.get(type).increment();
+                }
+            }
+        }
+    }
+
+    private boolean call(RpcType type) {
+        try {
+            return switch (type) {
+                case GET_FEATURE -> getFeature();
+                case LIST_FEATURES -> listFeatures();
+                case RECORD_ROUTE -> recordRoute();
+                case ROUTE_CHAT -> routeChat();
+            };
+        } catch (StatusRuntimeException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean getFeature() {
+        blockingStub.withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS).getFeature(randomPoint());
+        return true;
+    }
+
+    private boolean listFeatures() {
+        Point center = randomPoint();
+        Rectangle area = Rectangle.newBuilder()
+                .setLo(Point.newBuilder()
+                        .setLatitude(center.getLatitude() - LIST_HALF_SIDE)
+                        .setLongitude(center.getLongitude() - LIST_HALF_SIDE))
+                .setHi(Point.newBuilder()
+                        .setLatitude(center.getLatitude() + LIST_HALF_SIDE)
+                        .setLongitude(center.getLongitude() + LIST_HALF_SIDE))
+                .build();
+        Iterator<Feature> result = blockingStub.withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS).listFeatures(area);
+        while (result.hasNext()) {
+            result.next();
+        }
+        return true;
+    }
+
+    private boolean recordRoute() throws InterruptedException {
+        CompletionObserver<RouteSummary> responses = new CompletionObserver<>();
+        StreamObserver<Point> requests = asyncStub.withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .recordRoute(responses);
+        for (int i = 0; i < config.getRoutePoints(); i++) {
+            requests.onNext(randomPoint());
+        }
+        requests.onCompleted();
+        return responses.await();
+    }
+
+    private boolean routeChat() throws InterruptedException {
+        CompletionObserver<RouteNote> responses = new CompletionObserver<>();
+        StreamObserver<RouteNote> requests = asyncStub.withDeadlineAfter(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .routeChat(responses);
+        for (int i = 0; i < config.getChatNotes(); i++) {
+            requests.onNext(RouteNote.newBuilder().setLocation(randomPoint()).setMessage("load").build());
+        }
+        requests.onCompleted();
+        return responses.await();
+    }
+
+    private Point randomPoint() {
+        return features.get(ThreadLocalRandom.current().nextInt(features.size())).getLocation();
+    }
+
+    private static final class CompletionObserver<T> implements StreamObserver<T> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean failed;
+
+        @Override
+        public void onNext(T value) {
+            // Solo medimos la llamada completa
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            failed = true;
+            done.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            done.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return done.await(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS) && !failed;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package es.ysegura.grpctutorial.client;
+
+/**
+ * The four RouteGuide RPCs, as used by the load generator.
+ */
+public enum RpcType {
+    GET_FEATURE("get"),
+    LIST_FEATURES("list"),
+    RECORD_ROUTE("record"),
+    ROUTE_CHAT("chat");
+
+    private final String shortName;
+
+    RpcType(String shortName) {
+        this.shortName = shortName;
+    }
+
+    public String getShortName() {
+        return shortName;
+    }
+
+    public static RpcType fromShortName(String shortName) {
+        for (RpcType type : values()) {
+            if (type.shortName.equalsIgnoreCase(shortName) || type.name().equalsIgnoreCase(shortName)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown RPC: " + shortName);
+    }
+}
@@ -0,0 +1,189 @@
+package es.ysegura.grpctutorial.cluster;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Assigns E7 coordinates to shards by quadkey.
+ * <p>
+ * The globe is split as a quadtree over plain latitude and longitude, down to {@code level} (level 16
+ * tiles are about 0.0055 x 0.0027 degrees). A tile's quadkey interleaves the bits of its column and
+ * row, so tiles that are close on the map tend to be close in key order. Every shard owns one
+ * contiguous range of quadkeys, which keeps neighbouring features together and lets a rectangle be
+ * mapped to the few shards it overlaps by walking the quadtree.
+ */
+public class QuadkeyPartitioner {
+
+    public static final int DEFAULT_LEVEL = 16;
+    private static final int MAX_LEVEL = 31;
+    private static final long LAT_RANGE = 1_800_000_001L;
+    private static final long LON_RANGE = 3_600_000_001L;
+
+    private final int level;
+    // Primer quadkey de cada shard salvo el 0; el shard i posee [boundaries[i-1], boundaries[i])
+    private final long[] boundaries;
+
+    private QuadkeyPartitioner(int level, long[] boundaries) {
+        if (level < 1 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("level must be between 1 and " + MAX_LEVEL + ": " + level);
+        }
+        this.level = level;
+        this.boundaries = boundaries;
+    }
+
+    /**
+     * {@code shards} ranges with the same number of quadkeys, that is the same area of the map.
+     */
+    public static QuadkeyPartitioner uniform(int shards, int level) {
+        checkShards(shards);
+        long keys = 1L << (2 * level);
+        long[] boundaries = new long[shards - 1];
+        for (int i = 1; i < shards; i++) {
+            boundaries[i - 1] = keys / shards * i;
+        }
+        return new QuadkeyPartitioner(level, boundaries);
+    }
+
+    /**
+     * {@code shards} ranges holding about the same number of {@code features} each. Features sharing a
+     * tile always go to the same shard, so a very dense tile can make the split uneven.
+     */
+    public static QuadkeyPartitioner balanced(Collection<Feature> features, int shards, int level) {
+        checkShards(shards);
+        QuadkeyPartitioner keys = new QuadkeyPartitioner(level, new long[0]);
+        long[] sorted = features.stream()
+                .mapToLong(feature -> keys.quadkey(feature.getLocation().getLatitude(), feature.getLocation().getLongitude()))
+                .sorted()
+                .toArray();
+        if (sorted.length == 0) {
+            return uniform(shards, level);
+        }
+        long[] boundaries = new long[shards - 1];
+        for (int i = 1; i < shards; i++) {
+            // Cuantil i/shards; nunca por debajo del límite anterior para que los rangos no se solapen
+            long quantile = sorted[(int) ((long) sorted.length * i / shards)];
+            boundaries[i - 1] = i > 1 ? Math.max(quantile, boundaries[i - 2]) : quantile;
+        }
+        return new QuadkeyPartitioner(level, boundaries);
+    }
+
+    private static void checkShards(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be positive: " + shards);
+        }
+    }
+
+    public int shardCount() {
+        return boundaries.length + 1;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int shardFor(Point point) {
+        return shardFor(point.getLatitude(), point.getLongitude());
+    }
+
+    public int shardFor(int latitude, int longitude) {
+        return shardForKey(quadkey(latitude, longitude));
+    }
+
+    /**
+     * Splits the features by owning shard.
+     */
+    public List<List<Feature>> split(Collection<Feature> features) {
+        List<List<Feature>> shards = new ArrayList<>(shardCount());
+        for (int i = 0; i < shardCount(); i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (Feature feature : features) {
+            shards.get(shardFor(feature.getLocation())).add(feature);
+        }
+        return shards;
+    }
+
+    /**
+     * Shards owning some tile that overlaps the rectangle, in increasing order. Bounds are inclusive
+     * like ListFeatures.
+     */
+    public int[] shardsFor(int left, int right, int top, int bottom) {
+        if (left > right || bottom > top) {
+            return new int[0];
+        }
+        boolean[] found = new boolean[shardCount()];
+        collect(0, 0, 0, 0, column(left), column(right), row(bottom), row(top), found);
+        int[] shards = new int[shardCount()];
+        int count = 0;
+        for (int i = 0; i < found.length; i++) {
+            if (found[i]) {
+                shards[count++] = i;
+            }
+        }
+        return Arrays.copyOf(shards, count);
+    }
+
+    /**
+     * Walks the quadtree cells that overlap the tile rectangle {@code [minColumn, maxColumn] x
+     * [minRow, maxRow]}, stopping at cells whose quadkeys all belong to one shard.
+     */
+    private void collect(int depth, long column, long row, long prefix,
+                         long minColumn, long maxColumn, long minRow, long maxRow, boolean[] found) {
+        int shift = level - depth;
+        long firstColumn = column << shift;
+        long lastColumn = firstColumn + (1L << shift) - 1;
+        long firstRow = row << shift;
+        long lastRow = firstRow + (1L << shift) - 1;
+        if (lastColumn < minColumn || firstColumn > maxColumn || lastRow < minRow || firstRow > maxRow) {
+            return;
+        }
+        long firstKey = prefix << (2 * shift);
+        long lastKey = firstKey + (1L << (2 * shift)) - 1;
+        int firstShard = shardForKey(firstKey);
+        if (firstShard == shardForKey(lastKey)) {
+            found[firstShard] = true;
+            return;
+        }
+        for (int child = 0; child < 4; child++) {
+            collect(depth + 1, column << 1 | (child & 1), row << 1 | (child >> 1), prefix << 2 | child,
+                    minColumn, maxColumn, minRow, maxRow, found);
+        }
+    }
+
+    long quadkey(int latitude, int longitude) {
+        long column = column(longitude);
+        long row = row(latitude);
+        long key = 0;
+        for (int bit = level - 1; bit >= 0; bit--) {
+            key = key << 2 | ((row >> bit) & 1) << 1 | ((column >> bit) & 1);
+        }
+        return key;
+    }
+
+    private long column(long longitude) {
+        long clamped = Math.max(-1_800_000_000L, Math.min(1_800_000_000L, longitude));
+        return (clamped + 1_800_000_000L) * (1L << level) / LON_RANGE;
+    }
+
+    private long row(long latitude) {
+        long clamped = Math.max(-900_000_000L, Math.min(900_000_000L, latitude));
+        return (clamped + 900_000_000L) * (1L << level) / LAT_RANGE;
+    }
+
+    private int shardForKey(long quadkey) {
+        int index = Arrays.binarySearch(boundaries, quadkey);
+        // Un quadkey igual a un límite es el primero del shard siguiente; con límites repetidos, del último
+        if (index >= 0) {
+            while (index + 1 < boundaries.length && boundaries[index + 1] == quadkey) {
+                index++;
+            }
+            return index + 1;
+        }
+        return -index - 1;
+    }
+}
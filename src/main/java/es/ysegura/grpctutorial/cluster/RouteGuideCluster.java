@@ -0,0 +1,148 @@
+package es.ysegura.grpctutorial.cluster;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.server.RouteGuideServerRunner;
+import io.grpc.Grpc;
+import io.grpc.InsecureChannelCredentials;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A router and its shard servers running in this JVM, for tests, benchmarks and demos of a sharded
+ * deployment on one machine. Each shard is a regular {@link RouteGuideServerRunner} holding only the
+ * features its quadkey range owns.
+ */
+@Slf4j
+public class RouteGuideCluster implements AutoCloseable {
+
+    public enum Transport {
+        IN_PROCESS,
+        /** Netty on free localhost ports. */
+        LOCALHOST
+    }
+
+    private final Transport transport;
+    private final QuadkeyPartitioner partitioner;
+    private final List<RouteGuideServerRunner> shards = new ArrayList<>();
+    private final List<ManagedChannel> shardChannels = new ArrayList<>();
+    private final List<ManagedChannel> clientChannels = new ArrayList<>();
+    private final String routerName = InProcessServerBuilder.generateName();
+    private Server router;
+
+    private RouteGuideCluster(Transport transport, QuadkeyPartitioner partitioner) {
+        this.transport = transport;
+        this.partitioner = partitioner;
+    }
+
+    /**
+     * Splits {@code features} in {@code shardCount} balanced quadkey ranges and starts one server per
+     * range plus the router.
+     */
+    public static RouteGuideCluster start(Collection<Feature> features, int shardCount, Transport transport,
+                                          RouteGuideConfig config) throws IOException {
+        return start(features, QuadkeyPartitioner.balanced(features, shardCount, QuadkeyPartitioner.DEFAULT_LEVEL),
+                transport, config);
+    }
+
+    public static RouteGuideCluster start(Collection<Feature> features, QuadkeyPartitioner partitioner,
+                                          Transport transport, RouteGuideConfig config) throws IOException {
+        RouteGuideCluster cluster = new RouteGuideCluster(transport, partitioner);
+        try {
+            cluster.startShards(partitioner.split(features), config);
+            cluster.startRouter();
+        } catch (IOException | RuntimeException e) {
+            cluster.close();
+            throw e;
+        }
+        return cluster;
+    }
+
+    private void startShards(List<List<Feature>> features, RouteGuideConfig config) throws IOException {
+        for (int i = 0; i < features.size(); i++) {
+            String name = routerName + "-shard-" + i;
+            ServerBuilder<?> builder = transport == Transport.IN_PROCESS
+                    ? InProcessServerBuilder.forName(name)
+                    : Grpc.newServerBuilderForPort(0, InsecureServerCredentials.create());
+            RouteGuideServerRunner shard = new RouteGuideServerRunner(builder, 0, features.get(i), config);
+            shard.start();
+            shards.add(shard);
+            shardChannels.add(transport == Transport.IN_PROCESS
+                    ? InProcessChannelBuilder.forName(name).build()
+                    : Grpc.newChannelBuilderForAddress("localhost", shard.getPort(), InsecureChannelCredentials.create()).build());
+            log.info("Shard " + i + " started with " + features.get(i).size() + " features");
+        }
+    }
+
+    private void startRouter() throws IOException {
+        ServerBuilder<?> builder = transport == Transport.IN_PROCESS
+                ? InProcessServerBuilder.forName(routerName)
+                : Grpc.newServerBuilderForPort(0, InsecureServerCredentials.create());
+        router = builder.addService(new RouteGuideRouter(partitioner, shardChannels).serviceDefinition())
+                .build()
+                .start();
+    }
+
+    /**
+     * New channel to the router, closed together with the cluster.
+     */
+    public ManagedChannel newChannel() {
+        ManagedChannel channel = transport == Transport.IN_PROCESS
+                ? InProcessChannelBuilder.forName(routerName).build()
+                : Grpc.newChannelBuilderForAddress("localhost", router.getPort(), InsecureChannelCredentials.create()).build();
+        clientChannels.add(channel);
+        return channel;
+    }
+
+    public QuadkeyPartitioner getPartitioner() {
+        return partitioner;
+    }
+
+    public RouteGuideServerRunner getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * Stops the router and then every shard. If the thread is interrupted while waiting, the rest is
+     * still stopped and the interrupt flag is restored before returning.
+     */
+    @Override
+    public void close() {
+        boolean interrupted = false;
+        for (ManagedChannel channel : clientChannels) {
+            channel.shutdownNow();
+        }
+        if (router != null) {
+            try {
+                router.shutdown().awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+                router.shutdownNow();
+            }
+        }
+        for (ManagedChannel channel : shardChannels) {
+            channel.shutdownNow();
+        }
+        for (RouteGuideServerRunner shard : shards) {
+            try {
+                shard.stop();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package es.ysegura.grpctutorial.cluster;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import es.ysegura.grpctutorial.protobuff.*;
+import es.ysegura.grpctutorial.service.NextPageTokenInterceptor;
+import es.ysegura.grpctutorial.service.PageTokens;
+import io.grpc.Channel;
+import io.grpc.Metadata;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * RouteGuide front end for features partitioned across several servers by a {@link QuadkeyPartitioner}.
+ * <p>
+ * GetFeature goes to the shard owning the point, BatchGetFeature to every shard owning some of the
+ * points, and FindNearest to all shards, keeping the k nearest answers. ListFeatures goes to the shards
+ * whose tiles overlap the rectangle one at a time, in shard order, relaying their streams with the
+ * client's flow control; its page tokens name the shard to resume in and that shard's own token. The
+ * other RPCs are not routed and answer {@code UNIMPLEMENTED}.
+ */
+@Slf4j
+public class RouteGuideRouter extends RouteGuideGrpc.RouteGuideImplBase {
+
+    private final QuadkeyPartitioner partitioner;
+    private final List<RouteGuideGrpc.RouteGuideStub> asyncStubs = new ArrayList<>();
+    private final List<RouteGuideGrpc.RouteGuideFutureStub> futureStubs = new ArrayList<>();
+
+    /**
+     * @param shards one channel per shard, in the order of the partitioner's shard numbers
+     */
+    public RouteGuideRouter(QuadkeyPartitioner partitioner, List<? extends Channel> shards) {
+        if (shards.size() != partitioner.shardCount()) {
+            throw new IllegalArgumentException(
+                    "Expected " + partitioner.shardCount() + " shard channels, got " + shards.size());
+        }
+        this.partitioner = partitioner;
+        for (Channel shard : shards) {
+            asyncStubs.add(RouteGuideGrpc.newStub(shard));
+            futureStubs.add(RouteGuideGrpc.newFutureStub(shard));
+        }
+    }
+
+    /**
+     * Service definition with the interceptor that returns ListFeatures page tokens.
+     */
+    public ServerServiceDefinition serviceDefinition() {
+        return ServerInterceptors.intercept(this, new NextPageTokenInterceptor());
+    }
+
+    @Override
+    public void getFeature(Point request, StreamObserver<Feature> responseObserver) {
+        // La respuesta y los errores del shard pasan tal cual; cancelar esta llamada cancela la del shard
+        asyncStubs.get(partitioner.shardFor(request)).getFeature(request, responseObserver);
+    }
+
+    @Override
+    public void batchGetFeature(PointList request, StreamObserver<FeatureList> responseObserver) {
+        int shardCount = partitioner.shardCount();
+        List<PointList.Builder> perShard = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            perShard.add(PointList.newBuilder());
+        }
+        int[] owners = new int[request.getPointsCount()];
+        for (int i = 0; i < owners.length; i++) {
+            Point point = request.getPoints(i);
+            owners[i] = partitioner.shardFor(point);
+            perShard.get(owners[i]).addPoints(point);
+        }
+        List<ListenableFuture<FeatureList>> calls = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            calls.add(perShard.get(i).getPointsCount() == 0
+                    ? Futures.immediateFuture(FeatureList.getDefaultInstance())
+                    : futureStubs.get(i).batchGetFeature(perShard.get(i).build()));
+        }
+        Futures.addCallback(Futures.allAsList(calls), new FutureCallback<>() {
+            @Override
+            public void onSuccess(List<FeatureList> results) {
+                // Cada shard responde en el orden en que recibió sus puntos
+                int[] next = new int[shardCount];
+                FeatureList.Builder features = FeatureList.newBuilder();
+                for (int owner : owners) {
+                    features.addFeatures(results.get(owner).getFeatures(next[owner]++));
+                }
+                responseObserver.onNext(features.build());
+                responseObserver.onCompleted();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                responseObserver.onError(Status.fromThrowable(t).asRuntimeException());
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public void findNearest(NearestRequest request, StreamObserver<NearestResponse> responseObserver) {
+        List<ListenableFuture<NearestResponse>> calls = new ArrayList<>(futureStubs.size());
+        for (RouteGuideGrpc.RouteGuideFutureStub stub : futureStubs) {
+            calls.add(stub.findNearest(request));
+        }
+        Futures.addCallback(Futures.allAsList(calls), new FutureCallback<>() {
+            @Override
+            public void onSuccess(List<NearestResponse> results) {
+                // Orden estable: a igual distancia, primero el shard con menor número
+                List<NearestFeature> merged = new ArrayList<>();
+                results.forEach(result -> merged.addAll(result.getFeaturesList()));
+                merged.sort(Comparator.comparingInt(NearestFeature::getDistance));
+                responseObserver.onNext(NearestResponse.newBuilder()
+                        .addAllFeatures(merged.subList(0, min(merged.size(), request.getK())))
+                        .build());
+                responseObserver.onCompleted();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                responseObserver.onError(Status.fromThrowable(t).asRuntimeException());
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public void listFeatures(Rectangle area, StreamObserver<Feature> responseObserver) {
+        try {
+            PageTokens.checkMaxResults(area.getMaxResults());
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+            return;
+        }
+        int[] shards = partitioner.shardsFor(
+                min(area.getLo().getLongitude(), area.getHi().getLongitude()),
+                max(area.getLo().getLongitude(), area.getHi().getLongitude()),
+                max(area.getLo().getLatitude(), area.getHi().getLatitude()),
+                min(area.getLo().getLatitude(), area.getHi().getLatitude()));
+        int first = 0;
+        String shardToken = "";
+        if (!area.getPageToken().isEmpty()) {
+            ShardPageToken token;
+            try {
+                token = ShardPageToken.decode(area.getPageToken());
+            } catch (StatusRuntimeException e) {
+                responseObserver.onError(e);
+                return;
+            }
+            first = Arrays.binarySearch(shards, token.shard());
+            if (first < 0) {
+                responseObserver.onError(Status.INVALID_ARGUMENT.withDescription("Invalid page_token").asRuntimeException());
+                return;
+            }
+            shardToken = token.shardToken();
+        }
+        if (shards.length == 0) {
+            responseObserver.onCompleted();
+            return;
+        }
+        ServerCallStreamObserver<Feature> call = (ServerCallStreamObserver<Feature>) responseObserver;
+        ListFeaturesRelay relay = new ListFeaturesRelay(call, area, shards, NextPageTokenInterceptor.currentHolder());
+        call.setOnReadyHandler(relay::onReady);
+        call.setOnCancelHandler(relay::cancel);
+        relay.start(first, shardToken);
+    }
+
+    /**
+     * Relays the ListFeatures streams of the shards one after the other, in shard order. Each shard is
+     * asked only for what is left of the page, starting from its own page token, and a message is only
+     * requested from it once the client can take the previous one, so a slow client holds the shard back
+     * instead of filling the router's buffers.
+     */
+    private final class ListFeaturesRelay {
+
+        private final ServerCallStreamObserver<Feature> responseObserver;
+        private final Rectangle area;
+        private final int[] shards;
+        private final AtomicReference<String> nextPageToken;
+        // Solo se tocan desde los callbacks de la llamada al shard en curso, que nunca se solapan
+        private int sent;
+        private ClientCallStreamObserver<Rectangle> shardCall;
+        private boolean waiting;
+        private boolean cancelled;
+
+        ListFeaturesRelay(ServerCallStreamObserver<Feature> responseObserver, Rectangle area, int[] shards,
+                          AtomicReference<String> nextPageToken) {
+            this.responseObserver = responseObserver;
+            this.area = area;
+            this.shards = shards;
+            this.nextPageToken = nextPageToken;
+        }
+
+        void start(int index, String shardToken) {
+            int maxResults = area.getMaxResults();
+            Rectangle request = area.toBuilder()
+                    .setMaxResults(maxResults == 0 ? 0 : maxResults - sent)
+                    .setPageToken(shardToken)
+                    .build();
+            AtomicReference<Metadata> trailers = new AtomicReference<>();
+            asyncStubs.get(shards[index])
+                    .withInterceptors(MetadataUtils.newCaptureMetadataInterceptor(new AtomicReference<>(), trailers))
+                    .listFeatures(request, new ClientResponseObserver<Rectangle, Feature>() {
+                        @Override
+                        public void beforeStart(ClientCallStreamObserver<Rectangle> requestStream) {
+                            requestStream.disableAutoRequestWithInitial(1);
+                            synchronized (ListFeaturesRelay.this) {
+                                shardCall = requestStream;
+                                waiting = false;
+                                if (cancelled) {
+                                    requestStream.cancel("Client cancelled", null);
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void onNext(Feature feature) {
+                            responseObserver.onNext(feature);
+                            sent++;
+                            requestNext();
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            synchronized (ListFeaturesRelay.this) {
+                                if (cancelled) {
+                                    return;
+                                }
+                            }
+                            log.warn("ListFeatures failed on shard " + shards[index] + ": " + Status.fromThrowable(t));
+                            responseObserver.onError(Status.fromThrowable(t).asRuntimeException());
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            Metadata shardTrailers = trailers.get();
+                            finished(index, shardTrailers != null ? shardTrailers.get(NextPageTokenInterceptor.NEXT_PAGE_TOKEN) : null);
+                        }
+                    });
+        }
+
+        /**
+         * Moves on once a shard has sent its part of the page: the page ends inside this shard if it
+         * returned a token, otherwise it goes on with the next shard while there is room.
+         */
+        private void finished(int index, String shardToken) {
+            if (shardToken != null) {
+                nextPageToken.set(new ShardPageToken(shards[index], shardToken).encode());
+            } else if (index + 1 < shards.length) {
+                if (area.getMaxResults() == 0 || sent < area.getMaxResults()) {
+                    start(index + 1, "");
+                    return;
+                }
+                nextPageToken.set(new ShardPageToken(shards[index + 1], "").encode());
+            }
+            responseObserver.onCompleted();
+        }
+
+        private void requestNext() {
+            ClientCallStreamObserver<Rectangle> call;
+            synchronized (this) {
+                if (!responseObserver.isReady()) {
+                    waiting = true;
+                    return;
+                }
+                call = shardCall;
+            }
+            call.request(1);
+        }
+
+        void onReady() {
+            ClientCallStreamObserver<Rectangle> call;
+            synchronized (this) {
+                if (!waiting || !responseObserver.isReady()) {
+                    return;
+                }
+                waiting = false;
+                call = shardCall;
+            }
+            call.request(1);
+        }
+
+        void cancel() {
+            ClientCallStreamObserver<Rectangle> call;
+            synchronized (this) {
+                cancelled = true;
+                call = shardCall;
+            }
+            if (call != null) {
+                call.cancel("Client cancelled", null);
+            }
+        }
+    }
+
+    /**
+     * Router page token: the shard the next page starts in and that shard's own page token.
+     */
+    private record ShardPageToken(int shard, String shardToken) {
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((shard + ":" + shardToken).getBytes(StandardCharsets.US_ASCII));
+        }
+
+        static ShardPageToken decode(String pageToken) {
+            try {
+                String token = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.US_ASCII);
+                int separator = token.indexOf(':');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("missing shard");
+                }
+                return new ShardPageToken(Integer.parseInt(token.substring(0, separator)), token.substring(separator + 1));
+            } catch (IllegalArgumentException e) {
+                throw Status.INVALID_ARGUMENT.withDescription("Invalid page_token").withCause(e).asRuntimeException();
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package es.ysegura.grpctutorial.reactive;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * The few {@link Flow} operators the reactive RouteGuide handlers need, keeping demand end to end.
+ */
+public final class FlowOperators {
+
+    private FlowOperators() {
+    }
+
+    /**
+     * Publishes the elements of {@code items} as they are requested. Every subscriber gets its own
+     * iterator.
+     */
+    public static <T> Flow.Publisher<T> fromIterable(Iterable<? extends T> items) {
+        return subscriber -> subscriber.onSubscribe(new IterableSubscription<>(subscriber, items.iterator()));
+    }
+
+    /**
+     * Feeds every element of {@code source} to {@code accumulate} and completes with {@code accumulator}
+     * when the source completes. Elements are requested {@code prefetch} at a time, topping up when half
+     * have been consumed. Cancelling the future cancels the source.
+     */
+    public static <T, A> CompletableFuture<A> reduce(Flow.Publisher<T> source, A accumulator,
+                                                     BiConsumer<? super A, ? super T> accumulate, int prefetch) {
+        if (prefetch < 2) {
+            throw new IllegalArgumentException("prefetch must be at least 2: " + prefetch);
+        }
+        CompletableFuture<A> result = new CompletableFuture<>();
+        source.subscribe(new Flow.Subscriber<T>() {
+            private final int limit = prefetch / 2;
+            private Flow.Subscription subscription;
+            private int consumed;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                result.whenComplete((value, error) -> {
+                    if (result.isCancelled()) {
+                        subscription.cancel();
+                    }
+                });
+                subscription.request(prefetch);
+            }
+
+            @Override
+            public void onNext(T item) {
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    accumulate.accept(accumulator, item);
+                } catch (RuntimeException e) {
+                    subscription.cancel();
+                    result.completeExceptionally(e);
+                    return;
+                }
+                if (++consumed == limit) {
+                    consumed = 0;
+                    subscription.request(limit);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(accumulator);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Maps each element of {@code source} to several and emits them in order. The next source element is
+     * only requested once the previous one's results have all been requested downstream, so a subscriber
+     * that stops requesting stops the source too.
+     */
+    public static <T, R> Flow.Publisher<R> concatMapIterable(Flow.Publisher<T> source,
+                                                            Function<? super T, ? extends Iterable<? extends R>> mapper) {
+        return subscriber -> source.subscribe(new ConcatMapSubscriber<>(subscriber, mapper));
+    }
+
+    private static final class IterableSubscription<T> implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super T> downstream;
+        private final Iterator<? extends T> iterator;
+        private final AtomicLong requested = new AtomicLong();
+        private volatile boolean cancelled;
+
+        IterableSubscription(Flow.Subscriber<? super T> downstream, Iterator<? extends T> iterator) {
+            this.downstream = downstream;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                downstream.onError(new IllegalArgumentException("request must be positive: " + n));
+                return;
+            }
+            // Solo emite quien encuentra la demanda a cero; una llamada reentrante desde onNext solo la suma
+            if (requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n) != 0) {
+                return;
+            }
+            long emitted = 0;
+            long demand = requested.get();
+            while (true) {
+                while (emitted != demand && !cancelled && iterator.hasNext()) {
+                    downstream.onNext(iterator.next());
+                    emitted++;
+                }
+                if (cancelled) {
+                    return;
+                }
+                if (!iterator.hasNext()) {
+                    cancelled = true;
+                    downstream.onComplete();
+                    return;
+                }
+                demand = requested.addAndGet(-emitted);
+                emitted = 0;
+                if (demand == 0) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private static final class ConcatMapSubscriber<T, R> implements Flow.Subscriber<T>, Flow.Subscription {
+
+        private final Flow.Subscriber<? super R> downstream;
+        private final Function<? super T, ? extends Iterable<? extends R>> mapper;
+        // Nunca más de un elemento, ya que se piden de uno en uno
+        private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private volatile Flow.Subscription upstream;
+        private volatile boolean upstreamDone;
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+        // Solo se tocan dentro de drain()
+        private Iterator<? extends R> current;
+        private boolean awaitingUpstream;
+
+        ConcatMapSubscriber(Flow.Subscriber<? super R> downstream,
+                            Function<? super T, ? extends Iterable<? extends R>> mapper) {
+            this.downstream = downstream;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+            drain();
+        }
+
+        @Override
+        public void onNext(T item) {
+            queue.offer(item);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                upstream.cancel();
+                error = new IllegalArgumentException("request must be positive: " + n);
+            } else {
+                requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            upstream.cancel();
+        }
+
+        /**
+         * Emits while there is demand. Only one thread drains at a time; calls made meanwhile are
+         * picked up by the draining thread before it leaves.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                long demand = requested.get();
+                long emitted = 0;
+                while (!cancelled) {
+                    Throwable failure = error;
+                    if (failure != null) {
+                        // Los errores, del origen o de una petición inválida, terminan sin vaciar lo pendiente
+                        terminate(failure);
+                        break;
+                    }
+                    if (current != null && current.hasNext()) {
+                        if (emitted == demand) {
+                            break;
+                        }
+                        downstream.onNext(current.next());
+                        emitted++;
+                        continue;
+                    }
+                    current = null;
+                    boolean done = upstreamDone;
+                    T next = queue.poll();
+                    if (next != null) {
+                        awaitingUpstream = false;
+                        try {
+                            current = mapper.apply(next).iterator();
+                        } catch (RuntimeException e) {
+                            upstream.cancel();
+                            terminate(e);
+                            break;
+                        }
+                        continue;
+                    }
+                    if (done) {
+                        terminate(error);
+                        break;
+                    }
+                    if (!awaitingUpstream && emitted < demand) {
+                        awaitingUpstream = true;
+                        upstream.request(1);
+                    }
+                    break;
+                }
+                if (emitted > 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void terminate(Throwable failure) {
+            cancelled = true;
+            queue.clear();
+            if (failure != null) {
+                downstream.onError(failure);
+            } else {
+                downstream.onComplete();
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package es.ysegura.grpctutorial.reactive;
+
+import io.grpc.stub.CallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.Flow;
+
+/**
+ * The messages a call receives, as a {@link Flow.Publisher} with a single subscriber.
+ * <p>
+ * gRPC hands the messages to this object as a {@link StreamObserver}, but only the ones requested with
+ * {@link CallStreamObserver#request(int)}: automatic requests must be disabled on the call, and the
+ * subscriber's {@code request(n)} is what pulls messages from the transport. Messages nobody asked for
+ * stay in the peer, held back by HTTP/2 flow control.
+ */
+public final class InboundPublisher<T> implements Flow.Publisher<T>, StreamObserver<T> {
+
+    // Mensajes pedidos a gRPC a la vez; el resto de la demanda se pide según van llegando
+    private static final int MAX_IN_FLIGHT = 256;
+
+    private Flow.Subscriber<? super T> subscriber;
+    private CallStreamObserver<?> flowControl;
+    private Runnable cancelCall;
+    private boolean done;
+    // Demanda del suscriptor aún no pedida a gRPC, y mensajes pedidos a gRPC aún no recibidos
+    private long demand;
+    private int inFlight;
+    // Fin de la llamada llegado antes de que hubiera suscriptor
+    private boolean completedEarly;
+    private Throwable errorEarly;
+
+    /**
+     * Starts pulling messages through {@code flowControl}, which must belong to a call that has already
+     * started and has automatic requests disabled. Demand signalled before this is kept until then.
+     *
+     * @param cancelCall run when the subscriber cancels, or {@code null} to just stop requesting
+     */
+    public void attach(CallStreamObserver<?> flowControl, Runnable cancelCall) {
+        boolean cancelled;
+        synchronized (this) {
+            this.flowControl = flowControl;
+            this.cancelCall = cancelCall;
+            cancelled = done && subscriber != null && !completedEarly && errorEarly == null;
+            refill();
+        }
+        if (cancelled && cancelCall != null) {
+            cancelCall.run();
+        }
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        boolean completed;
+        Throwable error;
+        synchronized (this) {
+            if (this.subscriber != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("Inbound messages can only be subscribed once"));
+                return;
+            }
+            this.subscriber = subscriber;
+            completed = completedEarly;
+            error = errorEarly;
+        }
+        subscriber.onSubscribe(new Subscription());
+        if (error != null) {
+            subscriber.onError(error);
+        } else if (completed) {
+            subscriber.onComplete();
+        }
+    }
+
+    private void refill() {
+        if (flowControl == null || done) {
+            return;
+        }
+        int more = (int) Math.min(demand, MAX_IN_FLIGHT - inFlight);
+        if (more > 0) {
+            demand -= more;
+            inFlight += more;
+            flowControl.request(more);
+        }
+    }
+
+    /**
+     * Marks the stream as finished. Returns the subscriber to notify, or {@code null} if it already was
+     * finished or there is no subscriber yet.
+     */
+    private synchronized Flow.Subscriber<? super T> finish() {
+        if (done) {
+            return null;
+        }
+        done = true;
+        return subscriber;
+    }
+
+    @Override
+    public void onNext(T value) {
+        Flow.Subscriber<? super T> target;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            inFlight--;
+            refill();
+            target = subscriber;
+        }
+        target.onNext(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        Flow.Subscriber<? super T> target;
+        synchronized (this) {
+            if (!done && subscriber == null) {
+                errorEarly = t;
+            }
+            target = finish();
+        }
+        if (target != null) {
+            target.onError(t);
+        }
+    }
+
+    @Override
+    public void onCompleted() {
+        Flow.Subscriber<? super T> target;
+        synchronized (this) {
+            if (!done && subscriber == null) {
+                completedEarly = true;
+            }
+            target = finish();
+        }
+        if (target != null) {
+            target.onComplete();
+        }
+    }
+
+    private final class Subscription implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            Flow.Subscriber<? super T> target = null;
+            synchronized (InboundPublisher.this) {
+                if (n <= 0) {
+                    target = finish();
+                } else if (!done) {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    refill();
+                }
+            }
+            if (target != null) {
+                cancelCall();
+                target.onError(new IllegalArgumentException("request must be positive: " + n));
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (finish() != null) {
+                cancelCall();
+            }
+        }
+
+        private void cancelCall() {
+            Runnable cancel;
+            synchronized (InboundPublisher.this) {
+                cancel = cancelCall;
+            }
+            // Si la llamada aún no está enlazada, attach la cancela al llegar
+            if (cancel != null) {
+                cancel.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package es.ysegura.grpctutorial.reactive;
+
+import io.grpc.Status;
+import io.grpc.stub.CallStreamObserver;
+
+import java.util.concurrent.Flow;
+
+/**
+ * Sends what a {@link Flow.Publisher} produces as the messages of a call.
+ * <p>
+ * Demand follows the transport: a batch of {@value #BATCH} messages is requested from the publisher
+ * while {@link CallStreamObserver#isReady()}, and the next batch only once that one has been written and
+ * the call is still ready, or later from the on-ready handler. A slow peer therefore slows the publisher
+ * down, overshooting the transport's buffer by at most one batch.
+ */
+public final class OutboundSubscriber<T> implements Flow.Subscriber<T> {
+
+    private static final int BATCH = 32;
+
+    private final CallStreamObserver<T> call;
+    private Flow.Subscription subscription;
+    // Pedidos al publicador y aún no recibidos
+    private int pending;
+    private boolean done;
+
+    /**
+     * Registers the on-ready handler of {@code call}, so it must be created before the call starts: in
+     * {@code beforeStart} on the client, inside the service method on the server.
+     */
+    public OutboundSubscriber(CallStreamObserver<T> call) {
+        this.call = call;
+        call.setOnReadyHandler(this::requestIfReady);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            if (this.subscription != null || done) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+        }
+        requestIfReady();
+    }
+
+    private void requestIfReady() {
+        Flow.Subscription requestFrom;
+        synchronized (this) {
+            if (subscription == null || done || pending > 0 || !call.isReady()) {
+                return;
+            }
+            pending = BATCH;
+            requestFrom = subscription;
+        }
+        requestFrom.request(BATCH);
+    }
+
+    @Override
+    public void onNext(T item) {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            pending--;
+        }
+        call.onNext(item);
+        requestIfReady();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (finish()) {
+            call.onError(Status.fromThrowable(throwable).asRuntimeException());
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        if (finish()) {
+            call.onCompleted();
+        }
+    }
+
+    /**
+     * Stops sending and cancels the publisher, for when the call ends first.
+     */
+    public void cancel() {
+        Flow.Subscription cancelled;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            cancelled = subscription;
+        }
+        if (cancelled != null) {
+            cancelled.cancel();
+        }
+    }
+
+    private synchronized boolean finish() {
+        if (done) {
+            return false;
+        }
+        done = true;
+        return true;
+    }
+}
@@ -0,0 +1,135 @@
+package es.ysegura.grpctutorial.reactive;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Calls an async stub with {@link Flow} types instead of {@link StreamObserver}s, one method per kind of
+ * RPC like gRPC's {@code ClientCalls}. Requests are sent only while the call is ready and responses are
+ * read only as the subscriber requests them. The returned publishers are cold: every subscription makes a
+ * new call, and cancelling it cancels the call.
+ * <pre>
+ * CompletableFuture&lt;Feature&gt; feature = ReactiveClientCalls.unary(stub::getFeature, point);
+ * Flow.Publisher&lt;RouteNote&gt; replies = ReactiveClientCalls.bidiStreaming(stub::routeChat, notes);
+ * </pre>
+ */
+public final class ReactiveClientCalls {
+
+    private ReactiveClientCalls() {
+    }
+
+    /**
+     * Cancelling the future cancels the call.
+     */
+    public static <Q, R> CompletableFuture<R> unary(BiConsumer<Q, StreamObserver<R>> call, Q request) {
+        UnaryCallFuture<Q, R> future = new UnaryCallFuture<>();
+        call.accept(request, future);
+        return future;
+    }
+
+    public static <Q, R> Flow.Publisher<R> serverStreaming(BiConsumer<Q, StreamObserver<R>> call, Q request) {
+        return subscriber -> {
+            InboundPublisher<R> responses = new InboundPublisher<>();
+            responses.subscribe(subscriber);
+            ResponseObserver<Q, R> observer = new ResponseObserver<>(responses, false);
+            call.accept(request, observer);
+            observer.started();
+        };
+    }
+
+    /**
+     * Sends {@code requests} and completes with the response. Cancelling the future cancels the call and
+     * the requests.
+     */
+    public static <Q, R> CompletableFuture<R> clientStreaming(Function<StreamObserver<R>, StreamObserver<Q>> call,
+                                                              Flow.Publisher<Q> requests) {
+        UnaryCallFuture<Q, R> response = new UnaryCallFuture<>();
+        ResponseObserver<Q, R> observer = new ResponseObserver<>(response, true);
+        response.whenComplete((value, error) -> {
+            if (error != null) {
+                observer.cancelRequests();
+            }
+        });
+        call.apply(observer);
+        response.beforeStart(observer.requestStream);
+        observer.started();
+        requests.subscribe(observer.requests);
+        return response;
+    }
+
+    public static <Q, R> Flow.Publisher<R> bidiStreaming(Function<StreamObserver<R>, StreamObserver<Q>> call,
+                                                         Flow.Publisher<Q> requests) {
+        return subscriber -> {
+            InboundPublisher<R> responses = new InboundPublisher<>();
+            responses.subscribe(subscriber);
+            ResponseObserver<Q, R> observer = new ResponseObserver<>(responses, true);
+            call.apply(observer);
+            observer.started();
+            requests.subscribe(observer.requests);
+        };
+    }
+
+    /**
+     * Receives the responses of a call, wiring its flow control to the inbound publisher and, for calls
+     * with a request stream, its readiness to the outbound subscriber.
+     */
+    private static final class ResponseObserver<Q, R> implements ClientResponseObserver<Q, R> {
+
+        private final StreamObserver<R> responses;
+        private final boolean streamingRequests;
+        private ClientCallStreamObserver<Q> requestStream;
+        private OutboundSubscriber<Q> requests;
+
+        ResponseObserver(StreamObserver<R> responses, boolean streamingRequests) {
+            this.responses = responses;
+            this.streamingRequests = streamingRequests;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<Q> requestStream) {
+            this.requestStream = requestStream;
+            if (responses instanceof InboundPublisher) {
+                requestStream.disableAutoRequestWithInitial(0);
+            }
+            if (streamingRequests) {
+                requests = new OutboundSubscriber<>(requestStream);
+            }
+        }
+
+        void started() {
+            if (responses instanceof InboundPublisher<R> publisher) {
+                publisher.attach(requestStream, () -> requestStream.cancel("Subscription cancelled", null));
+            }
+        }
+
+        void cancelRequests() {
+            if (requests != null) {
+                requests.cancel();
+            }
+        }
+
+        @Override
+        public void onNext(R value) {
+            responses.onNext(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            // La llamada ha terminado: no tiene sentido seguir produciendo peticiones
+            cancelRequests();
+            responses.onError(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            cancelRequests();
+            responses.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package es.ysegura.grpctutorial.reactive;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+/**
+ * Implements service methods with {@link Flow} types instead of {@link StreamObserver}s, one method per
+ * kind of RPC like gRPC's {@code ServerCalls}. Request messages are read from the transport only as the
+ * handler requests them, and responses are requested from the handler only while the client can take
+ * them, so a slow client or a slow handler holds the other side back instead of filling buffers.
+ * <pre>
+ * public StreamObserver&lt;RouteNote&gt; routeChat(StreamObserver&lt;RouteNote&gt; responseObserver) {
+ *     return ReactiveServerCalls.bidiStreaming(responseObserver, notes -&gt; replies(notes));
+ * }
+ * </pre>
+ * Each method must be called from inside the service method, before it returns.
+ */
+public final class ReactiveServerCalls {
+
+    private ReactiveServerCalls() {
+    }
+
+    public static <R> void unary(CompletionStage<R> response, StreamObserver<R> responseObserver) {
+        ServerCallStreamObserver<R> call = (ServerCallStreamObserver<R>) responseObserver;
+        complete(call, response);
+    }
+
+    public static <R> void serverStreaming(Flow.Publisher<R> responses, StreamObserver<R> responseObserver) {
+        ServerCallStreamObserver<R> call = (ServerCallStreamObserver<R>) responseObserver;
+        OutboundSubscriber<R> subscriber = new OutboundSubscriber<>(call);
+        call.setOnCancelHandler(subscriber::cancel);
+        responses.subscribe(subscriber);
+    }
+
+    /**
+     * @return the request observer the service method must return
+     */
+    public static <Q, R> StreamObserver<Q> clientStreaming(StreamObserver<R> responseObserver,
+                                                           Function<Flow.Publisher<Q>, CompletionStage<R>> handler) {
+        ServerCallStreamObserver<R> call = (ServerCallStreamObserver<R>) responseObserver;
+        call.disableAutoRequest();
+        InboundPublisher<Q> requests = new InboundPublisher<>();
+        requests.attach(call, null);
+        complete(call, handler.apply(requests));
+        return requests;
+    }
+
+    /**
+     * @return the request observer the service method must return
+     */
+    public static <Q, R> StreamObserver<Q> bidiStreaming(StreamObserver<R> responseObserver,
+                                                         Function<Flow.Publisher<Q>, Flow.Publisher<R>> handler) {
+        ServerCallStreamObserver<R> call = (ServerCallStreamObserver<R>) responseObserver;
+        call.disableAutoRequest();
+        InboundPublisher<Q> requests = new InboundPublisher<>();
+        // El servidor no puede cancelar solo la entrada: al cancelar la suscripción deja de pedir mensajes
+        requests.attach(call, null);
+        serverStreaming(handler.apply(requests), call);
+        return requests;
+    }
+
+    private static <R> void complete(ServerCallStreamObserver<R> call, CompletionStage<R> response) {
+        // Con un onCancelHandler registrado, gRPC ignora las respuestas a una llamada ya cancelada
+        call.setOnCancelHandler(() -> response.toCompletableFuture().cancel(false));
+        response.whenComplete((value, error) -> {
+            if (call.isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                call.onError(Status.fromThrowable(cause).asRuntimeException());
+            } else {
+                call.onNext(value);
+                call.onCompleted();
+            }
+        });
+    }
+}
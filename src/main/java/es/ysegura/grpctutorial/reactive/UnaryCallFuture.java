@@ -0,0 +1,44 @@
+package es.ysegura.grpctutorial.reactive;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Future completed by the response of a unary call. Cancelling the future cancels the call.
+ */
+final class UnaryCallFuture<Q, R> extends CompletableFuture<R> implements ClientResponseObserver<Q, R> {
+
+    private volatile ClientCallStreamObserver<Q> call;
+
+    @Override
+    public void beforeStart(ClientCallStreamObserver<Q> requestStream) {
+        call = requestStream;
+    }
+
+    @Override
+    public void onNext(R value) {
+        complete(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        completeExceptionally(t);
+    }
+
+    @Override
+    public void onCompleted() {
+        // La respuesta ya completó el futuro
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        ClientCallStreamObserver<Q> started = call;
+        if (cancelled && started != null) {
+            started.cancel("Future cancelled", null);
+        }
+        return cancelled;
+    }
+}
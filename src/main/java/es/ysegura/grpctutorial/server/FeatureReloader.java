@@ -0,0 +1,131 @@
+package es.ysegura.grpctutorial.server;
+
+import es.ysegura.grpctutorial.store.FeatureStore;
+import es.ysegura.grpctutorial.store.FeatureStoreHolder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Rebuilds the feature store in the background and publishes it in a {@link FeatureStoreHolder}.
+ * <p>
+ * Calls being served while a new store is built keep using the previous one. Reloads run one at a
+ * time, and a reload requested while another is still waiting to start is merged into it.
+ */
+@Slf4j
+public class FeatureReloader implements AutoCloseable {
+
+    private static final long QUIET_PERIOD_MILLIS = 500;
+
+    private final FeatureStoreHolder holder;
+    private final Consumer<FeatureStore> beforePublish;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "feature-reloader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private CompletableFuture<FeatureStore> pending;
+    private WatchService watchService;
+
+    public FeatureReloader(FeatureStoreHolder holder) {
+        this(holder, featureStore -> { });
+    }
+
+    /**
+     * @param beforePublish run on the reloader thread with every new store before it is published, to
+     *                      build whatever is derived from it
+     */
+    public FeatureReloader(FeatureStoreHolder holder, Consumer<FeatureStore> beforePublish) {
+        this.holder = holder;
+        this.beforePublish = beforePublish;
+    }
+
+    /**
+     * Builds a store with {@code builder} on the reloader thread, prepares it and publishes it. If
+     * either step fails the current store is kept and the returned future completes exceptionally.
+     */
+    public synchronized CompletableFuture<FeatureStore> reload(Callable<FeatureStore> builder) {
+        if (pending != null && !pending.isDone()) {
+            // Todavía no ha empezado: la recarga en cola ya leerá los últimos cambios
+            return pending;
+        }
+        CompletableFuture<FeatureStore> reload = new CompletableFuture<>();
+        pending = reload;
+        executor.execute(() -> {
+            synchronized (this) {
+                if (pending == reload) {
+                    pending = null;
+                }
+            }
+            try {
+                long start = System.nanoTime();
+                FeatureStore featureStore = builder.call();
+                beforePublish.accept(featureStore);
+                holder.set(featureStore);
+                log.info("Reloaded " + featureStore.size() + " features in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                reload.complete(featureStore);
+            } catch (Exception exception) {
+                log.error("Feature reload failed, keeping the current features", exception);
+                reload.completeExceptionally(exception);
+            }
+        });
+        return reload;
+    }
+
+    /**
+     * Reloads with {@code builder} whenever {@code file} is written or replaced, once it has been quiet
+     * for a moment so that a file being copied is not read half way.
+     */
+    public synchronized void watch(Path file, Callable<FeatureStore> builder) throws IOException {
+        if (watchService != null) {
+            throw new IllegalStateException("Already watching a features file");
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        Path fileName = file.getFileName();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        WatchService watcher = watchService;
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    boolean changed = pollChanges(key, fileName);
+                    // Esperamos a que el fichero deje de cambiar antes de recargar
+                    while ((key = watcher.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                        changed |= pollChanges(key, fileName);
+                    }
+                    if (changed) {
+                        log.info("Features file " + file + " changed, reloading");
+                        reload(builder);
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException exception) {
+                log.debug("Stopped watching " + file);
+            }
+        }, "feature-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching " + file + " for changes");
+    }
+
+    private static boolean pollChanges(WatchKey key, Path fileName) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context());
+        }
+        key.reset();
+        return changed;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,83 @@
+package es.ysegura.grpctutorial.server;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.store.*;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Builds the {@link FeatureStore} described by a {@link RouteGuideConfig}: on the heap or memory
+ * mapped, and going through the binary snapshot when one is configured.
+ */
+@Slf4j
+final class FeatureStores {
+
+    private FeatureStores() {
+    }
+
+    /**
+     * Store for a server start: the snapshot and the mapped store file are reused when they were
+     * written from the current feature database, so it is only parsed again after it changes.
+     */
+    static FeatureStore open(URL featuresFile, RouteGuideConfig config) throws IOException {
+        SourceStamp source = SourceStamp.of(featuresFile);
+        Path storeFile = config.getFeatureStoreFile();
+        if (storeFile != null && Files.isRegularFile(storeFile)) {
+            if (source.equals(MappedFeatureStore.readSource(storeFile))) {
+                log.info("Opening mapped feature store " + storeFile);
+                return MappedFeatureStore.open(storeFile, config.getSpatialIndexType());
+            }
+            log.info("Mapped feature store " + storeFile + " is out of date with " + featuresFile + ", rebuilding it");
+        }
+        List<Feature> features = config.getFeaturesSnapshot() == null
+                ? RouteGuideUtil.parseFeatures(featuresFile)
+                : FeatureLoader.load(featuresFile, config.getFeaturesSnapshot());
+        return create(features, config, source);
+    }
+
+    /**
+     * Store for a reload: the feature database is parsed again and the snapshot and mapped store file,
+     * if any, are rewritten from it.
+     */
+    static FeatureStore rebuild(URL featuresFile, RouteGuideConfig config) throws IOException {
+        // Se toma antes de leer: si el fichero cambia entre medias, el siguiente arranque lo vuelve a leer
+        SourceStamp source = SourceStamp.of(featuresFile);
+        List<Feature> features = FeatureLoader.load(featuresFile);
+        if (config.getFeaturesSnapshot() != null) {
+            FeatureSnapshot.write(features, config.getFeaturesSnapshot(), source);
+        }
+        return create(features, config, source);
+    }
+
+    /**
+     * Store for features that do not come from a file; a mapped store file written from them is never
+     * reused by {@link #open(URL, RouteGuideConfig)}.
+     */
+    static FeatureStore create(Collection<Feature> features, RouteGuideConfig config) {
+        return create(features, config, SourceStamp.UNKNOWN);
+    }
+
+    private static FeatureStore create(Collection<Feature> features, RouteGuideConfig config, SourceStamp source) {
+        Path storeFile = config.getFeatureStoreFile();
+        if (storeFile == null) {
+            return new InMemoryFeatureStore(features, config.getSpatialIndexType());
+        }
+        try {
+            // Se reemplaza con un rename atómico: los stores abiertos siguen viendo el fichero anterior
+            MappedFeatureStore.write(List.copyOf(features), storeFile, source);
+            log.info("Wrote " + features.size() + " features to mapped feature store " + storeFile);
+            return MappedFeatureStore.open(storeFile, config.getSpatialIndexType());
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package es.ysegura.grpctutorial.server;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.ServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.netty.shaded.io.netty.buffer.PooledByteBufAllocator;
+import io.grpc.netty.shaded.io.netty.channel.ChannelOption;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.ServerChannel;
+import io.grpc.netty.shaded.io.netty.channel.epoll.Epoll;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.epoll.EpollServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.grpc.netty.shaded.io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server builder for a TCP port, either with gRPC's defaults or with the Netty settings of
+ * {@link RouteGuideConfig} when {@code nettyTuned} is set. The tuned transport owns its event loop
+ * groups, so it must be closed after the server has shut down.
+ */
+@Slf4j
+public final class NettyServerTransport implements AutoCloseable {
+
+    private final ServerBuilder<?> serverBuilder;
+    private final EventLoopGroup bossGroup;
+    private final EventLoopGroup workerGroup;
+
+    private NettyServerTransport(ServerBuilder<?> serverBuilder, EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
+        this.serverBuilder = serverBuilder;
+        this.bossGroup = bossGroup;
+        this.workerGroup = workerGroup;
+    }
+
+    public static NettyServerTransport forPort(int port, RouteGuideConfig config) {
+        if (!config.isNettyTuned()) {
+            return new NettyServerTransport(Grpc.newServerBuilderForPort(port, InsecureServerCredentials.create()), null, null);
+        }
+        boolean epoll = config.isNettyEpoll() && Epoll.isAvailable();
+        if (config.isNettyEpoll() && !epoll) {
+            log.warn("Native epoll transport not available, using NIO", Epoll.unavailabilityCause());
+        }
+        EventLoopGroup bossGroup = eventLoopGroup(epoll, config.getNettyBossThreads(), "route-guide-boss");
+        EventLoopGroup workerGroup = eventLoopGroup(epoll, config.getNettyWorkerThreads(), "route-guide-worker");
+        Class<? extends ServerChannel> channelType = epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+
+        NettyServerBuilder builder = NettyServerBuilder.forPort(port)
+                .channelType(channelType)
+                .bossEventLoopGroup(bossGroup)
+                .workerEventLoopGroup(workerGroup)
+                // initialFlowControlWindow mantiene el ajuste automático por BDP, flowControlWindow lo desactivaría
+                .initialFlowControlWindow(config.getNettyFlowControlWindow())
+                .maxConcurrentCallsPerConnection(config.getNettyMaxConcurrentStreams())
+                .keepAliveTime(config.getNettyKeepAliveTime().toMillis(), TimeUnit.MILLISECONDS)
+                .keepAliveTimeout(config.getNettyKeepAliveTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .permitKeepAliveTime(config.getNettyPermitKeepAliveTime().toMillis(), TimeUnit.MILLISECONDS);
+        if (config.isNettyPooledAllocator()) {
+            PooledByteBufAllocator allocator = new PooledByteBufAllocator(true);
+            builder.withOption(ChannelOption.ALLOCATOR, allocator)
+                    .withChildOption(ChannelOption.ALLOCATOR, allocator);
+        }
+        log.info("Tuned Netty transport: " + (epoll ? "epoll" : "nio") + ", " + config.getNettyBossThreads()
+                + " boss / " + config.getNettyWorkerThreads() + " worker threads");
+        return new NettyServerTransport(builder, bossGroup, workerGroup);
+    }
+
+    private static EventLoopGroup eventLoopGroup(boolean epoll, int threads, String name) {
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory(name, true);
+        return epoll ? new EpollEventLoopGroup(threads, threadFactory) : new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    public ServerBuilder<?> serverBuilder() {
+        return serverBuilder;
+    }
+
+    @Override
+    public void close() {
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+            workerGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -1,17 +1,28 @@
 package es.ysegura.grpctutorial.server;
 
+import es.ysegura.grpctutorial.RouteGuideConfig;
 import es.ysegura.grpctutorial.RouteGuideUtil;
 import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.server.metrics.MetricsHttpServer;
+import es.ysegura.grpctutorial.server.metrics.MetricsServerInterceptor;
+import es.ysegura.grpctutorial.server.metrics.RpcMetrics;
+import es.ysegura.grpctutorial.service.ListFeaturesCache;
 import es.ysegura.grpctutorial.service.RouteGuideService;
-import io.grpc.Grpc;
-import io.grpc.InsecureServerCredentials;
+import es.ysegura.grpctutorial.store.FeatureStore;
+import es.ysegura.grpctutorial.store.FeatureStoreHolder;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -19,24 +30,120 @@ public class RouteGuideServerRunner {
 
     private final int port;
     private final Server server;
+    private final RpcMetrics metrics = new RpcMetrics();
+    private final MetricsHttpServer metricsHttpServer;
+    private final RouteGuideConfig config;
+    private final URL featuresFile;
+    private final FeatureStoreHolder featureStores;
+    private final FeatureReloader featureReloader;
+    private final ExecutorService executor;
+    private final NettyServerTransport transport;
+    private final RouteGuideService service;
 
     public RouteGuideServerRunner(int port) throws IOException {
-        this(port, RouteGuideUtil.getDefaultFeaturesFile());
+        this(port, RouteGuideConfig.defaults());
+    }
+
+    public RouteGuideServerRunner(int port, RouteGuideConfig config) throws IOException {
+        this(port, RouteGuideUtil.getDefaultFeaturesFile(), config);
     }
 
     public RouteGuideServerRunner(int port, URL featuresFile) throws IOException{
-        this(Grpc.newServerBuilderForPort(port, InsecureServerCredentials.create()), port, RouteGuideUtil.parseFeatures(featuresFile));
+        this(port, featuresFile, RouteGuideConfig.defaults());
+    }
+
+    public RouteGuideServerRunner(int port, URL featuresFile, RouteGuideConfig config) throws IOException{
+        this(NettyServerTransport.forPort(port, config), port, FeatureStores.open(featuresFile, config), featuresFile, config);
     }
 
     public RouteGuideServerRunner(ServerBuilder<?> serverBuilder, int port, Collection<Feature> features){
+        this(serverBuilder, port, features, RouteGuideConfig.defaults());
+    }
+
+    public RouteGuideServerRunner(ServerBuilder<?> serverBuilder, int port, Collection<Feature> features, RouteGuideConfig config){
+        this(serverBuilder, port, FeatureStores.create(features, config), config);
+    }
+
+    public RouteGuideServerRunner(ServerBuilder<?> serverBuilder, int port, FeatureStore featureStore, RouteGuideConfig config){
+        this(serverBuilder, null, port, featureStore, null, config);
+    }
+
+    private RouteGuideServerRunner(NettyServerTransport transport, int port, FeatureStore featureStore, URL featuresFile, RouteGuideConfig config){
+        this(transport.serverBuilder(), transport, port, featureStore, featuresFile, config);
+    }
+
+    private RouteGuideServerRunner(ServerBuilder<?> serverBuilder, NettyServerTransport transport, int port, FeatureStore featureStore, URL featuresFile, RouteGuideConfig config){
         this.port = port;
+        this.transport = transport;
+        this.config = config;
+        this.featuresFile = featuresFile;
+        this.featureStores = new FeatureStoreHolder(featureStore);
+        this.executor = config.getServerExecutor().apply(serverBuilder, config.getServerExecutorThreads());
+        this.service = new RouteGuideService(featureStores, config);
+        this.featureReloader = new FeatureReloader(featureStores, service::prepare);
         server = serverBuilder
-                .addService(new RouteGuideService(features))
+                .addService(service.serviceDefinition())
+                .intercept(new MetricsServerInterceptor(metrics))
                 .build();
+        try {
+            metricsHttpServer = config.getMetricsHttpPort() < 0 ? null : new MetricsHttpServer(metrics, config.getMetricsHttpPort());
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Parses the features file again in the background and swaps the new features in once they are
+     * indexed. Calls already running keep the features they started with.
+     */
+    public CompletableFuture<FeatureStore> reloadFeatures() {
+        if (featuresFile == null) {
+            throw new IllegalStateException("The server was not started from a features file");
+        }
+        return featureReloader.reload(() -> FeatureStores.rebuild(featuresFile, config));
+    }
+
+    /**
+     * Replaces the features, indexing them in the background.
+     */
+    public CompletableFuture<FeatureStore> reloadFeatures(Collection<Feature> features) {
+        List<Feature> copy = List.copyOf(features);
+        return featureReloader.reload(() -> FeatureStores.create(copy, config));
+    }
+
+    /**
+     * Port the server listens on once started, useful when it was built for port {@code 0}.
+     */
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public RpcMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * ListFeatures result cache with its hit and miss counters, or {@code null} if it is disabled.
+     */
+    public ListFeaturesCache getListFeaturesCache() {
+        return service.getListFeaturesCache();
+    }
+
+    /**
+     * Port of the metrics text endpoint once started, or {@code -1} if it is disabled.
+     */
+    public int getMetricsHttpPort() {
+        return metricsHttpServer == null ? -1 : metricsHttpServer.getPort();
     }
 
     public void start() throws IOException{
         server.start();
+        if (metricsHttpServer != null) {
+            metricsHttpServer.start();
+        }
+        if (config.isWatchFeatures()) {
+            watchFeaturesFile();
+        }
         log.info("Server started, listening on port " + port);
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             log.error("*** Shutting down gRPC server since JVM is shutting down");
@@ -48,10 +155,37 @@ public class RouteGuideServerRunner {
             log.error("*** gRPC server shut down");
         }));
     }
+    private void watchFeaturesFile() throws IOException {
+        if (featuresFile == null || !"file".equals(featuresFile.getProtocol())) {
+            log.warn("Features file " + featuresFile + " cannot be watched, use reloadFeatures() instead");
+            return;
+        }
+        try {
+            featureReloader.watch(Path.of(featuresFile.toURI()), () -> FeatureStores.rebuild(featuresFile, config));
+        } catch (URISyntaxException exception) {
+            throw new IOException(exception);
+        }
+    }
+
     public void stop() throws InterruptedException{
+        try {
+            featureReloader.close();
+        } catch (IOException exception) {
+            log.warn("Cannot stop watching the features file", exception);
+        }
+        if (metricsHttpServer != null) {
+            metricsHttpServer.stop();
+        }
         if (server != null){
             server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
         }
+        service.close();
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (transport != null) {
+            transport.close();
+        }
     }
     public void blockUntilShutdown() throws InterruptedException{
         if (server != null){
@@ -60,7 +194,7 @@ public class RouteGuideServerRunner {
     }
 
     public static void main(String[] args) throws Exception{
-        RouteGuideServerRunner server = new RouteGuideServerRunner(8980);
+        RouteGuideServerRunner server = new RouteGuideServerRunner(8980, RouteGuideConfig.fromSystemProperties());
         server.start();
         server.blockUntilShutdown();
     }
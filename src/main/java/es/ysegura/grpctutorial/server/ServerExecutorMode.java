@@ -0,0 +1,75 @@
+package es.ysegura.grpctutorial.server;
+
+import io.grpc.ServerBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Where the server runs the RPC handlers.
+ */
+@Slf4j
+public enum ServerExecutorMode {
+    /**
+     * gRPC's own cached thread pool.
+     */
+    DEFAULT,
+    /**
+     * A fixed pool, sized by {@code routeguide.server.executor-threads}.
+     */
+    FIXED,
+    /**
+     * The transport threads themselves. Only safe because no RouteGuide handler blocks: ListFeatures
+     * and broadcast RouteChat hand their writes to on-ready handlers and dispatcher threads, and
+     * RecordRouteBatched finishes large batches in a continuation on the batch pool instead of waiting.
+     */
+    DIRECT,
+    /**
+     * A new virtual thread per task. Needs Java 21, or Java 19/20 with {@code --enable-preview}.
+     */
+    VIRTUAL;
+
+    /**
+     * Configures {@code serverBuilder} for this mode and returns the executor created for it, which the
+     * caller shuts down after the server, or {@code null} if there is none.
+     */
+    ExecutorService apply(ServerBuilder<?> serverBuilder, int threads) {
+        ExecutorService executor = switch (this) {
+            case DEFAULT -> null;
+            case FIXED -> Executors.newFixedThreadPool(threads, daemonThreads("route-guide-executor-"));
+            case DIRECT -> null;
+            case VIRTUAL -> newVirtualThreadPerTaskExecutor();
+        };
+        if (this == DIRECT) {
+            serverBuilder.directExecutor();
+        } else if (executor != null) {
+            serverBuilder.executor(executor);
+        }
+        return executor;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Por reflexión, para que el proyecto siga compilando con JDKs sin hilos virtuales
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException exception) {
+            throw new IllegalStateException("Virtual threads need Java 19 or later", exception);
+        } catch (InvocationTargetException exception) {
+            throw new IllegalStateException("Virtual threads are not available, on Java 19 and 20 run with --enable-preview",
+                    exception.getCause());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package es.ysegura.grpctutorial.server.metrics;
+
+import io.grpc.Status;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of one gRPC method. Writers only touch {@link LongAdder}s and HdrHistogram
+ * {@link Recorder}s, which are lock-free; the lock is only taken by readers building a snapshot.
+ */
+public class MethodMetrics {
+
+    private final String method;
+    private final LongAdder started = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder[] statusCounts = new LongAdder[Status.Code.values().length];
+
+    private final Recorder latencyRecorder = new Recorder(3);
+    private final Recorder receivedPerCallRecorder = new Recorder(2);
+    private final Recorder sentPerCallRecorder = new Recorder(2);
+    private final Histogram latency = new Histogram(3);
+    private final Histogram receivedPerCall = new Histogram(2);
+    private final Histogram sentPerCall = new Histogram(2);
+
+    MethodMetrics(String method) {
+        this.method = method;
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = new LongAdder();
+        }
+    }
+
+    void callStarted() {
+        started.increment();
+        inFlight.increment();
+    }
+
+    void messageReceived() {
+        messagesReceived.increment();
+    }
+
+    void messageSent() {
+        messagesSent.increment();
+    }
+
+    void callFinished(Status.Code code, long latencyNanos, int received, int sent) {
+        inFlight.decrement();
+        statusCounts[code.ordinal()].increment();
+        latencyRecorder.recordValue(Math.max(0, latencyNanos / 1000));
+        receivedPerCallRecorder.recordValue(received);
+        sentPerCallRecorder.recordValue(sent);
+    }
+
+    /**
+     * Cumulative view of this method since the server started.
+     */
+    public synchronized Snapshot snapshot() {
+        latency.add(latencyRecorder.getIntervalHistogram());
+        receivedPerCall.add(receivedPerCallRecorder.getIntervalHistogram());
+        sentPerCall.add(sentPerCallRecorder.getIntervalHistogram());
+        Map<Status.Code, Long> byStatus = new EnumMap<>(Status.Code.class);
+        for (Status.Code code : Status.Code.values()) {
+            long count = statusCounts[code.ordinal()].sum();
+            if (count > 0) {
+                byStatus.put(code, count);
+            }
+        }
+        return new Snapshot(method, started.sum(), inFlight.sum(), messagesReceived.sum(), messagesSent.sum(),
+                byStatus, latency.copy(), receivedPerCall.copy(), sentPerCall.copy());
+    }
+
+    /**
+     * @param latencyMicros   call latency, from the start of the call until it completed or was cancelled
+     * @param receivedPerCall distribution of request messages per call
+     * @param sentPerCall     distribution of response messages per call
+     */
+    public record Snapshot(String method, long started, long inFlight, long messagesReceived, long messagesSent,
+                           Map<Status.Code, Long> byStatus, Histogram latencyMicros,
+                           Histogram receivedPerCall, Histogram sentPerCall) {
+    }
+}
@@ -0,0 +1,87 @@
+package es.ysegura.grpctutorial.server.metrics;
+
+import io.grpc.*;
+
+/**
+ * Records call counts, in-flight calls, messages per stream and latency of every call into an
+ * {@link RpcMetrics}. The per-call bookkeeping is a few plain fields on the call wrapper, since gRPC
+ * never calls one listener or one call concurrently; only the shared counters are lock-free adders.
+ */
+public class MetricsServerInterceptor implements ServerInterceptor {
+
+    private final RpcMetrics metrics;
+
+    public MetricsServerInterceptor(RpcMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <Q, R> ServerCall.Listener<Q> interceptCall(ServerCall<Q, R> call, Metadata headers, ServerCallHandler<Q, R> next) {
+        MethodMetrics method = metrics.forMethod(call.getMethodDescriptor().getFullMethodName());
+        MeteredCall<Q, R> meteredCall = new MeteredCall<>(call, method);
+        method.callStarted();
+        ServerCall.Listener<Q> listener;
+        try {
+            listener = next.startCall(meteredCall, headers);
+        } catch (RuntimeException | Error e) {
+            // Sin listener no llegará onComplete ni onCancel: la llamada se da por terminada aquí
+            meteredCall.finish(Status.fromThrowable(e).getCode());
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onMessage(Q message) {
+                meteredCall.received++;
+                method.messageReceived();
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onComplete() {
+                meteredCall.finish(null);
+                super.onComplete();
+            }
+
+            @Override
+            public void onCancel() {
+                meteredCall.finish(Status.Code.CANCELLED);
+                super.onCancel();
+            }
+        };
+    }
+
+    private static final class MeteredCall<Q, R> extends ForwardingServerCall.SimpleForwardingServerCall<Q, R> {
+        private final MethodMetrics method;
+        private final long start = System.nanoTime();
+        private volatile Status.Code code = Status.Code.UNKNOWN;
+        private volatile int sent;
+        private int received;
+        private boolean finished;
+
+        MeteredCall(ServerCall<Q, R> call, MethodMetrics method) {
+            super(call);
+            this.method = method;
+        }
+
+        @Override
+        public void sendMessage(R message) {
+            sent++;
+            method.messageSent();
+            super.sendMessage(message);
+        }
+
+        @Override
+        public void close(Status status, Metadata trailers) {
+            code = status.getCode();
+            super.close(status, trailers);
+        }
+
+        void finish(Status.Code override) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            method.callFinished(override != null ? override : code, System.nanoTime() - start, received, sent);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package es.ysegura.grpctutorial.server.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-method metrics of a server, filled by {@link MetricsServerInterceptor}. This is the pull API:
+ * callers take a {@link #snapshot()} whenever they need one, nothing is pushed.
+ */
+public class RpcMetrics {
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    MethodMetrics forMethod(String fullMethodName) {
+        MethodMetrics metrics = methods.get(fullMethodName);
+        return metrics != null ? metrics : methods.computeIfAbsent(fullMethodName, MethodMetrics::new);
+    }
+
+    public List<MethodMetrics.Snapshot> snapshot() {
+        List<MethodMetrics.Snapshot> snapshots = new ArrayList<>();
+        methods.values().forEach(metrics -> snapshots.add(metrics.snapshot()));
+        snapshots.sort((a, b) -> a.method().compareTo(b.method()));
+        return snapshots;
+    }
+
+    /**
+     * Plain text rendering of {@link #snapshot()}, one line per value, in the Prometheus exposition
+     * style so that it is easy to scrape or grep.
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (MethodMetrics.Snapshot method : snapshot()) {
+            String label = "{method=\"" + method.method() + "\"";
+            line(text, "grpc_server_started_total", label, method.started());
+            line(text, "grpc_server_in_flight", label, method.inFlight());
+            line(text, "grpc_server_msg_received_total", label, method.messagesReceived());
+            line(text, "grpc_server_msg_sent_total", label, method.messagesSent());
+            method.byStatus().forEach((code, count) ->
+                    line(text, "grpc_server_handled_total", label + ",code=\"" + code + "\"", count));
+            for (double percentile : new double[]{50, 90, 99, 99.9}) {
+                line(text, "grpc_server_latency_micros", label + ",quantile=\"" + percentile / 100 + "\"",
+                        method.latencyMicros().getValueAtPercentile(percentile));
+            }
+            line(text, "grpc_server_latency_micros_max", label, method.latencyMicros().getMaxValue());
+            line(text, "grpc_server_msg_received_per_call_max", label, method.receivedPerCall().getMaxValue());
+            line(text, "grpc_server_msg_sent_per_call_max", label, method.sentPerCall().getMaxValue());
+        }
+        return text.toString();
+    }
+
+    private static void line(StringBuilder text, String name, String labels, long value) {
+        text.append(name).append(labels).append("} ").append(value).append('\n');
+    }
+}
@@ -0,0 +1,64 @@
+package es.ysegura.grpctutorial.service;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Iterator;
+
+/**
+ * Streams the elements of a lazy cursor to a server response observer, only while the transport
+ * reports {@link ServerCallStreamObserver#isReady()}. When the client falls behind the streamer
+ * stops and resumes from the same cursor position on the next on-ready notification, so per-call
+ * memory does not depend on the size of the result.
+ *
+ * @param <T> response message type
+ */
+class BackpressureStreamer<T> implements Runnable {
+
+    private final Iterator<T> cursor;
+    private final ServerCallStreamObserver<T> responseObserver;
+    private final Runnable beforeCompleted;
+    private boolean done;
+
+    private BackpressureStreamer(Iterator<T> cursor, ServerCallStreamObserver<T> responseObserver, Runnable beforeCompleted) {
+        this.cursor = cursor;
+        this.responseObserver = responseObserver;
+        this.beforeCompleted = beforeCompleted;
+    }
+
+    /**
+     * Sends every element of {@code cursor} and then completes the call. {@code beforeCompleted} runs
+     * once the cursor is exhausted, right before {@code onCompleted}.
+     */
+    static <T> void stream(Iterator<T> cursor, StreamObserver<T> responseObserver, Runnable beforeCompleted) {
+        if (responseObserver instanceof ServerCallStreamObserver<T> serverObserver) {
+            BackpressureStreamer<T> streamer = new BackpressureStreamer<>(cursor, serverObserver, beforeCompleted);
+            serverObserver.setOnCancelHandler(streamer::cancel);
+            serverObserver.setOnReadyHandler(streamer);
+            // gRPC avisa con onReady al terminar el método si la llamada ya estaba lista
+        } else {
+            cursor.forEachRemaining(responseObserver::onNext);
+            beforeCompleted.run();
+            responseObserver.onCompleted();
+        }
+    }
+
+    @Override
+    public void run() {
+        if (done) {
+            return;
+        }
+        while (responseObserver.isReady() && cursor.hasNext()) {
+            responseObserver.onNext(cursor.next());
+        }
+        if (!cursor.hasNext()) {
+            done = true;
+            beforeCompleted.run();
+            responseObserver.onCompleted();
+        }
+    }
+
+    private void cancel() {
+        done = true;
+    }
+}
@@ -0,0 +1,47 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.chat.ChatBroker;
+import es.ysegura.grpctutorial.chat.ChatSubscriber;
+import es.ysegura.grpctutorial.protobuff.RouteNote;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * RouteChat request observer for {@link es.ysegura.grpctutorial.chat.ChatDeliveryMode#BROADCAST}.
+ * Every note subscribes the call to its location and, unless its message is empty, is published to
+ * the other calls subscribed there.
+ */
+@Slf4j
+public class BroadcastRouteNoteObserver implements StreamObserver<RouteNote> {
+
+    private final ChatBroker broker;
+    private final ChatSubscriber subscriber;
+
+    public BroadcastRouteNoteObserver(StreamObserver<RouteNote> responseObserver, ChatBroker broker) {
+        this.broker = broker;
+        this.subscriber = broker.register(responseObserver);
+        if (responseObserver instanceof ServerCallStreamObserver<RouteNote> serverObserver) {
+            serverObserver.setOnCancelHandler(() -> broker.unregister(subscriber, false));
+        }
+    }
+
+    @Override
+    public void onNext(RouteNote note) {
+        broker.subscribe(subscriber, note.getLocation());
+        if (!note.getMessage().isEmpty()) {
+            broker.publish(subscriber, note);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        log.warn("routeChat cancelled due to " + throwable.getMessage());
+        broker.unregister(subscriber, false);
+    }
+
+    @Override
+    public void onCompleted() {
+        broker.unregister(subscriber, true);
+    }
+}
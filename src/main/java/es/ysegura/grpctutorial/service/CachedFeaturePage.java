@@ -0,0 +1,52 @@
+package es.ysegura.grpctutorial.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * One page of a cached ListFeatures result. Uses the same page tokens as {@link FeaturePageCursor},
+ * so a client can page through cached and uncached results alike.
+ */
+class CachedFeaturePage implements Iterator<InputStream> {
+
+    private final ListFeaturesCache.Result result;
+    private final int maxResults;
+    private final long generation;
+    private final int end;
+    private int next;
+
+    /**
+     * @param from decoded page token, see {@link PageTokens#decode}
+     */
+    CachedFeaturePage(ListFeaturesCache.Result result, int maxResults, long generation, int from) {
+        this.result = result;
+        this.maxResults = maxResults;
+        this.generation = generation;
+        int[] positions = result.positions();
+        int found = Arrays.binarySearch(positions, from);
+        this.next = found >= 0 ? found : -found - 1;
+        this.end = maxResults == 0 ? positions.length : (int) Math.min(positions.length, (long) next + maxResults);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next < end;
+    }
+
+    @Override
+    public InputStream next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        // ByteArrayInputStream: gRPC conoce su tamaño y copia los bytes sin codificar nada
+        return new ByteArrayInputStream(result.features()[next++]);
+    }
+
+    String nextPageToken() {
+        int[] positions = result.positions();
+        return maxResults > 0 && end < positions.length ? PageTokens.encode(generation, positions[end]) : null;
+    }
+}
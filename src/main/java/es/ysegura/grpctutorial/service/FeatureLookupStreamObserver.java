@@ -0,0 +1,59 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.store.FeatureStore;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Answers each point of a GetFeatures stream with its feature, pulling the next point only while the
+ * response stream is ready.
+ */
+@Slf4j
+class FeatureLookupStreamObserver implements StreamObserver<Point> {
+
+    private final ServerCallStreamObserver<Feature> responseObserver;
+    private final FeatureStore featureStore;
+    private final AtomicBoolean waitingForReady = new AtomicBoolean();
+
+    FeatureLookupStreamObserver(StreamObserver<Feature> responseObserver, FeatureStore featureStore) {
+        this.responseObserver = (ServerCallStreamObserver<Feature>) responseObserver;
+        this.featureStore = featureStore;
+        this.responseObserver.disableAutoRequest();
+        this.responseObserver.setOnReadyHandler(() -> {
+            // Solo pedimos otro mensaje si onNext se quedó esperando a que el cliente leyera
+            if (this.responseObserver.isReady() && waitingForReady.compareAndSet(true, false)) {
+                this.responseObserver.request(1);
+            }
+        });
+        this.responseObserver.request(1);
+    }
+
+    @Override
+    public void onNext(Point point) {
+        responseObserver.onNext(featureStore.getFeature(point));
+        if (responseObserver.isReady()) {
+            responseObserver.request(1);
+        } else {
+            waitingForReady.set(true);
+            // El onReadyHandler puede haber saltado justo antes de marcar la espera
+            if (responseObserver.isReady() && waitingForReady.compareAndSet(true, false)) {
+                responseObserver.request(1);
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        log.warn("getFeatures cancelled");
+    }
+
+    @Override
+    public void onCompleted() {
+        responseObserver.onCompleted();
+    }
+}
@@ -0,0 +1,54 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.store.SpatialIndex;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+/**
+ * One page of a ListFeatures result, read lazily from a spatial index query.
+ * <p>
+ * The query must already start where the page token says and {@code maxResults} must already be
+ * checked, see {@link PageTokens}; the token for the next page is the index position of the first
+ * result left out.
+ *
+ * @param <T> what each id is turned into: the {@code Feature} itself or its serialized bytes
+ */
+class FeaturePageCursor<T> implements Iterator<T> {
+
+    private final IntFunction<? extends T> response;
+    private final SpatialIndex.Cursor ids;
+    private final int maxResults;
+    private final long generation;
+    private int returned;
+
+    FeaturePageCursor(SpatialIndex.Cursor ids, int maxResults, long generation, IntFunction<? extends T> response) {
+        this.response = response;
+        this.ids = ids;
+        this.maxResults = maxResults;
+        this.generation = generation;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return (maxResults == 0 || returned < maxResults) && ids.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        returned++;
+        return response.apply(ids.nextInt());
+    }
+
+    /**
+     * Token for the page after this one, or {@code null} when there are no more results. Only
+     * meaningful once the page has been fully consumed.
+     */
+    String nextPageToken() {
+        return maxResults > 0 && ids.hasNext() ? PageTokens.encode(generation, ids.position()) : null;
+    }
+}
@@ -0,0 +1,193 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.store.FeatureStore;
+import es.ysegura.grpctutorial.store.SpatialIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ListFeatures results by area, kept already serialized so a hit sends the stored bytes without
+ * touching the index or encoding any protobuf.
+ * <p>
+ * The cache is bounded by the bytes it holds and evicts the least recently used areas first. Results
+ * larger than an eighth of the bound are not cached, so one huge area cannot flush everything else;
+ * the last {@value #MAX_TOO_LARGE} such areas are remembered, so later lookups go straight to the index
+ * instead of serializing an eighth of the bound again just to throw it away.
+ * Entries belong to the {@link FeatureStore} they were read from: the first lookup against a different
+ * store, that is after a reload, drops the whole cache.
+ */
+public class ListFeaturesCache {
+
+    // Coste aproximado de una entrada y de cada feature (su array de bytes y su posición), además de los propios bytes
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int FEATURE_OVERHEAD = 20;
+    private static final int MAX_TOO_LARGE = 1024;
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final LinkedHashMap<Area, Result> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LinkedHashMap<Area, Boolean> tooLarge = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Area, Boolean> eldest) {
+            return size() > MAX_TOO_LARGE;
+        }
+    };
+    private FeatureStore featureStore;
+    private long bytes;
+
+    public ListFeaturesCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxBytes / 8;
+    }
+
+    /**
+     * Serialized features in the area, in index order, or {@code null} if the result is too large to
+     * be cached and has to be streamed from the index.
+     */
+    Result get(FeatureStore featureStore, int left, int right, int top, int bottom) {
+        Area area = new Area(left, right, top, bottom);
+        Result features;
+        synchronized (this) {
+            if (this.featureStore != featureStore) {
+                clear(featureStore);
+            }
+            features = entries.get(area);
+            if (features == null && tooLarge.get(area) != null) {
+                skipped.increment();
+                return null;
+            }
+        }
+        if (features != null) {
+            hits.increment();
+            return features;
+        }
+        misses.increment();
+        // Se serializa fuera del cerrojo; dos fallos simultáneos en la misma zona hacen el trabajo dos veces
+        features = load(featureStore.getSpatialIndex().query(left, right, top, bottom), featureStore);
+        if (features != null) {
+            put(featureStore, area, features);
+        } else {
+            markTooLarge(featureStore, area);
+        }
+        return features;
+    }
+
+    private Result load(SpatialIndex.Cursor ids, FeatureStore featureStore) {
+        List<byte[]> features = new ArrayList<>();
+        int[] positions = new int[16];
+        long weight = ENTRY_OVERHEAD;
+        while (ids.hasNext()) {
+            if (features.size() == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[features.size()] = ids.position();
+            byte[] feature = featureStore.getFeature(ids.nextInt()).toByteArray();
+            weight += feature.length + FEATURE_OVERHEAD;
+            if (weight > maxEntryBytes) {
+                return null;
+            }
+            features.add(feature);
+        }
+        return new Result(features.toArray(new byte[0][]), Arrays.copyOf(positions, features.size()));
+    }
+
+    private synchronized void put(FeatureStore featureStore, Area area, Result features) {
+        if (this.featureStore != featureStore) {
+            // Se recargaron las features mientras cargábamos: el resultado ya no sirve
+            return;
+        }
+        Result previous = entries.put(area, features);
+        if (previous != null) {
+            bytes -= weight(previous);
+        }
+        bytes += weight(features);
+        Iterator<Result> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= weight(eldest.next());
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private synchronized void markTooLarge(FeatureStore featureStore, Area area) {
+        if (this.featureStore == featureStore) {
+            tooLarge.put(area, Boolean.TRUE);
+        }
+    }
+
+    private void clear(FeatureStore featureStore) {
+        this.featureStore = featureStore;
+        entries.clear();
+        tooLarge.clear();
+        bytes = 0;
+    }
+
+    private static long weight(Result result) {
+        long weight = ENTRY_OVERHEAD;
+        for (byte[] feature : result.features()) {
+            weight += feature.length + FEATURE_OVERHEAD;
+        }
+        return weight;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Lookups of areas already known to be too large, sent to the index without trying to load them.
+     */
+    public long skippedCount() {
+        return skipped.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Approximate bytes held by the cached results.
+     */
+    public synchronized long size() {
+        return bytes;
+    }
+
+    public synchronized int entryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ListFeaturesCache{hits=%d, misses=%d, skipped=%d, evictions=%d, entries=%d, bytes=%d}",
+                hitCount(), missCount(), skippedCount(), evictionCount(), entryCount(), size());
+    }
+
+    /**
+     * Serialized features of an area and the index position of each, which page tokens refer to.
+     */
+    record Result(byte[][] features, int[] positions) {
+    }
+
+    /**
+     * Normalized ListFeatures rectangle, so the corners can come in any order.
+     */
+    private record Area(int left, int right, int top, int bottom) {
+    }
+}
@@ -0,0 +1,44 @@
+package es.ysegura.grpctutorial.service;
+
+import io.grpc.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copies the page token chosen by a handler into the {@value #TRAILER_NAME} trailer of the call.
+ * Handlers take the per-call holder with {@link #currentHolder()} and fill it before completing the
+ * response.
+ */
+public class NextPageTokenInterceptor implements ServerInterceptor {
+
+    public static final String TRAILER_NAME = "next-page-token";
+    public static final Metadata.Key<String> NEXT_PAGE_TOKEN =
+            Metadata.Key.of(TRAILER_NAME, Metadata.ASCII_STRING_MARSHALLER);
+
+    private static final Context.Key<AtomicReference<String>> TOKEN_HOLDER = Context.key("next-page-token-holder");
+
+    /**
+     * Returns the token holder of the current call. Must be obtained from the handler thread, where
+     * the call context is attached; the holder itself can be filled from any later callback.
+     */
+    public static AtomicReference<String> currentHolder() {
+        AtomicReference<String> holder = TOKEN_HOLDER.get();
+        return holder != null ? holder : new AtomicReference<>();
+    }
+
+    @Override
+    public <Q, R> ServerCall.Listener<Q> interceptCall(ServerCall<Q, R> call, Metadata headers, ServerCallHandler<Q, R> next) {
+        AtomicReference<String> holder = new AtomicReference<>();
+        ServerCall<Q, R> tokenCall = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                String token = holder.get();
+                if (token != null && status.isOk()) {
+                    trailers.put(NEXT_PAGE_TOKEN, token);
+                }
+                super.close(status, trailers);
+            }
+        };
+        return Contexts.interceptCall(Context.current().withValue(TOKEN_HOLDER, holder), tokenCall, headers, next);
+    }
+}
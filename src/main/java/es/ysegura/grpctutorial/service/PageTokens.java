@@ -0,0 +1,69 @@
+package es.ysegura.grpctutorial.service;
+
+import io.grpc.Status;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * ListFeatures page tokens. A token holds the spatial index position the next page starts at and the
+ * generation of the features it was issued for, see
+ * {@link es.ysegura.grpctutorial.store.FeatureStoreHolder.Generation}. Resuming is a query that starts
+ * at that position, so reading an area page by page costs the same as reading it at once. Once the
+ * features are reloaded the positions mean nothing, and older tokens are rejected.
+ */
+public final class PageTokens {
+
+    private PageTokens() {
+    }
+
+    /**
+     * {@code maxResults} itself, checked once for every ListFeatures path: {@code 0} means no limit.
+     *
+     * @throws io.grpc.StatusRuntimeException with {@code INVALID_ARGUMENT} if it is negative
+     */
+    public static int checkMaxResults(int maxResults) {
+        if (maxResults < 0) {
+            throw Status.INVALID_ARGUMENT.withDescription("max_results must not be negative").asRuntimeException();
+        }
+        return maxResults;
+    }
+
+    public static String encode(long generation, int position) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((generation + ":" + position).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Index position of the token, {@code 0} for the empty token of the first page.
+     *
+     * @throws io.grpc.StatusRuntimeException with {@code INVALID_ARGUMENT} if the token is not valid or
+     *                                        belongs to another generation of the features
+     */
+    public static int decode(String pageToken, long generation) {
+        if (pageToken.isEmpty()) {
+            return 0;
+        }
+        long tokenGeneration;
+        int position;
+        try {
+            String token = new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.US_ASCII);
+            int separator = token.indexOf(':');
+            if (separator < 0) {
+                throw new NumberFormatException("missing generation");
+            }
+            tokenGeneration = Long.parseLong(token.substring(0, separator));
+            position = Integer.parseInt(token.substring(separator + 1));
+            if (position < 0) {
+                throw new NumberFormatException("negative position");
+            }
+        } catch (IllegalArgumentException e) {
+            throw Status.INVALID_ARGUMENT.withDescription("Invalid page_token").withCause(e).asRuntimeException();
+        }
+        if (tokenGeneration != generation) {
+            throw Status.INVALID_ARGUMENT
+                    .withDescription("page_token belongs to features that have since been reloaded").asRuntimeException();
+        }
+        return position;
+    }
+}
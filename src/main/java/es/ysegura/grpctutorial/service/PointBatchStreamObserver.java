@@ -0,0 +1,97 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.protobuff.PointBatch;
+import es.ysegura.grpctutorial.protobuff.RouteSummary;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * RecordRouteBatched server side. Each batch is decoded from its deltas into two reusable int arrays
+ * and added to the route in one go, so the per-point cost is a few array reads instead of a message.
+ * <p>
+ * Batches are requested one at a time: the next one is asked for when the route has finished adding the
+ * previous one, possibly on the chunk executor, so no gRPC thread ever waits for it.
+ */
+@Slf4j
+class PointBatchStreamObserver implements StreamObserver<PointBatch> {
+
+    private final RouteAccumulator route;
+    private final long startTime = System.nanoTime();
+    private final ServerCallStreamObserver<RouteSummary> responseObserver;
+
+    private int[] latitudes = new int[0];
+    private int[] longitudes = new int[0];
+    // Último punto decodificado, base de las diferencias del siguiente lote
+    private int latitude;
+    private int longitude;
+    // Lote en curso; el resumen se encadena detrás para no adelantarse a él
+    private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+    // Lo puede marcar la continuación de un lote, en el hilo del pool
+    private volatile boolean failed;
+
+    PointBatchStreamObserver(StreamObserver<RouteSummary> responseObserver, RouteAccumulator route) {
+        this.responseObserver = (ServerCallStreamObserver<RouteSummary>) responseObserver;
+        this.route = route;
+        this.responseObserver.disableAutoRequest();
+        this.responseObserver.request(1);
+    }
+
+    @Override
+    public void onNext(PointBatch batch) {
+        if (failed) {
+            return;
+        }
+        int count = batch.getLatitudeDeltasCount();
+        if (count != batch.getLongitudeDeltasCount()) {
+            failed = true;
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("latitude_deltas and longitude_deltas must have the same length")
+                    .asRuntimeException());
+            return;
+        }
+        if (count == 0) {
+            responseObserver.request(1);
+            return;
+        }
+        if (latitudes.length < count) {
+            latitudes = new int[count];
+            longitudes = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            latitude += batch.getLatitudeDeltas(i);
+            longitude += batch.getLongitudeDeltas(i);
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+        }
+        pending = route.addAll(latitudes, longitudes, count).whenComplete((ignored, e) -> {
+            if (e != null) {
+                failed = true;
+                log.warn("recordRouteBatched failed adding a batch", e);
+                responseObserver.onError(Status.INTERNAL.withDescription("Could not add the batch").asRuntimeException());
+            } else {
+                responseObserver.request(1);
+            }
+        });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        log.warn("recordRouteBatched cancelled");
+    }
+
+    @Override
+    public void onCompleted() {
+        // El cliente puede cerrar su lado mientras el último lote aún se suma en el pool
+        pending.whenComplete((ignored, e) -> {
+            if (failed) {
+                return;
+            }
+            responseObserver.onNext(route.summary(System.nanoTime() - startTime));
+            responseObserver.onCompleted();
+        });
+    }
+}
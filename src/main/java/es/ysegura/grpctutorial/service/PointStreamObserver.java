@@ -1,43 +1,45 @@
 package es.ysegura.grpctutorial.service;
 
-import es.ysegura.grpctutorial.RouteGuideUtil;
-import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.DistanceMode;
 import es.ysegura.grpctutorial.protobuff.Point;
 import es.ysegura.grpctutorial.protobuff.RouteSummary;
+import es.ysegura.grpctutorial.store.FeatureStore;
 import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Collection;
-
-import static java.util.concurrent.TimeUnit.NANOSECONDS;
-
+/**
+ * Builds the RecordRoute summary as the points arrive. Every statistic is updated incrementally and
+ * only the previous point is remembered, so a route costs the same memory whatever its length.
+ */
 @Slf4j
 public class PointStreamObserver implements StreamObserver<Point> {
 
-    private int pointCount;
-    private int featureCount;
-    private int distance;
-    private Point previous;
+    private final RouteAccumulator route;
     private final long startTime = System.nanoTime();
 
     private final StreamObserver<RouteSummary> responseObserver;
 
-    private final Collection<Feature> features;
-    public PointStreamObserver(StreamObserver<RouteSummary> responseObserver, Collection<Feature> features) {
+    public PointStreamObserver(StreamObserver<RouteSummary> responseObserver, FeatureStore featureStore) {
+        this(responseObserver, featureStore, DistanceMode.HAVERSINE);
+    }
+
+    public PointStreamObserver(StreamObserver<RouteSummary> responseObserver, FeatureStore featureStore, DistanceMode distanceMode) {
+        this(responseObserver, featureStore, distanceMode, 0);
+    }
+
+    /**
+     * @param featureRadius meters from the route within which features are counted, or {@code 0} to
+     *                      count only the features exactly at a route point
+     */
+    public PointStreamObserver(StreamObserver<RouteSummary> responseObserver, FeatureStore featureStore,
+                               DistanceMode distanceMode, int featureRadius) {
         this.responseObserver = responseObserver;
-        this.features = features;
+        this.route = new RouteAccumulator(featureStore, distanceMode, featureRadius);
     }
 
     @Override
     public void onNext(Point point) {
-        pointCount++;
-        if (RouteGuideUtil.exists(checkFeature(point))) {
-            featureCount++;
-        }
-        if (previous != null) {
-            distance += RouteGuideUtil.calcDistance(previous, point);
-        }
-        previous = point;
+        route.add(point.getLatitude(), point.getLongitude());
     }
 
     @Override
@@ -47,23 +49,7 @@ public class PointStreamObserver implements StreamObserver<Point> {
 
     @Override
     public void onCompleted() {
-        long seconds = NANOSECONDS.toSeconds(System.nanoTime() - startTime);
-        responseObserver.onNext(
-                RouteSummary.newBuilder()
-                        .setPointCount(pointCount)
-                        .setFeatureCount(featureCount)
-                        .setDistance(distance)
-                        .setElapsedTime((int) seconds)
-                        .build()
-        );
+        responseObserver.onNext(route.summary(System.nanoTime() - startTime));
         responseObserver.onCompleted();
     }
-
-    private Feature checkFeature(Point location){
-        return features.stream()
-                .filter(feature -> feature.getLocation().getLongitude() == location.getLongitude())
-                .filter(feature -> feature.getLocation().getLatitude() == location.getLatitude())
-                .findFirst()
-                .orElse(Feature.newBuilder().setName("").setLocation(location).build());
-    }
 }
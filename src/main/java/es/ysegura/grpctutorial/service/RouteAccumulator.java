@@ -0,0 +1,211 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.DistanceMode;
+import es.ysegura.grpctutorial.RouteDistance;
+import es.ysegura.grpctutorial.protobuff.RouteSummary;
+import es.ysegura.grpctutorial.store.FeatureStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Running RecordRoute statistics. Every value is updated incrementally and only the last two points
+ * are remembered, so a route costs the same memory whatever its length.
+ * <p>
+ * Points can be added one at a time or as arrays. Given an executor, large arrays are split in chunks
+ * whose distances and feature hits are computed in parallel on it and on the calling thread; the result
+ * is the same as adding the points one by one. Not thread-safe: use one instance per stream and wait for
+ * each {@link #addAll} before the next call.
+ */
+class RouteAccumulator {
+
+    static final int PARALLEL_THRESHOLD = 16 * 1024;
+    private static final int CHUNK_SIZE = 4 * 1024;
+
+    private final FeatureStore featureStore;
+    private final DistanceMode distanceMode;
+    private final RouteDistance routeDistance;
+    private final RouteFeatureMatcher featureMatcher;
+    private final Executor chunkExecutor;
+
+    private int pointCount;
+    private int featureCount;
+    private int distance;
+    private int segmentCount;
+    private int maxSegmentLength;
+    // Media y suma de cuadrados de las diferencias (algoritmo de Welford)
+    private double meanSegmentLength;
+    private double segmentLengthM2;
+    // Últimos dos puntos, para continuar la ruta en el siguiente punto o lote
+    private int lastLat;
+    private int lastLon;
+    private int beforeLastLat;
+    private int beforeLastLon;
+
+    /**
+     * @param featureRadius meters from the route within which features are counted, or {@code 0} to
+     *                      count only the features exactly at a route point
+     */
+    RouteAccumulator(FeatureStore featureStore, DistanceMode distanceMode, int featureRadius) {
+        this(featureStore, distanceMode, featureRadius, null);
+    }
+
+    /**
+     * @param chunkExecutor runs the chunks of large arrays, or {@code null} to add them on the calling
+     *                      thread
+     */
+    RouteAccumulator(FeatureStore featureStore, DistanceMode distanceMode, int featureRadius, Executor chunkExecutor) {
+        this.featureStore = featureStore;
+        this.distanceMode = distanceMode;
+        this.routeDistance = new RouteDistance(distanceMode);
+        this.featureMatcher = featureRadius > 0 ? new RouteFeatureMatcher(featureStore, featureRadius) : null;
+        this.chunkExecutor = chunkExecutor;
+    }
+
+    void add(int latitude, int longitude) {
+        if (pointCount == 0) {
+            beforeLastLat = lastLat = latitude;
+            beforeLastLon = lastLon = longitude;
+            featureCount += firstFeatures(latitude, longitude);
+        } else {
+            featureCount += features(beforeLastLat, beforeLastLon, lastLat, lastLon, latitude, longitude);
+        }
+        int segment = routeDistance.next(latitude, longitude);
+        if (pointCount++ > 0) {
+            addSegment(segment);
+        }
+        beforeLastLat = lastLat;
+        beforeLastLon = lastLon;
+        lastLat = latitude;
+        lastLon = longitude;
+    }
+
+    /**
+     * Adds the first {@code count} points of the arrays, in order. Large arrays are finished in a
+     * continuation once every chunk is done, so the calling thread never waits on the executor; the
+     * arrays must not change and no other method may be called until the returned future completes.
+     */
+    CompletableFuture<Void> addAll(int[] latitudes, int[] longitudes, int count) {
+        if (chunkExecutor == null || count < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                add(latitudes[i], longitudes[i]);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        if (pointCount == 0) {
+            // Como en add(): la ruta empieza con un tramo de longitud cero en el primer punto
+            beforeLastLat = lastLat = latitudes[0];
+            beforeLastLon = lastLon = longitudes[0];
+        }
+        int[] segments = new int[count];
+        int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        List<CompletableFuture<Integer>> found = new ArrayList<>(chunks - 1);
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            int from = chunk * CHUNK_SIZE;
+            int to = Math.min(count, from + CHUNK_SIZE);
+            found.add(CompletableFuture.supplyAsync(() -> addChunk(latitudes, longitudes, segments, from, to), chunkExecutor));
+        }
+        // El hilo de la llamada hace el primer trozo mientras el pool hace el resto, pero no espera al
+        // pool: el estado se actualiza en la continuación, en el hilo que termine el último trozo
+        int firstFound = addChunk(latitudes, longitudes, segments, 0, Math.min(count, CHUNK_SIZE));
+        return CompletableFuture.allOf(found.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+            featureCount += firstFound;
+            for (CompletableFuture<Integer> chunk : found) {
+                featureCount += chunk.join();
+            }
+            finishAll(latitudes, longitudes, segments, count);
+        });
+    }
+
+    private void finishAll(int[] latitudes, int[] longitudes, int[] segments, int count) {
+        for (int i = pointCount == 0 ? 1 : 0; i < count; i++) {
+            addSegment(segments[i]);
+        }
+        pointCount += count;
+        routeDistance.reset();
+        routeDistance.next(latitudes[count - 1], longitudes[count - 1]);
+        if (count > 1) {
+            beforeLastLat = latitudes[count - 2];
+            beforeLastLon = longitudes[count - 2];
+        } else {
+            beforeLastLat = lastLat;
+            beforeLastLon = lastLon;
+        }
+        lastLat = latitudes[count - 1];
+        lastLon = longitudes[count - 1];
+    }
+
+    /**
+     * Fills the segment lengths of points {@code [from, to)} and returns their feature hits. Only
+     * reads the accumulator, so chunks can run at the same time.
+     */
+    private int addChunk(int[] latitudes, int[] longitudes, int[] segments, int from, int to) {
+        RouteDistance chunkDistance = new RouteDistance(distanceMode);
+        if (from > 0) {
+            chunkDistance.next(latitudes[from - 1], longitudes[from - 1]);
+        } else if (pointCount > 0) {
+            chunkDistance.next(lastLat, lastLon);
+        }
+        int found = 0;
+        for (int i = from; i < to; i++) {
+            segments[i] = chunkDistance.next(latitudes[i], longitudes[i]);
+            if (i == 0 && pointCount == 0) {
+                found += firstFeatures(latitudes[0], longitudes[0]);
+            } else {
+                found += features(
+                        i >= 2 ? latitudes[i - 2] : i == 1 ? lastLat : beforeLastLat,
+                        i >= 2 ? longitudes[i - 2] : i == 1 ? lastLon : beforeLastLon,
+                        i >= 1 ? latitudes[i - 1] : lastLat,
+                        i >= 1 ? longitudes[i - 1] : lastLon,
+                        latitudes[i], longitudes[i]);
+            }
+        }
+        return found;
+    }
+
+    private int firstFeatures(int latitude, int longitude) {
+        if (featureMatcher != null) {
+            return featureMatcher.count(latitude, longitude, latitude, longitude);
+        }
+        return exactFeature(latitude, longitude);
+    }
+
+    private int features(int previousLat, int previousLon, int startLat, int startLon, int endLat, int endLon) {
+        if (featureMatcher != null) {
+            return featureMatcher.count(previousLat, previousLon, startLat, startLon, endLat, endLon);
+        }
+        return exactFeature(endLat, endLon);
+    }
+
+    private int exactFeature(int latitude, int longitude) {
+        int id = featureStore.findFeature(latitude, longitude);
+        return id != FeatureStore.NOT_FOUND && featureStore.isNamed(id) ? 1 : 0;
+    }
+
+    private void addSegment(int length) {
+        distance += length;
+        segmentCount++;
+        maxSegmentLength = Math.max(maxSegmentLength, length);
+        double delta = length - meanSegmentLength;
+        meanSegmentLength += delta / segmentCount;
+        segmentLengthM2 += delta * (length - meanSegmentLength);
+    }
+
+    RouteSummary summary(long elapsedNanos) {
+        return RouteSummary.newBuilder()
+                .setPointCount(pointCount)
+                .setFeatureCount(featureCount)
+                .setDistance(distance)
+                .setElapsedTime((int) NANOSECONDS.toSeconds(elapsedNanos))
+                .setSegmentCount(segmentCount)
+                .setMaxSegmentLength(maxSegmentLength)
+                .setMeanSegmentLength(meanSegmentLength)
+                .setSegmentLengthStddev(segmentCount > 0 ? Math.sqrt(segmentLengthM2 / segmentCount) : 0)
+                .setAverageSpeed(elapsedNanos > 0 ? distance * 1e9 / elapsedNanos : 0)
+                .build();
+    }
+}
@@ -0,0 +1,134 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.store.FeatureStore;
+import es.ysegura.grpctutorial.store.SpatialIndex;
+
+import java.util.PrimitiveIterator;
+
+import static java.lang.Math.*;
+
+/**
+ * Counts the named features within a radius of the segments of a route.
+ * <p>
+ * Every segment asks the spatial index for the features inside its bounding box grown by the radius,
+ * and keeps the ones whose distance to the segment is at most the radius. Distances use a flat projection
+ * scaled at the latitude of the feature, which is accurate for the lengths of GPS segments.
+ * <p>
+ * A feature near the point shared by two consecutive segments is only counted by the first one; apart
+ * from that, a feature is counted again each time the route comes back to it, just like exact matching
+ * counts every visit. The matcher keeps no state of its own, so segments can be matched from
+ * several threads at once.
+ */
+class RouteFeatureMatcher {
+
+    private static final double METERS_PER_E7 = 6371000 * PI / 180 / 1e7;
+    private static final double E7_TO_RADIANS = PI / 180 / 1e7;
+    private static final int MAX_LATITUDE = 900_000_000;
+    private static final long MAX_LONGITUDE = 1_800_000_000L;
+    private static final long FULL_TURN = 2 * MAX_LONGITUDE;
+
+    private final FeatureStore featureStore;
+    private final SpatialIndex index;
+    private final int radius;
+    private final long latitudeMargin;
+
+    /**
+     * @param radius meters from the route within which a feature counts, greater than zero
+     */
+    RouteFeatureMatcher(FeatureStore featureStore, int radius) {
+        if (radius <= 0) {
+            throw new IllegalArgumentException("radius must be positive: " + radius);
+        }
+        this.featureStore = featureStore;
+        this.index = featureStore.getSpatialIndex();
+        this.radius = radius;
+        this.latitudeMargin = (long) ceil(radius / METERS_PER_E7);
+    }
+
+    /**
+     * Features near the segment from start to end, which is a single point at the start of a route.
+     */
+    int count(int startLat, int startLon, int endLat, int endLon) {
+        return count(startLat, startLon, endLat, endLon, false, 0, 0);
+    }
+
+    /**
+     * Features near the segment from start to end that were not already near the previous segment,
+     * the one from {@code previous} to start.
+     */
+    int count(int previousLat, int previousLon, int startLat, int startLon, int endLat, int endLon) {
+        return count(startLat, startLon, endLat, endLon, true, previousLat, previousLon);
+    }
+
+    private int count(int startLat, int startLon, int endLat, int endLon,
+                      boolean skipPrevious, int previousLat, int previousLon) {
+        long lonSpan = wrap((long) endLon - startLon);
+        long left = startLon + min(0, lonSpan);
+        long right = startLon + max(0, lonSpan);
+        int bottom = (int) max(-MAX_LATITUDE, min(startLat, endLat) - latitudeMargin);
+        int top = (int) min(MAX_LATITUDE, max(startLat, endLat) + latitudeMargin);
+
+        // El margen en longitud crece con la latitud; cerca de los polos se busca en todas las longitudes
+        double cosLat = cos(max(abs((long) bottom), abs((long) top)) * E7_TO_RADIANS);
+        double lonMargin = latitudeMargin / cosLat;
+        if (cosLat <= 0 || right - left + 2 * lonMargin >= FULL_TURN) {
+            return count(-MAX_LONGITUDE, MAX_LONGITUDE, top, bottom, startLat, startLon, endLat, endLon, skipPrevious, previousLat, previousLon);
+        }
+        left -= (long) ceil(lonMargin);
+        right += (long) ceil(lonMargin);
+        // Las cajas que cruzan el antimeridiano se parten en dos
+        if (left < -MAX_LONGITUDE) {
+            return count(left + FULL_TURN, MAX_LONGITUDE, top, bottom, startLat, startLon, endLat, endLon, skipPrevious, previousLat, previousLon)
+                    + count(-MAX_LONGITUDE, right, top, bottom, startLat, startLon, endLat, endLon, skipPrevious, previousLat, previousLon);
+        }
+        if (right > MAX_LONGITUDE) {
+            return count(left, MAX_LONGITUDE, top, bottom, startLat, startLon, endLat, endLon, skipPrevious, previousLat, previousLon)
+                    + count(-MAX_LONGITUDE, right - FULL_TURN, top, bottom, startLat, startLon, endLat, endLon, skipPrevious, previousLat, previousLon);
+        }
+        return count(left, right, top, bottom, startLat, startLon, endLat, endLon, skipPrevious, previousLat, previousLon);
+    }
+
+    private int count(long left, long right, int top, int bottom,
+                      int startLat, int startLon, int endLat, int endLon,
+                      boolean skipPrevious, int previousLat, int previousLon) {
+        int found = 0;
+        PrimitiveIterator.OfInt ids = index.query((int) left, (int) right, top, bottom);
+        while (ids.hasNext()) {
+            int id = ids.nextInt();
+            int lat = featureStore.getLatitude(id);
+            int lon = featureStore.getLongitude(id);
+            if (distance(lat, lon, startLat, startLon, endLat, endLon) <= radius
+                    && !(skipPrevious && distance(lat, lon, previousLat, previousLon, startLat, startLon) <= radius)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Meters from the point to the closest point of the segment, measured on a flat projection
+     * centred on the segment start.
+     */
+    static double distance(int lat, int lon, int startLat, int startLon, int endLat, int endLon) {
+        double cosLat = cos(lat * E7_TO_RADIANS);
+        double px = wrap((long) lon - startLon) * cosLat;
+        double py = (double) lat - startLat;
+        double dx = wrap((long) endLon - startLon) * cosLat;
+        double dy = (double) endLat - startLat;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : max(0, min(1, (px * dx + py * dy) / lengthSquared));
+        double x = px - t * dx;
+        double y = py - t * dy;
+        return sqrt(x * x + y * y) * METERS_PER_E7;
+    }
+
+    private static long wrap(long deltaLon) {
+        if (deltaLon > MAX_LONGITUDE) {
+            return deltaLon - FULL_TURN;
+        }
+        if (deltaLon < -MAX_LONGITUDE) {
+            return deltaLon + FULL_TURN;
+        }
+        return deltaLon;
+    }
+}
@@ -1,27 +1,179 @@
 package es.ysegura.grpctutorial.service;
 
+import es.ysegura.grpctutorial.DistanceMode;
+import es.ysegura.grpctutorial.RouteGuideConfig;
 import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.chat.ChatBroker;
+import es.ysegura.grpctutorial.chat.ChatDeliveryMode;
+import es.ysegura.grpctutorial.chat.RouteNoteStore;
 import es.ysegura.grpctutorial.protobuff.*;
+import es.ysegura.grpctutorial.reactive.FlowOperators;
+import es.ysegura.grpctutorial.reactive.ReactiveServerCalls;
+import es.ysegura.grpctutorial.store.FeatureStore;
+import es.ysegura.grpctutorial.store.FeatureStoreHolder;
+import es.ysegura.grpctutorial.store.InMemoryFeatureStore;
+import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCalls;
 import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
 @Slf4j
-public class RouteGuideService extends RouteGuideGrpc.RouteGuideImplBase {
-    private final Collection<Feature> features;
+public class RouteGuideService extends RouteGuideGrpc.RouteGuideImplBase implements AutoCloseable {
+    static final int MAX_NEAREST = 1000;
 
+    private final FeatureStoreHolder featureStores;
+    private final RouteNoteStore routeNoteStore;
+    private final ChatDeliveryMode chatDeliveryMode;
+    private final ChatBroker chatBroker;
+    private final DistanceMode distanceMode;
+    private final int routeFeatureRadius;
+    private final ExecutorService routeBatchExecutor;
+    private final ListFeaturesCache listFeaturesCache;
+    private final boolean reactiveStreaming;
+    private final boolean preSerializedFeatures;
+    private volatile SerializedFeatures serializedFeatures;
 
     public RouteGuideService(Collection<Feature> features) {
-        this.features = features;
+        this(new InMemoryFeatureStore(features));
     }
 
+    public RouteGuideService(FeatureStore featureStore) {
+        this(featureStore, RouteGuideConfig.defaults());
+    }
+
+    public RouteGuideService(FeatureStore featureStore, RouteGuideConfig config) {
+        this(new FeatureStoreHolder(featureStore), config);
+    }
+
+    /**
+     * Serves whatever store {@code featureStores} holds when each call starts, so the features can be
+     * swapped while the server is running.
+     */
+    public RouteGuideService(FeatureStoreHolder featureStores, RouteGuideConfig config) {
+        if (config.isPreSerializedFeatures() && config.getFeatureStoreFile() != null) {
+            throw new IllegalArgumentException("routeguide.pre-serialized-features copies every feature onto the heap"
+                    + " and cannot be combined with the mapped routeguide.feature-store-file");
+        }
+        this.featureStores = featureStores;
+        this.routeNoteStore = new RouteNoteStore(
+                config.getChatMaxNotesPerLocation(), config.getChatMaxLocations(), config.getChatNoteTtl());
+        this.chatDeliveryMode = config.getChatDeliveryMode();
+        this.distanceMode = config.getDistanceMode();
+        this.routeFeatureRadius = config.getRouteFeatureRadius();
+        AtomicInteger routeBatchThreads = new AtomicInteger();
+        this.routeBatchExecutor = config.getRouteBatchThreads() > 1
+                ? Executors.newFixedThreadPool(config.getRouteBatchThreads(), runnable -> {
+                    Thread thread = new Thread(runnable, "route-batch-" + routeBatchThreads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+        this.listFeaturesCache = config.getListFeaturesCacheBytes() > 0
+                ? new ListFeaturesCache(config.getListFeaturesCacheBytes())
+                : null;
+        this.reactiveStreaming = config.isReactiveStreaming();
+        this.preSerializedFeatures = config.isPreSerializedFeatures();
+        prepare(featureStores.get());
+        this.chatBroker = chatDeliveryMode == ChatDeliveryMode.BROADCAST
+                ? new ChatBroker(routeNoteStore, config.getChatDispatcherThreads(), config.getChatSubscriberQueueSize())
+                : null;
+    }
+
+    /**
+     * Stops the RouteChat dispatcher and RecordRouteBatched threads, if any. Call it once the server has
+     * shut down.
+     */
+    @Override
+    public void close() {
+        if (chatBroker != null) {
+            chatBroker.shutdown();
+        }
+        if (routeBatchExecutor != null) {
+            routeBatchExecutor.shutdown();
+        }
+    }
+
+
     @Override
     public void getFeature(Point request, StreamObserver<Feature> responseObserver) {
-        responseObserver.onNext(checkFeature(request));
+        responseObserver.onNext(featureStores.get().getFeature(request));
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * GetFeature with pre-serialized features, registered by {@link #serviceDefinition()} when they are
+     * enabled. Points without a feature get an unnamed one, encoded as usual.
+     */
+    private void getFeatureSerialized(Point request, StreamObserver<InputStream> responseObserver) {
+        FeatureStore featureStore = featureStores.get();
+        int id = featureStore.findFeature(request.getLatitude(), request.getLongitude());
+        responseObserver.onNext(id != FeatureStore.NOT_FOUND
+                ? encoder(featureStore).apply(id)
+                : SerializedResponses.stream(featureStore.getFeature(request)));
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * One lookup per request message, answered in order. Inbound messages are only requested while the
+     * client can take the answers, so a client that sends faster than it reads is slowed down instead of
+     * filling the server's buffers.
+     */
+    @Override
+    public StreamObserver<Point> getFeatures(StreamObserver<Feature> responseObserver) {
+        return new FeatureLookupStreamObserver(responseObserver, featureStores.get());
+    }
+
+    @Override
+    public void batchGetFeature(PointList request, StreamObserver<FeatureList> responseObserver) {
+        FeatureStore featureStore = featureStores.get();
+        FeatureList.Builder features = FeatureList.newBuilder();
+        for (Point point : request.getPointsList()) {
+            features.addFeatures(featureStore.getFeature(point));
+        }
+        responseObserver.onNext(features.build());
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void findNearest(NearestRequest request, StreamObserver<NearestResponse> responseObserver) {
+        if (request.getK() < 1 || request.getK() > MAX_NEAREST) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("k must be between 1 and " + MAX_NEAREST).asRuntimeException());
+            return;
+        }
+        if (request.getMaxDistance() < 0) {
+            responseObserver.onError(Status.INVALID_ARGUMENT
+                    .withDescription("max_distance must not be negative").asRuntimeException());
+            return;
+        }
+        FeatureStore featureStore = featureStores.get();
+        Point point = request.getPoint();
+        int[] ids = featureStore.getNearestIndex()
+                .nearest(point.getLatitude(), point.getLongitude(), request.getK(), request.getMaxDistance());
+        NearestResponse.Builder response = NearestResponse.newBuilder();
+        for (int id : ids) {
+            Feature feature = featureStore.getFeature(id);
+            response.addFeaturesBuilder()
+                    .setFeature(feature)
+                    .setDistance(RouteGuideUtil.calcDistance(point, feature.getLocation()));
+        }
+        responseObserver.onNext(response.build());
         responseObserver.onCompleted();
     }
 
@@ -32,20 +184,89 @@ public class RouteGuideService extends RouteGuideGrpc.RouteGuideImplBase {
         int top = getTop(area);
         int bottom = getBottom(area);
 
-        features.stream()
-                .filter(RouteGuideUtil::exists)
-                .filter(feature -> featureWithinLimits(left, right, top, bottom, feature))
-                .forEach(responseObserver::onNext);
+        // Una sola lectura por llamada: el stream entero sale del mismo store aunque haya una recarga
+        FeatureStoreHolder.Generation generation = featureStores.current();
+        FeatureStore featureStore = generation.store();
+        FeaturePageCursor<Feature> cursor;
+        try {
+            int maxResults = PageTokens.checkMaxResults(area.getMaxResults());
+            int from = PageTokens.decode(area.getPageToken(), generation.number());
+            cursor = new FeaturePageCursor<>(featureStore.getSpatialIndex().query(left, right, top, bottom, from),
+                    maxResults, generation.number(), featureStore::getFeature);
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+            return;
+        }
+        AtomicReference<String> nextPageToken = NextPageTokenInterceptor.currentHolder();
 
-        responseObserver.onCompleted();
+        // Solo enviamos mientras el cliente pueda recibir; el resto se envía desde el onReadyHandler
+        BackpressureStreamer.stream(cursor, responseObserver, () -> nextPageToken.set(cursor.nextPageToken()));
+    }
+
+    /**
+     * ListFeatures with serialized responses, registered by {@link #serviceDefinition()} when the result
+     * cache or the pre-serialized features are enabled. Results that are not cached are streamed from
+     * the index, with the pre-serialized bytes if there are any.
+     */
+    private void listFeaturesSerialized(Rectangle area, StreamObserver<InputStream> responseObserver) {
+        FeatureStoreHolder.Generation generation = featureStores.current();
+        FeatureStore featureStore = generation.store();
+        int maxResults;
+        int from;
+        try {
+            maxResults = PageTokens.checkMaxResults(area.getMaxResults());
+            from = PageTokens.decode(area.getPageToken(), generation.number());
+        } catch (StatusRuntimeException e) {
+            responseObserver.onError(e);
+            return;
+        }
+        int left = getLeft(area);
+        int right = getRight(area);
+        int top = getTop(area);
+        int bottom = getBottom(area);
+
+        ListFeaturesCache.Result cached = listFeaturesCache != null ? listFeaturesCache.get(featureStore, left, right, top, bottom) : null;
+        AtomicReference<String> nextPageToken = NextPageTokenInterceptor.currentHolder();
+        if (cached != null) {
+            CachedFeaturePage page = new CachedFeaturePage(cached, maxResults, generation.number(), from);
+            BackpressureStreamer.stream(page, responseObserver, () -> nextPageToken.set(page.nextPageToken()));
+            return;
+        }
+        FeaturePageCursor<InputStream> cursor = new FeaturePageCursor<>(featureStore.getSpatialIndex().query(left, right, top, bottom, from),
+                maxResults, generation.number(), encoder(featureStore));
+        BackpressureStreamer.stream(cursor, responseObserver, () -> nextPageToken.set(cursor.nextPageToken()));
     }
 
-    private static boolean featureWithinLimits(int left, int right, int top, int bottom, Feature feature) {
-        int lat = feature.getLocation().getLatitude();
-        int lon = feature.getLocation().getLongitude();
-        return lon >= left && lon <= right && lat >= bottom && lat <= top;
+    /**
+     * Serialized bytes by feature id: the pre-serialized ones when they belong to {@code featureStore},
+     * encoded on demand otherwise, as for calls still running on a store that has been replaced.
+     */
+    private IntFunction<InputStream> encoder(FeatureStore featureStore) {
+        SerializedFeatures serialized = serializedFeatures;
+        if (serialized != null && serialized.getFeatureStore() == featureStore) {
+            return serialized::stream;
+        }
+        return id -> SerializedResponses.stream(featureStore.getFeature(id));
     }
 
+    /**
+     * Builds what this service keeps for each store, such as the pre-serialized features, for a store
+     * about to be published in its {@link FeatureStoreHolder}. Reloads call it on their own thread
+     * before publishing, so no call waits for it; stores published without it are served as usual,
+     * only encoding their features on demand.
+     */
+    public void prepare(FeatureStore featureStore) {
+        if (preSerializedFeatures) {
+            serializedFeatures = SerializedFeatures.of(featureStore);
+        }
+    }
+
+    /**
+     * ListFeatures result cache, or {@code null} if it is disabled.
+     */
+    public ListFeaturesCache getListFeaturesCache() {
+        return listFeaturesCache;
+    }
 
 
     private static int getBottom(Rectangle area) {
@@ -64,22 +285,65 @@ public class RouteGuideService extends RouteGuideGrpc.RouteGuideImplBase {
         return min(area.getLo().getLongitude(), area.getHi().getLongitude());
     }
 
+    /**
+     * Service definition including the interceptors this service relies on, such as the one that
+     * returns ListFeatures page tokens. Register this instead of the bare service.
+     */
+    public ServerServiceDefinition serviceDefinition() {
+        ServerServiceDefinition definition = bindService();
+        if (listFeaturesCache != null || preSerializedFeatures) {
+            definition = SerializedResponses.replace(definition, RouteGuideGrpc.getListFeaturesMethod(),
+                    ServerCalls.asyncServerStreamingCall(this::listFeaturesSerialized));
+        }
+        if (preSerializedFeatures) {
+            definition = SerializedResponses.replace(definition, RouteGuideGrpc.getGetFeatureMethod(),
+                    ServerCalls.asyncUnaryCall(this::getFeatureSerialized));
+        }
+        return ServerInterceptors.intercept(definition, new NextPageTokenInterceptor());
+    }
+
     @Override
     public StreamObserver<Point> recordRoute(StreamObserver<RouteSummary> responseObserver) {
-        return new PointStreamObserver(responseObserver, features);
+        if (reactiveStreaming) {
+            return ReactiveServerCalls.clientStreaming(responseObserver, this::recordRouteFlow);
+        }
+        return new PointStreamObserver(responseObserver, featureStores.get(), distanceMode, routeFeatureRadius);
+    }
+
+    @Override
+    public StreamObserver<PointBatch> recordRouteBatched(StreamObserver<RouteSummary> responseObserver) {
+        return new PointBatchStreamObserver(responseObserver,
+                new RouteAccumulator(featureStores.get(), distanceMode, routeFeatureRadius, routeBatchExecutor));
     }
 
     @Override
     public StreamObserver<RouteNote> routeChat(StreamObserver<RouteNote> responseObserver) {
-        return new RouteNoteStreamObserver(responseObserver);
+        if (chatBroker != null) {
+            return new BroadcastRouteNoteObserver(responseObserver, chatBroker);
+        }
+        if (reactiveStreaming) {
+            return ReactiveServerCalls.bidiStreaming(responseObserver, this::routeChatFlow);
+        }
+        return new RouteNoteStreamObserver(responseObserver, routeNoteStore, chatDeliveryMode);
+    }
 
+    /**
+     * RecordRoute as a pipeline: points are pulled from the call 64 at a time as the accumulator takes
+     * them, and the summary is sent when the client completes.
+     */
+    private CompletionStage<RouteSummary> recordRouteFlow(Flow.Publisher<Point> points) {
+        long startTime = System.nanoTime();
+        RouteAccumulator route = new RouteAccumulator(featureStores.get(), distanceMode, routeFeatureRadius);
+        return FlowOperators.reduce(points, route, (accumulator, point) -> accumulator.add(point.getLatitude(), point.getLongitude()), 64)
+                .thenApply(accumulator -> accumulator.summary(System.nanoTime() - startTime));
     }
 
-    private Feature checkFeature(Point location) {
-        return features.stream()
-                .filter(feature -> feature.getLocation().getLongitude() == location.getLongitude())
-                .filter(feature -> feature.getLocation().getLatitude() == location.getLatitude())
-                .findFirst()
-                .orElse(Feature.newBuilder().setName("").setLocation(location).build());
+    /**
+     * RouteChat as a pipeline: the next note is only read and posted once the replies to the previous
+     * one have been requested by the response stream.
+     */
+    private Flow.Publisher<RouteNote> routeChatFlow(Flow.Publisher<RouteNote> notes) {
+        RouteNoteResponder responder = new RouteNoteResponder(routeNoteStore, chatDeliveryMode);
+        return FlowOperators.concatMapIterable(notes, responder::respond);
     }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.chat.ChatDeliveryMode;
+import es.ysegura.grpctutorial.chat.RouteNoteStore;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.protobuff.RouteNote;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Posts the notes of one RouteChat call and works out the notes to send back for each of them, in
+ * {@link ChatDeliveryMode#REPLAY} or {@link ChatDeliveryMode#INCREMENTAL} mode.
+ */
+class RouteNoteResponder {
+
+    private final RouteNoteStore routeNoteStore;
+    private final ChatDeliveryMode deliveryMode;
+    // Modo incremental: siguiente secuencia pendiente de enviar en cada ubicación. Sigue valiendo aunque
+    // el store retire la ubicación, porque las secuencias de un log nuevo empiezan detrás
+    private final Map<Long, Long> cursors = new HashMap<>();
+
+    RouteNoteResponder(RouteNoteStore routeNoteStore, ChatDeliveryMode deliveryMode) {
+        this.routeNoteStore = routeNoteStore;
+        this.deliveryMode = deliveryMode;
+    }
+
+    /**
+     * Posts {@code note} and returns the notes the sender gets back for it.
+     */
+    List<RouteNote> respond(RouteNote note) {
+        Point location = note.getLocation();
+        List<RouteNote> replies;
+        if (deliveryMode == ChatDeliveryMode.REPLAY) {
+            // Respond with all previous notes at this location.
+            replies = routeNoteStore.read(location);
+        } else {
+            // Respond only with the notes at this location not sent to this call yet.
+            long key = RouteGuideUtil.pack(location);
+            long from = cursors.getOrDefault(key, 0L);
+            long to = routeNoteStore.nextSequence(location);
+            replies = routeNoteStore.read(location, from, to);
+            cursors.put(key, to);
+        }
+        routeNoteStore.post(note);
+        return replies;
+    }
+}
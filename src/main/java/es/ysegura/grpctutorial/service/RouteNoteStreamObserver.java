@@ -1,34 +1,30 @@
 package es.ysegura.grpctutorial.service;
 
-import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.chat.ChatDeliveryMode;
+import es.ysegura.grpctutorial.chat.RouteNoteStore;
 import es.ysegura.grpctutorial.protobuff.RouteNote;
 import io.grpc.stub.StreamObserver;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-
 @Slf4j
 public class RouteNoteStreamObserver implements StreamObserver<RouteNote> {
 
-    private final ConcurrentMap<Point, List<RouteNote>> routeNotes;
+    private final RouteNoteResponder responder;
     private final StreamObserver<RouteNote> responseObserver;
 
-    public RouteNoteStreamObserver(StreamObserver<RouteNote> responseObserver) {
+    public RouteNoteStreamObserver(StreamObserver<RouteNote> responseObserver, RouteNoteStore routeNoteStore) {
+        this(responseObserver, routeNoteStore, ChatDeliveryMode.REPLAY);
+    }
+
+    public RouteNoteStreamObserver(StreamObserver<RouteNote> responseObserver, RouteNoteStore routeNoteStore,
+                                   ChatDeliveryMode deliveryMode) {
         this.responseObserver = responseObserver;
-        this.routeNotes = new ConcurrentHashMap<>();
+        this.responder = new RouteNoteResponder(routeNoteStore, deliveryMode);
     }
 
     @Override
     public void onNext(RouteNote note) {
-        List<RouteNote> notes = getOrCreateNotes(note.getLocation());
-        // Respond with all previous notes at this location.
-        routeNotes.forEach((k, v) -> v.forEach(responseObserver::onNext));
-        notes.add(note);
+        responder.respond(note).forEach(responseObserver::onNext);
     }
 
     @Override
@@ -38,15 +34,6 @@ public class RouteNoteStreamObserver implements StreamObserver<RouteNote> {
 
     @Override
     public void onCompleted() {
-        routeNotes.values().stream()
-                .flatMap(Collection::stream)
-                .forEach(responseObserver::onNext);
         responseObserver.onCompleted();
     }
-
-    private List<RouteNote> getOrCreateNotes(Point location){
-        List<RouteNote> notes = Collections.synchronizedList(new ArrayList<>());
-        List<RouteNote> prevNotes = routeNotes.putIfAbsent(location, notes);
-        return prevNotes != null ? prevNotes : notes;
-    }
 }
@@ -0,0 +1,162 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.store.FeatureStore;
+import com.google.protobuf.CodedOutputStream;
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every feature of a {@link FeatureStore}, encoded once into a few large shared arrays.
+ * <p>
+ * {@link #stream(int)} returns a view of one feature's bytes that gRPC writes straight into its frames,
+ * without encoding the protobuf or copying it through an intermediate buffer. The encoded copy takes
+ * about as much memory again as the serialized features.
+ */
+final class SerializedFeatures {
+
+    // Trozos de 64 MiB; una feature nunca queda partida entre dos
+    private static final int CHUNK_BITS = 26;
+
+    private final FeatureStore featureStore;
+    private final int chunkBits;
+    private final byte[][] chunks;
+    // Trozo en los bits altos, desplazamiento dentro de él en los bajos
+    private final long[] positions;
+    private final int[] lengths;
+
+    private SerializedFeatures(FeatureStore featureStore, int chunkBits, byte[][] chunks, long[] positions, int[] lengths) {
+        this.featureStore = featureStore;
+        this.chunkBits = chunkBits;
+        this.chunks = chunks;
+        this.positions = positions;
+        this.lengths = lengths;
+    }
+
+    static SerializedFeatures of(FeatureStore featureStore) {
+        return of(featureStore, CHUNK_BITS);
+    }
+
+    /**
+     * Encodes the features into chunks of {@code 2^chunkBits} bytes.
+     */
+    static SerializedFeatures of(FeatureStore featureStore, int chunkBits) {
+        int chunkSize = 1 << chunkBits;
+        int count = featureStore.size();
+        long[] positions = new long[count];
+        int[] lengths = new int[count];
+        List<Integer> chunkSizes = new ArrayList<>();
+        int used = 0;
+        for (int id = 0; id < count; id++) {
+            int length = featureStore.getFeature(id).getSerializedSize();
+            if (length > chunkSize) {
+                throw new IllegalArgumentException("Feature " + id + " is too large to pre-serialize: " + length + " bytes");
+            }
+            if (used + length > chunkSize) {
+                chunkSizes.add(used);
+                used = 0;
+            }
+            positions[id] = ((long) chunkSizes.size() << chunkBits) | used;
+            lengths[id] = length;
+            used += length;
+        }
+        chunkSizes.add(used);
+
+        byte[][] chunks = new byte[chunkSizes.size()][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new byte[chunkSizes.get(i)];
+        }
+        for (int id = 0; id < count; id++) {
+            Feature feature = featureStore.getFeature(id);
+            CodedOutputStream out = CodedOutputStream.newInstance(
+                    chunks[(int) (positions[id] >>> chunkBits)], (int) (positions[id] & (chunkSize - 1)), lengths[id]);
+            try {
+                feature.writeTo(out);
+            } catch (IOException e) {
+                // Escribir en un array no falla salvo que el tamaño no cuadre
+                throw new UncheckedIOException(e);
+            }
+            out.checkNoSpaceLeft();
+        }
+        return new SerializedFeatures(featureStore, chunkBits, chunks, positions, lengths);
+    }
+
+    /**
+     * The store these bytes were encoded from.
+     */
+    FeatureStore getFeatureStore() {
+        return featureStore;
+    }
+
+    int chunkCount() {
+        return chunks.length;
+    }
+
+    InputStream stream(int id) {
+        long position = positions[id];
+        return new FeatureBytes(chunks[(int) (position >>> chunkBits)], (int) (position & ((1 << chunkBits) - 1)), lengths[id]);
+    }
+
+    /**
+     * Encoded bytes of a feature. gRPC takes the length from {@link KnownLength} and, being
+     * {@link Drainable}, writes the slice to its frame in one call.
+     */
+    private static final class FeatureBytes extends InputStream implements KnownLength, Drainable {
+
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        FeatureBytes(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+            int length = end - position;
+            target.write(bytes, position, length);
+            position = end;
+            return length;
+        }
+
+        @Override
+        public int read() {
+            return position < end ? bytes[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == end) {
+                return -1;
+            }
+            int read = Math.min(len, end - position);
+            System.arraycopy(bytes, position, b, off, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return end - position;
+        }
+    }
+}
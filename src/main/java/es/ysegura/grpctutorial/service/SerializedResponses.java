@@ -0,0 +1,73 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.protobuf.ProtoUtils;
+
+import java.io.InputStream;
+
+/**
+ * Lets a method of a bound service answer with bytes that are already protobuf-encoded.
+ * <p>
+ * The method is registered again with a pass-through response marshaller, so its handler sends
+ * {@link InputStream}s: stored bytes, or {@link #stream(Feature)} for messages that still have to be
+ * encoded. The wire format does not change, and clients keep using the generated stubs.
+ */
+final class SerializedResponses {
+
+    private static final MethodDescriptor.Marshaller<Feature> FEATURE_MARSHALLER =
+            ProtoUtils.marshaller(Feature.getDefaultInstance());
+
+    static final MethodDescriptor.Marshaller<InputStream> MARSHALLER = new MethodDescriptor.Marshaller<>() {
+        @Override
+        public InputStream stream(InputStream value) {
+            return value;
+        }
+
+        @Override
+        public InputStream parse(InputStream stream) {
+            return stream;
+        }
+    };
+
+    private SerializedResponses() {
+    }
+
+    /**
+     * Encodes the feature lazily, the same way the generated marshaller does.
+     */
+    static InputStream stream(Feature feature) {
+        return FEATURE_MARSHALLER.stream(feature);
+    }
+
+    /**
+     * Copy of {@code definition} where {@code method} is served by {@code handler} with serialized
+     * responses. The service descriptor is rebuilt too, since gRPC checks that every bound method is
+     * the same instance the descriptor lists.
+     */
+    static <Q> ServerServiceDefinition replace(ServerServiceDefinition definition, MethodDescriptor<Q, ?> method,
+                                               ServerCallHandler<Q, InputStream> handler) {
+        MethodDescriptor<Q, InputStream> serialized =
+                method.toBuilder(method.getRequestMarshaller(), MARSHALLER).build();
+        ServiceDescriptor original = definition.getServiceDescriptor();
+        ServiceDescriptor.Builder descriptor = ServiceDescriptor.newBuilder(original.getName())
+                .setSchemaDescriptor(original.getSchemaDescriptor());
+        for (MethodDescriptor<?, ?> existing : original.getMethods()) {
+            descriptor.addMethod(existing.getFullMethodName().equals(method.getFullMethodName()) ? serialized : existing);
+        }
+
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(descriptor.build());
+        for (ServerMethodDefinition<?, ?> existing : definition.getMethods()) {
+            if (existing.getMethodDescriptor().getFullMethodName().equals(method.getFullMethodName())) {
+                builder.addMethod(serialized, handler);
+            } else {
+                builder.addMethod(existing);
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,163 @@
+package es.ysegura.grpctutorial.store;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Loads the feature database without going through {@code JsonFormat} and a whole
+ * {@code FeatureDatabase} in memory.
+ * <p>
+ * The JSON is tokenized as a stream, a chunk of plain coordinates and names at a time, and each chunk
+ * is turned into {@link Feature} messages on the common pool while the next one is being read. Files
+ * written by {@link FeatureSnapshot} are recognised by their header and read directly.
+ */
+@Slf4j
+public final class FeatureLoader {
+
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    private FeatureLoader() {
+    }
+
+    /**
+     * Reads a JSON database or a binary snapshot, whichever the file is.
+     */
+    public static List<Feature> load(URL file) throws IOException {
+        try (InputStream input = new BufferedInputStream(file.openStream(), 1 << 16)) {
+            return FeatureSnapshot.isSnapshot(input) ? FeatureSnapshot.read(input) : parseJson(input);
+        }
+    }
+
+    /**
+     * Reads {@code snapshot} if it was written from the current {@code file}; otherwise loads
+     * {@code file} and writes the snapshot again so that the next start can skip the JSON. A change in
+     * the size or modification time of {@code file} is enough to rebuild it.
+     */
+    public static List<Feature> load(URL file, Path snapshot) throws IOException {
+        SourceStamp source = SourceStamp.of(file);
+        if (Files.isRegularFile(snapshot)) {
+            if (source.equals(FeatureSnapshot.readSource(snapshot))) {
+                log.info("Loading features from snapshot " + snapshot);
+                try (InputStream input = new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16)) {
+                    return FeatureSnapshot.read(input);
+                }
+            }
+            log.info("Snapshot " + snapshot + " is out of date with " + file + ", rebuilding it");
+        }
+        List<Feature> features = load(file);
+        FeatureSnapshot.write(features, snapshot, source);
+        log.info("Wrote " + features.size() + " features to snapshot " + snapshot);
+        return features;
+    }
+
+    public static List<Feature> parseJson(InputStream input) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        List<CompletableFuture<List<Feature>>> chunks = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("feature") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                readFeatures(reader, chunks);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return join(chunks);
+    }
+
+    private static void readFeatures(JsonReader reader, List<CompletableFuture<List<Feature>>> chunks) throws IOException {
+        Chunk chunk = new Chunk();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            readFeature(reader, chunk);
+            if (chunk.size == CHUNK_SIZE) {
+                chunks.add(chunk.build());
+                chunk = new Chunk();
+            }
+        }
+        reader.endArray();
+        if (chunk.size > 0) {
+            chunks.add(chunk.build());
+        }
+    }
+
+    // Mismo formato que acepta JsonFormat: nombres del proto o en camelCase y campos opcionales
+    private static void readFeature(JsonReader reader, Chunk chunk) throws IOException {
+        int latitude = 0;
+        int longitude = 0;
+        String name = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name" -> name = reader.nextString();
+                case "location" -> {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "latitude" -> latitude = reader.nextInt();
+                            case "longitude" -> longitude = reader.nextInt();
+                            default -> reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        chunk.add(latitude, longitude, name);
+    }
+
+    private static List<Feature> join(List<CompletableFuture<List<Feature>>> chunks) throws IOException {
+        List<Feature> features = new ArrayList<>(chunks.size() * CHUNK_SIZE);
+        try {
+            for (CompletableFuture<List<Feature>> chunk : chunks) {
+                features.addAll(chunk.join());
+            }
+        } catch (CompletionException exception) {
+            throw new IOException("Cannot build features", exception.getCause());
+        }
+        return features;
+    }
+
+    private static final class Chunk {
+        private final int[] latitudes = new int[CHUNK_SIZE];
+        private final int[] longitudes = new int[CHUNK_SIZE];
+        private final String[] names = new String[CHUNK_SIZE];
+        private int size;
+
+        void add(int latitude, int longitude, String name) {
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            names[size] = name;
+            size++;
+        }
+
+        CompletableFuture<List<Feature>> build() {
+            return CompletableFuture.supplyAsync(() -> {
+                List<Feature> features = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    features.add(Feature.newBuilder()
+                            .setName(names[i])
+                            .setLocation(Point.newBuilder().setLatitude(latitudes[i]).setLongitude(longitudes[i]))
+                            .build());
+                }
+                return features;
+            }, ForkJoinPool.commonPool());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package es.ysegura.grpctutorial.store;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import es.ysegura.grpctutorial.protobuff.Feature;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Binary copy of the feature database: a {@code RGFS} magic, a format version, the {@link SourceStamp}
+ * of the JSON it was written from and the feature count, followed by the features as length-delimited
+ * {@link Feature} messages. It is written once from the JSON and parsed on later starts without any
+ * text processing, for as long as the JSON does not change.
+ */
+public final class FeatureSnapshot {
+
+    private static final byte[] MAGIC = {'R', 'G', 'F', 'S'};
+    // La versión 1 no llevaba SourceStamp: esos ficheros se rechazan y se vuelven a generar
+    private static final int VERSION = 2;
+
+    private FeatureSnapshot() {
+    }
+
+    public static void write(Collection<Feature> features, Path path) throws IOException {
+        write(features, path, SourceStamp.UNKNOWN);
+    }
+
+    /**
+     * Writes to a temporary file next to {@code path} and moves it into place, so a half written
+     * snapshot is never picked up.
+     */
+    public static void write(Collection<Feature> features, Path path, SourceStamp source) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(temporary)) {
+                write(features, output, source);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public static void write(Collection<Feature> features, OutputStream output, SourceStamp source) throws IOException {
+        CodedOutputStream coded = CodedOutputStream.newInstance(output, 1 << 16);
+        coded.writeRawBytes(MAGIC);
+        coded.writeFixed32NoTag(VERSION);
+        coded.writeFixed64NoTag(source.size());
+        coded.writeFixed64NoTag(source.lastModified());
+        coded.writeFixed32NoTag(features.size());
+        for (Feature feature : features) {
+            coded.writeUInt32NoTag(feature.getSerializedSize());
+            feature.writeTo(coded);
+        }
+        coded.flush();
+    }
+
+    /**
+     * Checks the header without consuming it; {@code input} must support mark and reset.
+     */
+    static boolean isSnapshot(InputStream input) throws IOException {
+        input.mark(MAGIC.length);
+        try {
+            return Arrays.equals(input.readNBytes(MAGIC.length), MAGIC);
+        } finally {
+            input.reset();
+        }
+    }
+
+    /**
+     * Source the snapshot at {@code path} was written from, or {@code null} if it is not a snapshot or
+     * does not record one.
+     */
+    public static SourceStamp readSource(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            CodedInputStream coded = CodedInputStream.newInstance(input, 64);
+            if (!Arrays.equals(coded.readRawBytes(MAGIC.length), MAGIC) || coded.readFixed32() != VERSION) {
+                return null;
+            }
+            return new SourceStamp(coded.readFixed64(), coded.readFixed64());
+        } catch (EOFException | InvalidProtocolBufferException exception) {
+            return null;
+        }
+    }
+
+    public static List<Feature> read(InputStream input) throws IOException {
+        CodedInputStream coded = CodedInputStream.newInstance(input, 1 << 16);
+        if (!Arrays.equals(coded.readRawBytes(MAGIC.length), MAGIC)) {
+            throw new IOException("Not a feature snapshot");
+        }
+        int version = coded.readFixed32();
+        if (version != VERSION) {
+            throw new IOException("Unsupported feature snapshot version " + version);
+        }
+        // El SourceStamp solo interesa a readSource
+        coded.readFixed64();
+        coded.readFixed64();
+        int count = coded.readFixed32();
+        List<Feature> features = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // El límite de tamaño de CodedInputStream es por mensaje, no por fichero
+            coded.resetSizeCounter();
+            int limit = coded.pushLimit(coded.readRawVarint32());
+            features.add(Feature.parseFrom(coded));
+            coded.popLimit(limit);
+        }
+        return features;
+    }
+}
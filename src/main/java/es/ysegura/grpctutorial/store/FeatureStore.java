@@ -0,0 +1,56 @@
+package es.ysegura.grpctutorial.store;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+
+/**
+ * Read-only view of the feature database used by the RouteGuide service.
+ * <p>
+ * Features are addressed by a dense id in {@code [0, size())}, so indexes can refer to them with
+ * primitive ints instead of object references.
+ */
+public interface FeatureStore {
+
+    int NOT_FOUND = -1;
+
+    int size();
+
+    Feature getFeature(int id);
+
+    int getLatitude(int id);
+
+    int getLongitude(int id);
+
+    /**
+     * Whether the feature has a name, without building the {@link Feature}.
+     */
+    boolean isNamed(int id);
+
+    /**
+     * Returns the id of the first feature located exactly at the given coordinates, or
+     * {@link #NOT_FOUND}.
+     */
+    int findFeature(int latitude, int longitude);
+
+    /**
+     * Returns the feature at {@code location}, or an unnamed feature at that location if there is
+     * none.
+     */
+    Feature getFeature(Point location);
+
+    /**
+     * Whether there is a named feature exactly at {@code location}. Never allocates.
+     */
+    boolean hasFeature(Point location);
+
+    /**
+     * Spatial index over the named features of this store.
+     */
+    SpatialIndex getSpatialIndex();
+
+    /**
+     * R-tree over the named features used for nearest-feature queries, see
+     * {@link HilbertRTreeIndex#nearest}.
+     */
+    HilbertRTreeIndex getNearestIndex();
+}
@@ -0,0 +1,45 @@
+package es.ysegura.grpctutorial.store;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Current {@link FeatureStore} of a server, replaced as a whole when the features are reloaded.
+ * <p>
+ * Stores are immutable, so a call that reads {@link #get()} once keeps a consistent view until it
+ * ends even if a new store is published meanwhile. Reading is a single volatile load, with no lock.
+ */
+public class FeatureStoreHolder {
+
+    private final AtomicReference<Generation> current;
+
+    public FeatureStoreHolder(FeatureStore featureStore) {
+        // Empieza en un valor aleatorio para que tampoco coincidan las generaciones de otro arranque
+        this.current = new AtomicReference<>(new Generation(featureStore, ThreadLocalRandom.current().nextLong()));
+    }
+
+    public FeatureStore get() {
+        return current.get().store();
+    }
+
+    /**
+     * The current store together with its generation, for results that must not be mixed with those
+     * of another store, such as ListFeatures page tokens.
+     */
+    public Generation current() {
+        return current.get();
+    }
+
+    /**
+     * Publishes {@code featureStore} for new calls and returns the previous store.
+     */
+    public FeatureStore set(FeatureStore featureStore) {
+        return current.getAndUpdate(previous -> new Generation(featureStore, previous.number() + 1)).store();
+    }
+
+    /**
+     * A published store and a number that changes every time a new store is published.
+     */
+    public record Generation(FeatureStore store, long number) {
+    }
+}
@@ -0,0 +1,233 @@
+package es.ysegura.grpctutorial.store;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Uniform grid over the bounding box of the indexed features.
+ * <p>
+ * Entries are laid out cell by cell (compressed sparse rows), with their coordinates copied next to
+ * the ids, so a query only touches the cells overlapping the rectangle and reads them sequentially.
+ * Within a cell entries keep the store order.
+ */
+public class GridSpatialIndex implements SpatialIndex {
+
+    private static final int TARGET_PER_CELL = 8;
+    private static final int MAX_CELLS_PER_AXIS = 4096;
+
+    private final int minLat;
+    private final int minLon;
+    private final int maxLat;
+    private final int maxLon;
+    private final long cellHeight;
+    private final long cellWidth;
+    private final int rows;
+    private final int cols;
+
+    private final int[] cellStart;
+    private final int[] ids;
+    private final int[] latitudes;
+    private final int[] longitudes;
+
+    public GridSpatialIndex(int[] ids, int[] latitudes, int[] longitudes) {
+        int n = ids.length;
+        int loLat = Integer.MAX_VALUE;
+        int hiLat = Integer.MIN_VALUE;
+        int loLon = Integer.MAX_VALUE;
+        int hiLon = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            loLat = Math.min(loLat, latitudes[i]);
+            hiLat = Math.max(hiLat, latitudes[i]);
+            loLon = Math.min(loLon, longitudes[i]);
+            hiLon = Math.max(hiLon, longitudes[i]);
+        }
+        if (n == 0) {
+            loLat = hiLat = loLon = hiLon = 0;
+        }
+        int perAxis = (int) Math.min(MAX_CELLS_PER_AXIS, Math.max(1, Math.ceil(Math.sqrt((double) n / TARGET_PER_CELL))));
+        this.minLat = loLat;
+        this.minLon = loLon;
+        this.maxLat = hiLat;
+        this.maxLon = hiLon;
+        this.rows = perAxis;
+        this.cols = perAxis;
+        this.cellHeight = ((long) hiLat - loLat) / rows + 1;
+        this.cellWidth = ((long) hiLon - loLon) / cols + 1;
+
+        int[] cellOf = new int[n];
+        this.cellStart = new int[rows * cols + 1];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = row(latitudes[i]) * cols + col(longitudes[i]);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < rows * cols; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] fill = new int[rows * cols];
+        this.ids = new int[n];
+        this.latitudes = new int[n];
+        this.longitudes = new int[n];
+        for (int i = 0; i < n; i++) {
+            int position = cellStart[cellOf[i]] + fill[cellOf[i]]++;
+            this.ids[position] = ids[i];
+            this.latitudes[position] = latitudes[i];
+            this.longitudes[position] = longitudes[i];
+        }
+    }
+
+    private int row(int latitude) {
+        return (int) (((long) latitude - minLat) / cellHeight);
+    }
+
+    private int col(int longitude) {
+        return (int) (((long) longitude - minLon) / cellWidth);
+    }
+
+    private int clampRow(long latitude) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floorDiv(latitude - minLat, cellHeight)));
+    }
+
+    private int clampCol(long longitude) {
+        return (int) Math.max(0, Math.min(cols - 1, Math.floorDiv(longitude - minLon, cellWidth)));
+    }
+
+    @Override
+    public Cursor query(int left, int right, int top, int bottom, int from) {
+        if (from >= ids.length || left > maxLon || right < minLon || bottom > maxLat || top < minLat) {
+            return EMPTY;
+        }
+        return new CellIterator(left, right, top, bottom, Math.max(0, from));
+    }
+
+    /**
+     * Cell holding index position {@code position}, that is the last one starting at or before it.
+     */
+    private int cellAt(int position) {
+        int lo = 0;
+        int hi = rows * cols - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (cellStart[mid] <= position) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    private static final Cursor EMPTY = new Cursor() {
+        @Override
+        public boolean hasNext() {
+            return false;
+        }
+
+        @Override
+        public int nextInt() {
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public int position() {
+            return 0;
+        }
+    };
+
+    private class CellIterator implements Cursor {
+        private final int left;
+        private final int right;
+        private final int top;
+        private final int bottom;
+        private final int firstCol;
+        private final int lastCol;
+        private final int lastRow;
+
+        private int row;
+        private int col;
+        private int position;
+        private int end;
+        private int next = -1;
+        private int nextPosition;
+
+        CellIterator(int left, int right, int top, int bottom, int from) {
+            this.left = left;
+            this.right = right;
+            this.top = top;
+            this.bottom = bottom;
+            this.firstCol = clampCol(left);
+            this.lastCol = clampCol(right);
+            this.lastRow = clampRow(top);
+            this.row = clampRow(bottom);
+            this.col = firstCol;
+            this.position = cellStart[row * cols + col];
+            this.end = cellStart[row * cols + col + 1];
+            if (from > position) {
+                // Las posiciones crecen en el orden del recorrido: se empieza en la celda de from
+                int cell = cellAt(from);
+                row = cell / cols;
+                col = cell % cols;
+                if (row > lastRow) {
+                    return;
+                }
+                if (col < firstCol) {
+                    col = firstCol;
+                    position = cellStart[row * cols + col];
+                } else if (col > lastCol) {
+                    col = lastCol;
+                    position = cellStart[row * cols + col + 1];
+                } else {
+                    position = from;
+                }
+                end = cellStart[row * cols + col + 1];
+            }
+            advance();
+        }
+
+        private void advance() {
+            while (true) {
+                while (position < end) {
+                    int i = position++;
+                    if (longitudes[i] >= left && longitudes[i] <= right
+                            && latitudes[i] >= bottom && latitudes[i] <= top) {
+                        next = ids[i];
+                        nextPosition = i;
+                        return;
+                    }
+                }
+                if (++col > lastCol) {
+                    col = firstCol;
+                    if (++row > lastRow) {
+                        next = -1;
+                        return;
+                    }
+                }
+                position = cellStart[row * cols + col];
+                end = cellStart[row * cols + col + 1];
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (next < 0) {
+                throw new NoSuchElementException();
+            }
+            int id = next;
+            advance();
+            return id;
+        }
+
+        @Override
+        public int position() {
+            return nextPosition;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package es.ysegura.grpctutorial.store;
+
+import es.ysegura.grpctutorial.RouteGuideUtil;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Static R-tree packed in Hilbert order.
+ * <p>
+ * Entries are sorted by the Hilbert value of their coordinates and grouped {@value #NODE_SIZE} at a
+ * time into leaf nodes; every upper level groups {@value #NODE_SIZE} nodes of the level below. The
+ * whole tree lives in flat int arrays, one set per level, so it has no per-node objects.
+ */
+public class HilbertRTreeIndex implements SpatialIndex {
+
+    static final int NODE_SIZE = 16;
+    private static final int HILBERT_BITS = 15;
+    private static final double COORD_FACTOR = 1e7;
+    private static final double EARTH_RADIUS = 6371000;
+
+    // Nivel 0: las entradas ordenadas. Nivel k > 0: cajas de los nodos que agrupan el nivel k - 1.
+    private final int[][] minLat;
+    private final int[][] maxLat;
+    private final int[][] minLon;
+    private final int[][] maxLon;
+    private final int[] ids;
+
+    public HilbertRTreeIndex(int[] ids, int[] latitudes, int[] longitudes) {
+        int n = ids.length;
+        int[] order = hilbertOrder(latitudes, longitudes);
+
+        int levels = 1;
+        for (int count = n; count > 1; count = (count + NODE_SIZE - 1) / NODE_SIZE) {
+            levels++;
+        }
+        minLat = new int[levels][];
+        maxLat = new int[levels][];
+        minLon = new int[levels][];
+        maxLon = new int[levels][];
+
+        this.ids = new int[n];
+        int[] lat = new int[n];
+        int[] lon = new int[n];
+        for (int i = 0; i < n; i++) {
+            this.ids[i] = ids[order[i]];
+            lat[i] = latitudes[order[i]];
+            lon[i] = longitudes[order[i]];
+        }
+        minLat[0] = lat;
+        maxLat[0] = lat;
+        minLon[0] = lon;
+        maxLon[0] = lon;
+
+        for (int level = 1; level < levels; level++) {
+            int children = minLat[level - 1].length;
+            int nodes = (children + NODE_SIZE - 1) / NODE_SIZE;
+            minLat[level] = new int[nodes];
+            maxLat[level] = new int[nodes];
+            minLon[level] = new int[nodes];
+            maxLon[level] = new int[nodes];
+            for (int node = 0; node < nodes; node++) {
+                int from = node * NODE_SIZE;
+                int to = Math.min(children, from + NODE_SIZE);
+                int loLat = Integer.MAX_VALUE;
+                int hiLat = Integer.MIN_VALUE;
+                int loLon = Integer.MAX_VALUE;
+                int hiLon = Integer.MIN_VALUE;
+                for (int child = from; child < to; child++) {
+                    loLat = Math.min(loLat, minLat[level - 1][child]);
+                    hiLat = Math.max(hiLat, maxLat[level - 1][child]);
+                    loLon = Math.min(loLon, minLon[level - 1][child]);
+                    hiLon = Math.max(hiLon, maxLon[level - 1][child]);
+                }
+                minLat[level][node] = loLat;
+                maxLat[level][node] = hiLat;
+                minLon[level][node] = loLon;
+                maxLon[level][node] = hiLon;
+            }
+        }
+    }
+
+    private static int[] hilbertOrder(int[] latitudes, int[] longitudes) {
+        int n = latitudes.length;
+        long loLat = Long.MAX_VALUE;
+        long hiLat = Long.MIN_VALUE;
+        long loLon = Long.MAX_VALUE;
+        long hiLon = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            loLat = Math.min(loLat, latitudes[i]);
+            hiLat = Math.max(hiLat, latitudes[i]);
+            loLon = Math.min(loLon, longitudes[i]);
+            hiLon = Math.max(hiLon, longitudes[i]);
+        }
+        long scale = (1L << HILBERT_BITS) - 1;
+        long latSpan = Math.max(1, hiLat - loLat);
+        long lonSpan = Math.max(1, hiLon - loLon);
+
+        // Clave de ordenación: valor de Hilbert en los 32 bits altos y posición original en los bajos
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int x = (int) ((longitudes[i] - loLon) * scale / lonSpan);
+            int y = (int) ((latitudes[i] - loLat) * scale / latSpan);
+            keys[i] = (hilbert(x, y) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Distance along the Hilbert curve of side {@code 2^15} for the cell {@code (x, y)}.
+     */
+    static long hilbert(int x, int y) {
+        int side = 1 << HILBERT_BITS;
+        long d = 0;
+        for (int s = side >>> 1; s > 0; s >>>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = side - 1 - x;
+                    y = side - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    @Override
+    public Cursor query(int left, int right, int top, int bottom, int from) {
+        return new TreeIterator(left, right, top, bottom, Math.max(0, from));
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Ids of the {@code k} indexed features closest to the given point, nearest first, with distances
+     * as computed by {@link RouteGuideUtil#calcDistance}; ties are returned by ascending id. When
+     * {@code maxDistance} is positive only features at most that many meters away are returned.
+     * <p>
+     * Best-first search: nodes are visited in order of the smallest great-circle distance from the
+     * point to their box, so only the nodes that can still hold one of the {@code k} results are
+     * opened, about {@code O(log n + k)} of them.
+     */
+    public int[] nearest(int latitude, int longitude, int k, int maxDistance) {
+        if (k <= 0 || ids.length == 0) {
+            return new int[0];
+        }
+        double lat = latitude / COORD_FACTOR;
+        double lon = longitude / COORD_FACTOR;
+        double cosLat = Math.cos(Math.toRadians(lat));
+        double limit = maxDistance > 0 ? maxDistance : Double.POSITIVE_INFINITY;
+
+        NodeQueue queue = new NodeQueue();
+        int rootLevel = minLat.length - 1;
+        if (rootLevel == 0) {
+            for (int entry = 0; entry < ids.length; entry++) {
+                offerEntry(queue, entry, latitude, longitude, limit);
+            }
+        } else {
+            queue.add(0, rootLevel, 0, 0);
+        }
+
+        int[] result = new int[Math.min(k, ids.length)];
+        int count = 0;
+        while (count < result.length && !queue.isEmpty()) {
+            int level = queue.level[0];
+            int node = queue.node[0];
+            queue.poll();
+            if (level == 0) {
+                result[count++] = ids[node];
+                continue;
+            }
+            int from = node * NODE_SIZE;
+            int to = Math.min(minLat[level - 1].length, from + NODE_SIZE);
+            for (int child = from; child < to; child++) {
+                if (level == 1) {
+                    offerEntry(queue, child, latitude, longitude, limit);
+                } else {
+                    double distance = boxDistance(lat, lon, cosLat, level - 1, child);
+                    if (distance <= limit) {
+                        queue.add(distance, level - 1, child, 0);
+                    }
+                }
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private void offerEntry(NodeQueue queue, int entry, int latitude, int longitude, double limit) {
+        int distance = RouteGuideUtil.calcDistance(latitude, longitude, minLat[0][entry], minLon[0][entry]);
+        if (distance <= limit) {
+            queue.add(distance, 0, entry, ids[entry]);
+        }
+    }
+
+    /**
+     * Lower bound, in meters, of the distance from the point to any point in the box of a node, as in
+     * geokdbush. Rounded down like the entry distances, and slightly reduced before that so that
+     * floating point error never makes it exceed the distance of an entry on the border of the box.
+     */
+    private double boxDistance(double lat, double lon, double cosLat, int level, int node) {
+        double loLat = minLat[level][node] / COORD_FACTOR;
+        double hiLat = maxLat[level][node] / COORD_FACTOR;
+        double loLon = minLon[level][node] / COORD_FACTOR;
+        double hiLon = maxLon[level][node] / COORD_FACTOR;
+        double a;
+        if (lon >= loLon && lon <= hiLon) {
+            // Dentro del rango de longitudes: el punto más cercano está en el mismo meridiano
+            a = lat < loLat ? haverSin(lat - loLat) : lat > hiLat ? haverSin(lat - hiLat) : 0;
+        } else {
+            double haverSinDLon = Math.min(haverSin(lon - loLon), haverSin(lon - hiLon));
+            double extremumLat = vertexLat(lat, haverSinDLon);
+            a = extremumLat > loLat && extremumLat < hiLat
+                    ? haverSinDistance(haverSinDLon, cosLat, lat, extremumLat)
+                    : Math.min(haverSinDistance(haverSinDLon, cosLat, lat, loLat), haverSinDistance(haverSinDLon, cosLat, lat, hiLat));
+        }
+        double meters = EARTH_RADIUS * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return Math.max(0, Math.floor(meters - 1e-6));
+    }
+
+    private static double haverSin(double degrees) {
+        double s = Math.sin(Math.toRadians(degrees) / 2);
+        return s * s;
+    }
+
+    private static double haverSinDistance(double haverSinDLon, double cosLat1, double lat1, double lat2) {
+        return cosLat1 * Math.cos(Math.toRadians(lat2)) * haverSinDLon + haverSin(lat1 - lat2);
+    }
+
+    /**
+     * Latitude where the great circle through the point reaches the meridian {@code haverSinDLon} away
+     * at its closest.
+     */
+    private static double vertexLat(double lat, double haverSinDLon) {
+        double cosDLon = 1 - 2 * haverSinDLon;
+        if (cosDLon <= 0) {
+            return lat > 0 ? 90 : -90;
+        }
+        return Math.toDegrees(Math.atan(Math.tan(Math.toRadians(lat)) / cosDLon));
+    }
+
+    /**
+     * Binary min-heap of tree nodes by distance, in parallel primitive arrays. On equal distance inner
+     * nodes come first, so that entries with the same distance are all seen and leave by id.
+     */
+    private static final class NodeQueue {
+        private double[] distance = new double[NODE_SIZE * 4];
+        private int[] level = new int[NODE_SIZE * 4];
+        private int[] node = new int[NODE_SIZE * 4];
+        private int[] id = new int[NODE_SIZE * 4];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(double distance, int level, int node, int id) {
+            if (size == this.distance.length) {
+                this.distance = Arrays.copyOf(this.distance, size * 2);
+                this.level = Arrays.copyOf(this.level, size * 2);
+                this.node = Arrays.copyOf(this.node, size * 2);
+                this.id = Arrays.copyOf(this.id, size * 2);
+            }
+            int position = size++;
+            while (position > 0) {
+                int parent = (position - 1) >>> 1;
+                if (!less(distance, level, id, parent)) {
+                    break;
+                }
+                move(parent, position);
+                position = parent;
+            }
+            set(position, distance, level, node, id);
+        }
+
+        void poll() {
+            size--;
+            if (size == 0) {
+                return;
+            }
+            double lastDistance = distance[size];
+            int lastLevel = level[size];
+            int lastNode = node[size];
+            int lastId = id[size];
+            int position = 0;
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && less(distance[child + 1], level[child + 1], id[child + 1], child)) {
+                    child++;
+                }
+                if (!less(distance[child], level[child], id[child], lastDistance, lastLevel, lastId)) {
+                    break;
+                }
+                move(child, position);
+                position = child;
+            }
+            set(position, lastDistance, lastLevel, lastNode, lastId);
+        }
+
+        private boolean less(double distance, int level, int id, int other) {
+            return less(distance, level, id, this.distance[other], this.level[other], this.id[other]);
+        }
+
+        private static boolean less(double distance, int level, int id, double otherDistance, int otherLevel, int otherId) {
+            if (distance != otherDistance) {
+                return distance < otherDistance;
+            }
+            if ((level == 0) != (otherLevel == 0)) {
+                return level != 0;
+            }
+            return level == 0 && id < otherId;
+        }
+
+        private void move(int from, int to) {
+            set(to, distance[from], level[from], node[from], id[from]);
+        }
+
+        private void set(int position, double distance, int level, int node, int id) {
+            this.distance[position] = distance;
+            this.level[position] = level;
+            this.node[position] = node;
+            this.id[position] = id;
+        }
+    }
+
+    private class TreeIterator implements Cursor {
+        private final int left;
+        private final int right;
+        private final int top;
+        private final int bottom;
+        private final int from;
+
+        // Pila de nodos pendientes (nivel, índice) y rango de entradas de la hoja en curso
+        private int[] stackLevel = new int[NODE_SIZE * 4];
+        private int[] stackNode = new int[NODE_SIZE * 4];
+        private int depth;
+        private int position;
+        private int end;
+        private int next = -1;
+        private int nextPosition;
+
+        TreeIterator(int left, int right, int top, int bottom, int from) {
+            this.left = left;
+            this.right = right;
+            this.top = top;
+            this.bottom = bottom;
+            this.from = from;
+            int rootLevel = minLat.length - 1;
+            if (ids.length > 0) {
+                if (rootLevel == 0) {
+                    position = from;
+                    end = ids.length;
+                } else {
+                    push(rootLevel, 0);
+                }
+            }
+            advance();
+        }
+
+        private boolean intersects(int level, int node) {
+            return maxLon[level][node] >= left && minLon[level][node] <= right
+                    && maxLat[level][node] >= bottom && minLat[level][node] <= top;
+        }
+
+        private void push(int level, int node) {
+            if (depth == stackLevel.length) {
+                stackLevel = Arrays.copyOf(stackLevel, depth * 2);
+                stackNode = Arrays.copyOf(stackNode, depth * 2);
+            }
+            stackLevel[depth] = level;
+            stackNode[depth] = node;
+            depth++;
+        }
+
+        private void advance() {
+            while (true) {
+                while (position < end) {
+                    int entry = position++;
+                    if (intersects(0, entry)) {
+                        next = ids[entry];
+                        nextPosition = entry;
+                        return;
+                    }
+                }
+                if (depth == 0) {
+                    next = -1;
+                    return;
+                }
+                depth--;
+                int level = stackLevel[depth];
+                int node = stackNode[depth];
+                // Las hojas se recorren en orden de posición: se descartan los nodos que acaban antes de from
+                if (!intersects(level, node) || entriesEnd(level, node) <= from) {
+                    continue;
+                }
+                int first = node * NODE_SIZE;
+                int to = Math.min(minLat[level - 1].length, first + NODE_SIZE);
+                if (level == 1) {
+                    position = Math.max(first, from);
+                    end = to;
+                } else {
+                    // En orden inverso para recorrer los hijos de izquierda a derecha
+                    for (int child = to - 1; child >= first; child--) {
+                        push(level - 1, child);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (next < 0) {
+                throw new NoSuchElementException();
+            }
+            int id = next;
+            advance();
+            return id;
+        }
+
+        @Override
+        public int position() {
+            return nextPosition;
+        }
+    }
+
+    /**
+     * One past the last entry under node {@code node} of {@code level}.
+     */
+    private static long entriesEnd(int level, int node) {
+        long end = node + 1L;
+        for (int i = 0; i < level; i++) {
+            end *= NODE_SIZE;
+        }
+        return end;
+    }
+}
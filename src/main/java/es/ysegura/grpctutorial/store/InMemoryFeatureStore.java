@@ -0,0 +1,89 @@
+package es.ysegura.grpctutorial.store;
+
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+
+import java.util.Collection;
+
+/**
+ * Heap-backed {@link FeatureStore}. Exact-point lookups go through a {@link LongIntHashMap} keyed by
+ * the packed coordinates, so they cost O(1) regardless of the database size, and rectangle queries
+ * go through the configured {@link SpatialIndex}.
+ */
+public class InMemoryFeatureStore implements FeatureStore {
+
+    private final Feature[] features;
+    private final LongIntHashMap pointIndex;
+    private final NotFoundFeatureCache notFound = new NotFoundFeatureCache();
+    private final SpatialIndex spatialIndex;
+    private final NearestIndex nearestIndex;
+
+    public InMemoryFeatureStore(Collection<Feature> features) {
+        this(features, SpatialIndexType.GRID);
+    }
+
+    public InMemoryFeatureStore(Collection<Feature> features, SpatialIndexType spatialIndexType) {
+        this.features = features.toArray(new Feature[0]);
+        this.pointIndex = new LongIntHashMap(this.features.length);
+        for (int id = 0; id < this.features.length; id++) {
+            Point location = this.features[id].getLocation();
+            // Conservamos el primero, igual que hacía la búsqueda lineal con findFirst()
+            pointIndex.putIfAbsent(RouteGuideUtil.pack(location), id);
+        }
+        this.spatialIndex = spatialIndexType.build(this);
+        this.nearestIndex = new NearestIndex(this, spatialIndex);
+    }
+
+    @Override
+    public int size() {
+        return features.length;
+    }
+
+    @Override
+    public Feature getFeature(int id) {
+        return features[id];
+    }
+
+    @Override
+    public int getLatitude(int id) {
+        return features[id].getLocation().getLatitude();
+    }
+
+    @Override
+    public int getLongitude(int id) {
+        return features[id].getLocation().getLongitude();
+    }
+
+    @Override
+    public boolean isNamed(int id) {
+        return RouteGuideUtil.exists(features[id]);
+    }
+
+    @Override
+    public int findFeature(int latitude, int longitude) {
+        return pointIndex.get(RouteGuideUtil.pack(latitude, longitude));
+    }
+
+    @Override
+    public Feature getFeature(Point location) {
+        int id = findFeature(location.getLatitude(), location.getLongitude());
+        return id != NOT_FOUND ? features[id] : notFound.get(location);
+    }
+
+    @Override
+    public boolean hasFeature(Point location) {
+        int id = findFeature(location.getLatitude(), location.getLongitude());
+        return id != NOT_FOUND && RouteGuideUtil.exists(features[id]);
+    }
+
+    @Override
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    @Override
+    public HilbertRTreeIndex getNearestIndex() {
+        return nearestIndex.get();
+    }
+}
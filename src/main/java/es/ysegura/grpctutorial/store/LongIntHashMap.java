@@ -0,0 +1,82 @@
+package es.ysegura.grpctutorial.store;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive {@code long} keys to non-negative {@code int} values.
+ * Uses linear probing over parallel arrays, so lookups neither box the key nor allocate.
+ * <p>
+ * Not thread-safe for writes: fill it once and publish it through a final field.
+ */
+public class LongIntHashMap {
+
+    public static final int NO_VALUE = -1;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) Math.ceil(expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the value stored for {@code key}, or {@link #NO_VALUE} if there is none.
+     */
+    public int get(long key) {
+        int slot = slot(key);
+        while (values[slot] != NO_VALUE) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Stores {@code value} unless the key is already present. Returns the previous value, or
+     * {@link #NO_VALUE} if the value was inserted.
+     */
+    public int putIfAbsent(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Values must be non-negative: " + value);
+        }
+        int slot = slot(key);
+        while (values[slot] != NO_VALUE) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size + 1 > keys.length * LOAD_FACTOR) {
+            throw new IllegalStateException("LongIntHashMap is full, capacity " + keys.length);
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return NO_VALUE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        // Finalizador de MurmurHash3: reparte bien las coordenadas empaquetadas, que son muy parecidas entre sí
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe1a2fcd3L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
@@ -0,0 +1,340 @@
+package es.ysegura.grpctutorial.store;
+
+import com.google.protobuf.ByteString;
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link FeatureStore} kept in a memory-mapped file instead of the Java heap.
+ * <p>
+ * The file is columnar: latitudes and longitudes as int columns, the names as one UTF-8 blob with a
+ * column of offsets into it, and the packed coordinates sorted with their ids for exact lookups by
+ * binary search. {@link Feature} messages are only built when a result is returned. The only heap
+ * structure is the {@link SpatialIndex}, which holds primitive arrays over the named features.
+ * <p>
+ * Each column must fit in a single mapping (2 GiB), which limits a file to about 250 million
+ * features; the name blob is mapped in segments and has no such limit.
+ */
+public class MappedFeatureStore implements FeatureStore {
+
+    private static final int MAGIC = 0x52474643; // "RGFC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 48;
+    private static final int BLOB_SEGMENT = 1 << 30;
+
+    private final int size;
+    private final IntBuffer latitudes;
+    private final IntBuffer longitudes;
+    private final LongBuffer nameOffsets;
+    private final LongBuffer sortedKeys;
+    private final IntBuffer sortedIds;
+    private final MappedByteBuffer[] blob;
+    private final NotFoundFeatureCache notFound = new NotFoundFeatureCache();
+    private final SpatialIndex spatialIndex;
+    private final NearestIndex nearestIndex;
+
+    private MappedFeatureStore(FileChannel channel, SpatialIndexType spatialIndexType) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a mapped feature store");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported mapped feature store version " + version);
+        }
+        size = header.getInt();
+        header.getInt();
+        long blobSize = header.getLong();
+        // Después va el SourceStamp, que solo se lee para decidir si el fichero sigue valiendo
+
+        Layout layout = new Layout(size);
+        latitudes = map(channel, layout.latitudes, 4L * size).asIntBuffer();
+        longitudes = map(channel, layout.longitudes, 4L * size).asIntBuffer();
+        nameOffsets = map(channel, layout.nameOffsets, 8L * (size + 1)).asLongBuffer();
+        sortedKeys = map(channel, layout.sortedKeys, 8L * size).asLongBuffer();
+        sortedIds = map(channel, layout.sortedIds, 4L * size).asIntBuffer();
+        blob = new MappedByteBuffer[(int) ((blobSize + BLOB_SEGMENT - 1) / BLOB_SEGMENT)];
+        for (int i = 0; i < blob.length; i++) {
+            long start = (long) i * BLOB_SEGMENT;
+            blob[i] = map(channel, layout.blob + start, Math.min(BLOB_SEGMENT, blobSize - start));
+        }
+        spatialIndex = spatialIndexType.build(this);
+        nearestIndex = new NearestIndex(this, spatialIndex);
+    }
+
+    public static MappedFeatureStore open(Path path) throws IOException {
+        return open(path, SpatialIndexType.GRID);
+    }
+
+    /**
+     * Maps {@code path}. The mappings stay valid after the file is closed and are released when the
+     * store is garbage collected.
+     */
+    public static MappedFeatureStore open(Path path, SpatialIndexType spatialIndexType) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedFeatureStore(channel, spatialIndexType);
+        }
+    }
+
+    public static void write(List<Feature> features, Path path) throws IOException {
+        write(features, path, SourceStamp.UNKNOWN);
+    }
+
+    /**
+     * Writes {@code features} in the format read by {@link #open(Path)}, going through a temporary file
+     * so that a half written store is never opened. {@code source} is the features file they were
+     * loaded from, see {@link #readSource(Path)}.
+     */
+    public static void write(List<Feature> features, Path path, SourceStamp source) throws IOException {
+        int size = features.size();
+        long[] keys = new long[size];
+        int[] ids = new int[size];
+        long blobSize = 0;
+        for (int id = 0; id < size; id++) {
+            Feature feature = features.get(id);
+            keys[id] = RouteGuideUtil.pack(feature.getLocation());
+            ids[id] = id;
+            blobSize += feature.getNameBytes().size();
+        }
+        sortByKey(keys, ids);
+
+        Layout layout = new Layout(size);
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(size);
+                output.writeInt(0);
+                output.writeLong(blobSize);
+                output.writeLong(source.size());
+                output.writeLong(source.lastModified());
+                output.write(new byte[HEADER_SIZE - 40]);
+                for (Feature feature : features) {
+                    output.writeInt(feature.getLocation().getLatitude());
+                }
+                for (Feature feature : features) {
+                    output.writeInt(feature.getLocation().getLongitude());
+                }
+                pad(output, layout.nameOffsets - layout.longitudes - 4L * size);
+                long offset = 0;
+                output.writeLong(offset);
+                for (Feature feature : features) {
+                    offset += feature.getNameBytes().size();
+                    output.writeLong(offset);
+                }
+                for (long key : keys) {
+                    output.writeLong(key);
+                }
+                for (int id : ids) {
+                    output.writeInt(id);
+                }
+                pad(output, layout.blob - layout.sortedIds - 4L * size);
+                for (Feature feature : features) {
+                    feature.getNameBytes().writeTo(output);
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Source the store at {@code path} was written from, or {@code null} if it is not a store in the
+     * current format.
+     */
+    public static SourceStamp readSource(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            return new SourceStamp(header.getLong(24), header.getLong(32));
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Feature getFeature(int id) {
+        return Feature.newBuilder()
+                .setNameBytes(getNameBytes(id))
+                .setLocation(Point.newBuilder().setLatitude(latitudes.get(id)).setLongitude(longitudes.get(id)))
+                .build();
+    }
+
+    @Override
+    public int getLatitude(int id) {
+        return latitudes.get(id);
+    }
+
+    @Override
+    public int getLongitude(int id) {
+        return longitudes.get(id);
+    }
+
+    @Override
+    public boolean isNamed(int id) {
+        return nameOffsets.get(id + 1) != nameOffsets.get(id);
+    }
+
+    /**
+     * UTF-8 name of a feature, copied out of the mapping but never decoded.
+     */
+    public ByteString getNameBytes(int id) {
+        long start = nameOffsets.get(id);
+        int length = (int) (nameOffsets.get(id + 1) - start);
+        if (length == 0) {
+            return ByteString.EMPTY;
+        }
+        byte[] name = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            long position = start + copied;
+            ByteBuffer segment = blob[(int) (position / BLOB_SEGMENT)];
+            int offset = (int) (position % BLOB_SEGMENT);
+            // Un nombre puede quedar partido entre dos segmentos
+            int chunk = Math.min(length - copied, segment.capacity() - offset);
+            segment.get(offset, name, copied, chunk);
+            copied += chunk;
+        }
+        return ByteString.copyFrom(name);
+    }
+
+    @Override
+    public int findFeature(int latitude, int longitude) {
+        long key = RouteGuideUtil.pack(latitude, longitude);
+        // Primera posición con clave >= key; a igual clave los ids están en orden, así que es el primero
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedKeys.get(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low < size && sortedKeys.get(low) == key ? sortedIds.get(low) : NOT_FOUND;
+    }
+
+    @Override
+    public Feature getFeature(Point location) {
+        int id = findFeature(location.getLatitude(), location.getLongitude());
+        return id != NOT_FOUND ? getFeature(id) : notFound.get(location);
+    }
+
+    @Override
+    public boolean hasFeature(Point location) {
+        int id = findFeature(location.getLatitude(), location.getLongitude());
+        return id != NOT_FOUND && isNamed(id);
+    }
+
+    @Override
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    @Override
+    public HilbertRTreeIndex getNearestIndex() {
+        return nearestIndex.get();
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    private static void pad(DataOutputStream output, long bytes) throws IOException {
+        for (long i = 0; i < bytes; i++) {
+            output.writeByte(0);
+        }
+    }
+
+    /**
+     * Stable LSD radix sort of {@code keys}, moving {@code ids} along. Being stable keeps the lowest id
+     * first among features at the same point.
+     */
+    static void sortByKey(long[] keys, int[] ids) {
+        long[] keyBuffer = new long[keys.length];
+        int[] idBuffer = new int[ids.length];
+        long[] sourceKeys = keys;
+        int[] sourceIds = ids;
+        for (int shift = 0; shift < 64; shift += 16) {
+            int[] counts = new int[(1 << 16) + 1];
+            for (long key : sourceKeys) {
+                counts[digit(key, shift) + 1]++;
+            }
+            for (int i = 1; i < counts.length; i++) {
+                counts[i] += counts[i - 1];
+            }
+            for (int i = 0; i < sourceKeys.length; i++) {
+                int position = counts[digit(sourceKeys[i], shift)]++;
+                keyBuffer[position] = sourceKeys[i];
+                idBuffer[position] = sourceIds[i];
+            }
+            long[] swapKeys = sourceKeys;
+            sourceKeys = keyBuffer;
+            keyBuffer = swapKeys;
+            int[] swapIds = sourceIds;
+            sourceIds = idBuffer;
+            idBuffer = swapIds;
+        }
+        // Cuatro pasadas: el resultado ya ha vuelto a los arrays originales
+        assert sourceKeys == keys;
+    }
+
+    // El bit de signo se invierte en el dígito más alto para ordenar las claves negativas primero
+    private static int digit(long key, int shift) {
+        return (int) (((key ^ Long.MIN_VALUE) >>> shift) & 0xFFFF);
+    }
+
+    /**
+     * Byte offsets of each section, 8-byte aligned.
+     */
+    private static final class Layout {
+        final long latitudes;
+        final long longitudes;
+        final long nameOffsets;
+        final long sortedKeys;
+        final long sortedIds;
+        final long blob;
+
+        Layout(int size) {
+            latitudes = HEADER_SIZE;
+            longitudes = latitudes + 4L * size;
+            nameOffsets = align(longitudes + 4L * size);
+            sortedKeys = nameOffsets + 8L * (size + 1);
+            sortedIds = sortedKeys + 8L * size;
+            blob = align(sortedIds + 4L * size);
+        }
+
+        private static long align(long position) {
+            return (position + 7) & ~7L;
+        }
+    }
+}
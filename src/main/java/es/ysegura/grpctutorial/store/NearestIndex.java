@@ -0,0 +1,31 @@
+package es.ysegura.grpctutorial.store;
+
+/**
+ * The {@link HilbertRTreeIndex} a store answers nearest-feature queries with. It is the store's own
+ * spatial index when that is already an R-tree; otherwise one is built the first time it is needed,
+ * so stores that never get such queries do not pay for a second index.
+ */
+final class NearestIndex {
+
+    private final FeatureStore store;
+    private volatile HilbertRTreeIndex index;
+
+    NearestIndex(FeatureStore store, SpatialIndex spatialIndex) {
+        this.store = store;
+        this.index = spatialIndex instanceof HilbertRTreeIndex tree ? tree : null;
+    }
+
+    HilbertRTreeIndex get() {
+        HilbertRTreeIndex current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    current = (HilbertRTreeIndex) SpatialIndexType.HILBERT_RTREE.build(store);
+                    index = current;
+                }
+            }
+        }
+        return current;
+    }
+}
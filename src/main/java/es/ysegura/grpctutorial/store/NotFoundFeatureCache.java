@@ -0,0 +1,48 @@
+package es.ysegura.grpctutorial.store;
+
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Direct-mapped cache of the unnamed {@link Feature} returned when a point has no feature.
+ * <p>
+ * Repeated misses on the same point reuse the same response instead of building a new message.
+ * Each slot holds a single entry, so the cache never grows beyond its initial size and a collision
+ * simply replaces the previous response.
+ */
+class NotFoundFeatureCache {
+
+    private static final int DEFAULT_SIZE = 4096;
+
+    private final AtomicReferenceArray<Feature> slots;
+    private final int mask;
+
+    NotFoundFeatureCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    NotFoundFeatureCache(int size) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Cache size must be a power of two: " + size);
+        }
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    Feature get(Point location) {
+        long key = RouteGuideUtil.pack(location);
+        int slot = (int) (key ^ (key >>> 29) ^ (key >>> 41)) & mask;
+        Feature cached = slots.get(slot);
+        if (cached != null
+                && cached.getLocation().getLatitude() == location.getLatitude()
+                && cached.getLocation().getLongitude() == location.getLongitude()) {
+            return cached;
+        }
+        Feature notFound = Feature.newBuilder().setName("").setLocation(location).build();
+        slots.set(slot, notFound);
+        return notFound;
+    }
+}
@@ -0,0 +1,61 @@
+package es.ysegura.grpctutorial.store;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Linear scan over every indexed feature. This is what {@code listFeatures} used to do and it is
+ * kept as the reference implementation for the other indexes.
+ */
+public class ScanSpatialIndex implements SpatialIndex {
+
+    private final int[] ids;
+    private final int[] latitudes;
+    private final int[] longitudes;
+
+    public ScanSpatialIndex(int[] ids, int[] latitudes, int[] longitudes) {
+        this.ids = ids;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+    }
+
+    @Override
+    public Cursor query(int left, int right, int top, int bottom, int from) {
+        return new Cursor() {
+            private int next = advance(Math.max(0, from));
+
+            private int advance(int from) {
+                int i = from;
+                while (i < ids.length && !(longitudes[i] >= left && longitudes[i] <= right
+                        && latitudes[i] >= bottom && latitudes[i] <= top)) {
+                    i++;
+                }
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < ids.length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int id = ids[next];
+                next = advance(next + 1);
+                return id;
+            }
+
+            @Override
+            public int position() {
+                return next;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+}
@@ -0,0 +1,41 @@
+package es.ysegura.grpctutorial.store;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Size and last modification time of the features file a {@link FeatureSnapshot} or a
+ * {@link MappedFeatureStore} was built from. Both record it in their header, so that a copy made from
+ * an older version of the features is rebuilt instead of being served.
+ */
+public record SourceStamp(long size, long lastModified) {
+
+    /**
+     * Stamp of files written without a source file, such as from features given in memory. It never
+     * matches the stamp of a real file.
+     */
+    public static final SourceStamp UNKNOWN = new SourceStamp(-1, -1);
+
+    public static SourceStamp of(URL file) throws IOException {
+        if ("file".equals(file.getProtocol())) {
+            try {
+                Path path = Path.of(file.toURI());
+                return new SourceStamp(Files.size(path), Files.getLastModifiedTime(path).toMillis());
+            } catch (URISyntaxException exception) {
+                throw new IOException("Invalid features file " + file, exception);
+            }
+        }
+        // Recursos del classpath, también dentro de un jar
+        URLConnection connection = file.openConnection();
+        try {
+            return new SourceStamp(connection.getContentLengthLong(), connection.getLastModified());
+        } finally {
+            // Las conexiones a un jar dejan el fichero abierto hasta que se cierra su stream
+            connection.getInputStream().close();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package es.ysegura.grpctutorial.store;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * Spatial index over the named features of a {@link FeatureStore}.
+ * <p>
+ * Coordinates are the E7 integers of {@code Point}; bounds are inclusive on every side, matching
+ * {@code RouteGuideService.listFeatures}.
+ */
+public interface SpatialIndex {
+
+    /**
+     * Lazily iterates the ids of the indexed features with {@code bottom <= latitude <= top} and
+     * {@code left <= longitude <= right}. The order is stable for a given index but depends on the
+     * implementation.
+     */
+    default Cursor query(int left, int right, int top, int bottom) {
+        return query(left, right, top, bottom, 0);
+    }
+
+    /**
+     * The results of {@link #query(int, int, int, int)} from index position {@code from} on, found
+     * without going through the earlier ones. Positions come from {@link Cursor#position()}.
+     */
+    Cursor query(int left, int right, int top, int bottom, int from);
+
+    int size();
+
+    /**
+     * Query results that know where in the index they are, so a later query can resume there.
+     */
+    interface Cursor extends PrimitiveIterator.OfInt {
+
+        /**
+         * Index position of the id {@link #nextInt()} returns next. Results come in increasing
+         * position order; only meaningful while {@link #hasNext()}.
+         */
+        int position();
+    }
+}
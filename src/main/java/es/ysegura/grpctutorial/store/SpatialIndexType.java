@@ -0,0 +1,41 @@
+package es.ysegura.grpctutorial.store;
+
+import java.util.Arrays;
+
+/**
+ * Available {@link SpatialIndex} implementations.
+ */
+public enum SpatialIndexType {
+    SCAN,
+    GRID,
+    HILBERT_RTREE;
+
+    /**
+     * Builds an index of this type over the named features of {@code store}; unnamed features are
+     * never returned by rectangle queries, so they are left out.
+     */
+    public SpatialIndex build(FeatureStore store) {
+        int size = store.size();
+        int[] ids = new int[size];
+        int[] latitudes = new int[size];
+        int[] longitudes = new int[size];
+        int count = 0;
+        for (int id = 0; id < size; id++) {
+            if (store.isNamed(id)) {
+                ids[count] = id;
+                latitudes[count] = store.getLatitude(id);
+                longitudes[count] = store.getLongitude(id);
+                count++;
+            }
+        }
+        return build(Arrays.copyOf(ids, count), Arrays.copyOf(latitudes, count), Arrays.copyOf(longitudes, count));
+    }
+
+    public SpatialIndex build(int[] ids, int[] latitudes, int[] longitudes) {
+        return switch (this) {
+            case SCAN -> new ScanSpatialIndex(ids, latitudes, longitudes);
+            case GRID -> new GridSpatialIndex(ids, latitudes, longitudes);
+            case HILBERT_RTREE -> new HilbertRTreeIndex(ids, latitudes, longitudes);
+        };
+    }
+}
@@ -0,0 +1,58 @@
+package es.ysegura.grpctutorial;
+
+import es.ysegura.grpctutorial.protobuff.Point;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteDistanceTest {
+
+    private final Random random = new Random(7);
+
+    @Test
+    void haversineMatchesCalcDistance() {
+        RouteDistance routeDistance = new RouteDistance(DistanceMode.HAVERSINE);
+        Point previous = randomPoint();
+        routeDistance.next(previous);
+        for (int i = 0; i < 100_000; i++) {
+            Point point = i % 2 == 0 ? randomPoint() : near(previous, 100_000);
+            assertEquals(RouteGuideUtil.calcDistance(previous, point), routeDistance.next(point));
+            previous = point;
+        }
+    }
+
+    @Test
+    void approximationsStayWithinDocumentedBounds() {
+        RouteDistance fast = new RouteDistance(DistanceMode.FAST_HAVERSINE);
+        RouteDistance equirectangular = new RouteDistance(DistanceMode.EQUIRECTANGULAR);
+        Point previous = Point.newBuilder().setLatitude(407838351).setLongitude(-746143763).build();
+        fast.next(previous);
+        equirectangular.next(previous);
+        for (int i = 0; i < 100_000; i++) {
+            // Segmentos de hasta ~10 km
+            Point point = near(previous, 600_000);
+            int exact = RouteGuideUtil.calcDistance(previous, point);
+            assertTrue(Math.abs(fast.next(point) - exact) <= 1);
+            assertTrue(Math.abs(equirectangular.next(point) - exact) <= 1 + exact * 1e-6);
+            previous = point;
+        }
+    }
+
+    private Point randomPoint() {
+        return Point.newBuilder()
+                .setLatitude(random.nextInt(1_400_000_000) - 700_000_000)
+                .setLongitude(random.nextInt(Integer.MAX_VALUE) - 1_000_000_000)
+                .build();
+    }
+
+    private Point near(Point point, int maxDelta) {
+        int lat = Math.max(-700_000_000, Math.min(700_000_000, point.getLatitude() + random.nextInt(2 * maxDelta) - maxDelta));
+        return Point.newBuilder()
+                .setLatitude(lat)
+                .setLongitude(point.getLongitude() + random.nextInt(2 * maxDelta) - maxDelta)
+                .build();
+    }
+}
@@ -0,0 +1,101 @@
+package es.ysegura.grpctutorial.chat;
+
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.protobuff.RouteNote;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChatBrokerTest {
+
+    private final RouteNoteStore store = new RouteNoteStore(10, 10, Duration.ofMinutes(1));
+    private final ChatBroker broker = new ChatBroker(store, 1, 100);
+
+    @AfterEach
+    void shutdown() {
+        broker.shutdown();
+    }
+
+    @Test
+    void sendsHistoryOnceAndLiveNotesInAnyOrder() throws Exception {
+        Point point = point(1, 1);
+        store.post(note("h0", point));
+        store.post(note("h1", point));
+        Recorder recorder = new Recorder();
+        ChatSubscriber subscriber = broker.register(recorder);
+        broker.subscribe(subscriber, point);
+
+        // Dos publicadores pueden entregar sus notas en orden inverso al de sus secuencias
+        long key = RouteGuideUtil.pack(point);
+        RouteNote first = note("l2", point);
+        RouteNote second = note("l3", point);
+        long firstSequence = store.post(first);
+        long secondSequence = store.post(second);
+        subscriber.deliver(key, secondSequence, second);
+        subscriber.deliver(key, firstSequence, first);
+        // Una nota ya enviada con el histórico no se repite
+        subscriber.deliver(key, 1, note("h1", point));
+
+        assertEquals(List.of("h0", "h1", "l3", "l2"), recorder.take(4));
+        broker.unregister(subscriber, true);
+        assertEquals(List.of(), recorder.takeUntilCompleted());
+    }
+
+    private static Point point(int lat, int lon) {
+        return Point.newBuilder().setLatitude(lat).setLongitude(lon).build();
+    }
+
+    private static RouteNote note(String message, Point location) {
+        return RouteNote.newBuilder().setMessage(message).setLocation(location).build();
+    }
+
+    private static final class Recorder implements StreamObserver<RouteNote> {
+        private static final RouteNote COMPLETED = RouteNote.getDefaultInstance();
+
+        private final LinkedBlockingQueue<RouteNote> notes = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onNext(RouteNote value) {
+            notes.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+            notes.add(COMPLETED);
+        }
+
+        List<String> take(int count) throws InterruptedException {
+            List<String> messages = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                RouteNote note = notes.poll(5, TimeUnit.SECONDS);
+                if (note == null || note == COMPLETED) {
+                    break;
+                }
+                messages.add(note.getMessage());
+            }
+            return messages;
+        }
+
+        List<String> takeUntilCompleted() throws InterruptedException {
+            List<String> messages = new ArrayList<>();
+            RouteNote note;
+            while ((note = notes.poll(5, TimeUnit.SECONDS)) != null && note != COMPLETED) {
+                messages.add(note.getMessage());
+            }
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package es.ysegura.grpctutorial.chat;
+
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.protobuff.RouteNote;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteNoteStoreTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void keepsOnlyTheNewestNotesPerLocation() {
+        RouteNoteStore store = new RouteNoteStore(3, 10, Duration.ofMinutes(1), clock::get);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, store.post(note("m" + i, 1, 1)));
+        }
+
+        assertEquals(List.of("m2", "m3", "m4"), messages(store.read(point(1, 1))));
+        assertEquals(List.of("m3"), messages(store.read(point(1, 1), 3, 4)));
+        assertEquals(5, store.nextSequence(point(1, 1)));
+    }
+
+    @Test
+    void dropsExpiredNotes() {
+        RouteNoteStore store = new RouteNoteStore(10, 10, Duration.ofSeconds(1), clock::get);
+        store.post(note("old", 1, 1));
+        clock.addAndGet(Duration.ofMillis(600).toNanos());
+        store.post(note("new", 1, 1));
+        clock.addAndGet(Duration.ofMillis(600).toNanos());
+
+        assertEquals(List.of("new"), messages(store.read(point(1, 1))));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedLocations() {
+        RouteNoteStore store = new RouteNoteStore(10, 10, Duration.ofHours(1), clock::get);
+        for (int i = 0; i < 50; i++) {
+            clock.incrementAndGet();
+            store.post(note("m" + i, i, i));
+        }
+
+        assertTrue(store.locationCount() <= 10);
+        assertEquals(List.of("m49"), messages(store.read(point(49, 49))));
+        assertEquals(List.of(), messages(store.read(point(0, 0))));
+    }
+
+    @Test
+    void keepsSequencesGrowingAcrossExpiryAndEviction() {
+        RouteNoteStore store = new RouteNoteStore(10, 2, Duration.ofSeconds(1), clock::get);
+        store.post(note("m0", 1, 1));
+        store.post(note("m1", 1, 1));
+        long cursor = store.nextSequence(point(1, 1));
+
+        // Las notas caducan y el barrido retira la ubicación; la siguiente nota no reutiliza secuencias
+        clock.addAndGet(Duration.ofSeconds(2).toNanos());
+        store.post(note("other", 2, 2));
+        assertTrue(store.read(point(1, 1)).isEmpty());
+        assertTrue(store.post(note("m2", 1, 1)) >= cursor);
+        assertEquals(List.of("m2"), messages(store.read(point(1, 1), cursor, Long.MAX_VALUE)));
+        cursor = store.nextSequence(point(1, 1));
+
+        // Lo mismo cuando la ubicación se desaloja por falta de sitio
+        for (int i = 0; i < 5; i++) {
+            clock.incrementAndGet();
+            store.post(note("e" + i, 10 + i, 10 + i));
+        }
+        assertEquals(List.of(), messages(store.read(point(1, 1))));
+        assertTrue(store.post(note("m3", 1, 1)) >= cursor);
+        assertEquals(List.of("m3"), messages(store.read(point(1, 1), cursor, Long.MAX_VALUE)));
+    }
+
+    private static List<String> messages(List<RouteNote> notes) {
+        return notes.stream().map(RouteNote::getMessage).toList();
+    }
+
+    private static Point point(int lat, int lon) {
+        return Point.newBuilder().setLatitude(lat).setLongitude(lon).build();
+    }
+
+    private static RouteNote note(String message, int lat, int lon) {
+        return RouteNote.newBuilder().setMessage(message).setLocation(point(lat, lon)).build();
+    }
+}
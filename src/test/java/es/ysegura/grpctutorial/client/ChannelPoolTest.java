@@ -0,0 +1,145 @@
+package es.ysegura.grpctutorial.client;
+
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.RouteGuideGrpc;
+import es.ysegura.grpctutorial.protobuff.RouteNote;
+import es.ysegura.grpctutorial.service.RouteGuideService;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChannelPoolTest {
+
+    private static final int SERVERS = 3;
+
+    private final List<Server> servers = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final AtomicInteger[] calls = new AtomicInteger[SERVERS];
+    private List<Feature> features;
+
+    @BeforeEach
+    void startServers() throws Exception {
+        features = RouteGuideUtil.parseFeatures(RouteGuideUtil.getDefaultFeaturesFile());
+        for (int i = 0; i < SERVERS; i++) {
+            AtomicInteger counter = calls[i] = new AtomicInteger();
+            String name = InProcessServerBuilder.generateName();
+            names.add(name);
+            servers.add(InProcessServerBuilder.forName(name)
+                    .addService(ServerInterceptors.intercept(new RouteGuideService(features).serviceDefinition(),
+                            new ServerInterceptor() {
+                                @Override
+                                public <Q, R> ServerCall.Listener<Q> interceptCall(ServerCall<Q, R> call, Metadata headers,
+                                                                                   ServerCallHandler<Q, R> next) {
+                                    counter.incrementAndGet();
+                                    return next.startCall(call, headers);
+                                }
+                            }))
+                    .build()
+                    .start());
+        }
+    }
+
+    @AfterEach
+    void stopServers() throws InterruptedException {
+        for (Server server : servers) {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private ChannelPool pool(BalancingPolicy policy) {
+        List<ManagedChannel> channels = new ArrayList<>();
+        for (String name : names) {
+            channels.add(InProcessChannelBuilder.forName(name).build());
+        }
+        return new ChannelPool(channels, policy);
+    }
+
+    private int[] callCounts() {
+        int[] counts = new int[SERVERS];
+        for (int i = 0; i < SERVERS; i++) {
+            counts[i] = calls[i].get();
+        }
+        return counts;
+    }
+
+    @Test
+    void roundRobinSpreadsCallsEvenly() throws InterruptedException {
+        ChannelPool pool = pool(BalancingPolicy.ROUND_ROBIN);
+        try {
+            RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(pool);
+            for (int i = 0; i < 30; i++) {
+                Feature feature = features.get(i);
+                assertEquals(feature, stub.getFeature(feature.getLocation()));
+            }
+            assertArrayEquals(new int[]{10, 10, 10}, callCounts());
+            assertArrayEquals(new int[]{0, 0, 0}, pool.outstandingCalls());
+        } finally {
+            pool.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        assertTrue(pool.isTerminated());
+    }
+
+    @Test
+    void leastOutstandingAvoidsBusyConnections() throws InterruptedException {
+        ChannelPool pool = pool(BalancingPolicy.LEAST_OUTSTANDING);
+        try {
+            // Dos chats abiertos ocupan dos de las tres conexiones
+            CountDownLatch closed = new CountDownLatch(2);
+            List<StreamObserver<RouteNote>> chats = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                chats.add(RouteGuideGrpc.newStub(pool).routeChat(new StreamObserver<>() {
+                    @Override
+                    public void onNext(RouteNote note) {
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        closed.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        closed.countDown();
+                    }
+                }));
+            }
+            int[] open = pool.outstandingCalls();
+            assertEquals(2, open[0] + open[1] + open[2]);
+            int idle = open[0] == 0 ? 0 : open[1] == 0 ? 1 : 2;
+
+            RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(pool);
+            int before = calls[idle].get();
+            for (int i = 0; i < 10; i++) {
+                stub.getFeature(features.get(i).getLocation());
+            }
+            assertEquals(before + 10, calls[idle].get());
+
+            chats.forEach(StreamObserver::onCompleted);
+            assertTrue(closed.await(5, TimeUnit.SECONDS));
+            assertArrayEquals(new int[]{0, 0, 0}, pool.outstandingCalls());
+        } finally {
+            pool.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package es.ysegura.grpctutorial.client;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.FeatureList;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.protobuff.PointList;
+import es.ysegura.grpctutorial.protobuff.RouteGuideGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FeatureBatcherTest {
+
+    private final List<Integer> batches = new CopyOnWriteArrayList<>();
+    private volatile boolean shortReplies;
+    private Server server;
+    private ManagedChannel channel;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name)
+                .addService(new RouteGuideGrpc.RouteGuideImplBase() {
+                    @Override
+                    public void batchGetFeature(PointList request, StreamObserver<FeatureList> responseObserver) {
+                        batches.add(request.getPointsCount());
+                        FeatureList.Builder features = FeatureList.newBuilder();
+                        int count = shortReplies ? request.getPointsCount() - 1 : request.getPointsCount();
+                        for (int i = 0; i < count; i++) {
+                            features.addFeatures(Feature.newBuilder().setLocation(request.getPoints(i)));
+                        }
+                        responseObserver.onNext(features.build());
+                        responseObserver.onCompleted();
+                    }
+                })
+                .build()
+                .start();
+        channel = InProcessChannelBuilder.forName(name).build();
+    }
+
+    @AfterEach
+    void stopServer() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void sendsFullBatchesWithoutCuttingTheNextWindowShort() throws Exception {
+        try (FeatureBatcher batcher = new FeatureBatcher(channel, Duration.ofMillis(500), 2)) {
+            CompletableFuture<Feature> first = batcher.getFeature(point(1));
+            Thread.sleep(300);
+            CompletableFuture<Feature> second = batcher.getFeature(point(2));
+            assertEquals(point(1), first.get(5, TimeUnit.SECONDS).getLocation());
+            assertEquals(point(2), second.get(5, TimeUnit.SECONDS).getLocation());
+
+            // El temporizador de la primera ventana vencería ahora: no debe enviar la segunda
+            CompletableFuture<Feature> third = batcher.getFeature(point(3));
+            Thread.sleep(350);
+            assertFalse(third.isDone());
+            assertEquals(point(3), third.get(5, TimeUnit.SECONDS).getLocation());
+            assertEquals(List.of(2, 1), batches);
+        }
+    }
+
+    @Test
+    void rejectsLookupsOnceClosed() {
+        FeatureBatcher batcher = new FeatureBatcher(channel, Duration.ofMillis(10), 10);
+        batcher.close();
+
+        assertThrows(IllegalStateException.class, () -> batcher.getFeature(point(1)));
+    }
+
+    @Test
+    void failsEveryLookupWhenTheReplyIsShort() {
+        shortReplies = true;
+        try (FeatureBatcher batcher = new FeatureBatcher(channel, Duration.ofMinutes(1), 2)) {
+            CompletableFuture<Feature> first = batcher.getFeature(point(1));
+            CompletableFuture<Feature> second = batcher.getFeature(point(2));
+
+            assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static Point point(int latitude) {
+        return Point.newBuilder().setLatitude(latitude).setLongitude(-latitude).build();
+    }
+}
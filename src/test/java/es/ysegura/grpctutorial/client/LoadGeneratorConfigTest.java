@@ -0,0 +1,82 @@
+package es.ysegura.grpctutorial.client;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LoadGeneratorConfigTest {
+
+    @Test
+    void keepsTheDefaultsOfMissingOptions() {
+        // El primer argumento ("load") elige el modo y no es una opción
+        LoadGeneratorConfig config = LoadGeneratorConfig.parse(new String[]{"load", "--qps=200", "--duration=10"});
+
+        assertEquals(200, config.getQps());
+        assertEquals(Duration.ofSeconds(10), config.getDuration());
+        assertEquals(LoadGeneratorConfig.builder().build().getConcurrency(), config.getConcurrency());
+        assertEquals(List.of("localhost:8980"), config.getTargets());
+        assertEquals(BalancingPolicy.ROUND_ROBIN, config.getBalancing());
+    }
+
+    @Test
+    void rejectsUnknownOptions() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> LoadGeneratorConfig.parse(new String[]{"--qps=10", "--threads=4"}));
+        assertEquals("Unknown load option: --threads=4", exception.getMessage());
+    }
+
+    @Test
+    void parsesTheMix() {
+        LoadGeneratorConfig config = LoadGeneratorConfig.parse(new String[]{"--mix=get:70, LIST:10,record_route:20"});
+
+        Map<RpcType, Integer> expected = new EnumMap<>(RpcType.class);
+        expected.put(RpcType.GET_FEATURE, 70);
+        expected.put(RpcType.LIST_FEATURES, 10);
+        expected.put(RpcType.RECORD_ROUTE, 20);
+        assertEquals(expected, config.getMix());
+    }
+
+    @Test
+    void rejectsInvalidMixes() {
+        assertThrows(IllegalArgumentException.class, () -> LoadGeneratorConfig.parseMix("get:70,fly:10"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGeneratorConfig.parseMix("get"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGeneratorConfig.parseMix("get:-1,list:5"));
+        assertThrows(NumberFormatException.class, () -> LoadGeneratorConfig.parseMix("get:many"));
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> LoadGeneratorConfig.parse(new String[]{"--mix=get:0,chat:0"}));
+        assertEquals("The RPC mix must have some positive weight", exception.getMessage());
+    }
+
+    @Test
+    void generatorRejectsAnAllZeroMixFromTheBuilder() {
+        Map<RpcType, Integer> mix = new EnumMap<>(RpcType.class);
+        mix.put(RpcType.GET_FEATURE, 0);
+        LoadGeneratorConfig config = LoadGeneratorConfig.builder().mix(mix).build();
+        List<Feature> features = List.of(Feature.newBuilder().setName("f").build());
+        ManagedChannel channel = InProcessChannelBuilder.forName("unused").build();
+        try {
+            assertThrows(IllegalArgumentException.class, () -> new RouteGuideLoadGenerator(channel, features, config));
+        } finally {
+            channel.shutdownNow();
+        }
+    }
+
+    @Test
+    void splitsCommaSeparatedTargets() {
+        LoadGeneratorConfig config = LoadGeneratorConfig.parse(
+                new String[]{"--target=a:1, b:2,,c:3", "--connections-per-target=2", "--balancing=least-outstanding"});
+
+        assertEquals(List.of("a:1", "b:2", "c:3"), config.getTargets());
+        assertEquals(2, config.getConnectionsPerTarget());
+        assertEquals(BalancingPolicy.LEAST_OUTSTANDING, config.getBalancing());
+    }
+}
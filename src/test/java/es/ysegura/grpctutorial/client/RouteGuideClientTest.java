@@ -4,25 +4,49 @@ import es.ysegura.grpctutorial.RouteGuideUtil;
 import es.ysegura.grpctutorial.protobuff.Feature;
 import es.ysegura.grpctutorial.protobuff.Point;
 import es.ysegura.grpctutorial.protobuff.RouteNote;
-import io.grpc.Grpc;
-import io.grpc.InsecureChannelCredentials;
+import es.ysegura.grpctutorial.server.RouteGuideServerRunner;
 import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class RouteGuideClientTest {
 
-    private final ManagedChannel channel = Grpc.newChannelBuilder("localhost:8980", InsecureChannelCredentials.create()).build();
+    private RouteGuideServerRunner server;
+    private ManagedChannel channel;
+    private RouteGuideClient client;
 
-    private final RouteGuideClient client = new RouteGuideClient(channel);
+    // Servidor en proceso con la base de datos por defecto, para no depender de uno en localhost:8980
+    @BeforeEach
+    void startServer() throws IOException {
+        String name = InProcessServerBuilder.generateName();
+        server = new RouteGuideServerRunner(InProcessServerBuilder.forName(name), 0, getDefaultFeatures());
+        server.start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        client = new RouteGuideClient(channel);
+    }
+
+    @AfterEach
+    void stopServer() throws InterruptedException {
+        client.close();
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.stop();
+    }
 
     @Test
     void test_GetValidFeature() {
@@ -76,6 +100,55 @@ class RouteGuideClientTest {
         }
     }
 
+    @Test
+    void testGetFeatureAsync() throws Exception {
+        List<CompletableFuture<Feature>> futures = new ArrayList<>();
+        List<Feature> defaultFeatures = getDefaultFeatures();
+        defaultFeatures.forEach(feature -> futures.add(client.getFeatureAsync(feature.getLocation())));
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(defaultFeatures.get(i), futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testListFeaturesAsync() throws InterruptedException {
+        // El suscriptor pide de uno en uno para comprobar que se respeta la demanda
+        List<Feature> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        client.listFeaturesAsync(400000000, -750000000, 420000000, -730000000).subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Feature item) {
+                received.add(item);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                error.set(throwable);
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNull(error.get());
+        List<Feature> expected = new ArrayList<>();
+        client.listFeatures(400000000, -750000000, 420000000, -730000000, 0, null).features().forEach(expected::add);
+        assertEquals(expected, received);
+    }
+
     private List<Feature> getDefaultFeatures(){
         try {
             return RouteGuideUtil.parseFeatures(RouteGuideUtil.getDefaultFeaturesFile());
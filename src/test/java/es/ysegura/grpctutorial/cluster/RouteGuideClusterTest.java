@@ -0,0 +1,165 @@
+package es.ysegura.grpctutorial.cluster;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.*;
+import es.ysegura.grpctutorial.service.NextPageTokenInterceptor;
+import es.ysegura.grpctutorial.service.RouteGuideService;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares a sharded cluster with a single server holding all the features.
+ */
+class RouteGuideClusterTest {
+
+    private static final Random RANDOM = new Random(3);
+
+    @ParameterizedTest
+    @EnumSource(RouteGuideCluster.Transport.class)
+    void answersLikeOneServer(RouteGuideCluster.Transport transport) throws Exception {
+        List<Feature> features = RouteGuideUtil.parseFeatures(RouteGuideUtil.getDefaultFeaturesFile());
+        String name = InProcessServerBuilder.generateName();
+        Server single = InProcessServerBuilder.forName(name)
+                .addService(new RouteGuideService(features).serviceDefinition())
+                .build()
+                .start();
+        ManagedChannel singleChannel = InProcessChannelBuilder.forName(name).build();
+
+        try (RouteGuideCluster cluster = RouteGuideCluster.start(features, 4, transport, RouteGuideConfig.defaults())) {
+            RouteGuideGrpc.RouteGuideBlockingStub expected = RouteGuideGrpc.newBlockingStub(singleChannel);
+            RouteGuideGrpc.RouteGuideBlockingStub routed = RouteGuideGrpc.newBlockingStub(cluster.newChannel());
+
+            for (Feature feature : features) {
+                assertEquals(expected.getFeature(feature.getLocation()), routed.getFeature(feature.getLocation()));
+            }
+            Point missing = Point.newBuilder().setLatitude(1).setLongitude(1).build();
+            assertEquals(expected.getFeature(missing), routed.getFeature(missing));
+
+            PointList points = PointList.newBuilder()
+                    .addAllPoints(features.stream().map(Feature::getLocation).limit(40).collect(Collectors.toList()))
+                    .addPoints(missing)
+                    .build();
+            assertEquals(expected.batchGetFeature(points), routed.batchGetFeature(points));
+
+            for (int i = 0; i < 50; i++) {
+                Rectangle area = randomArea();
+                assertEquals(sorted(list(expected, area)), sorted(list(routed, area)));
+            }
+            Rectangle everything = area(400000000, -750000000, 420000000, -730000000);
+            assertEquals(sorted(list(expected, everything)), sorted(listByPages(routed, everything, 7)));
+            StatusRuntimeException negative = assertThrows(StatusRuntimeException.class,
+                    () -> list(routed, everything.toBuilder().setMaxResults(-1).build()));
+            assertEquals(Status.Code.INVALID_ARGUMENT, negative.getStatus().getCode());
+
+            for (int i = 0; i < 20; i++) {
+                NearestRequest request = NearestRequest.newBuilder()
+                        .setPoint(randomArea().getLo())
+                        .setK(1 + RANDOM.nextInt(10))
+                        .build();
+                assertEquals(distances(expected.findNearest(request)), distances(routed.findNearest(request)));
+            }
+        } finally {
+            singleChannel.shutdownNow();
+            single.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void partitionerFindsEveryShardOfAnArea() {
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            features.add(Feature.newBuilder().setName("f" + i).setLocation(Point.newBuilder()
+                    .setLatitude(RANDOM.nextInt(1_800_000_001) - 900_000_000)
+                    .setLongitude(RANDOM.nextInt(Integer.MAX_VALUE) - 1_800_000_000)).build());
+        }
+        QuadkeyPartitioner partitioner = QuadkeyPartitioner.balanced(features, 7, 12);
+        List<List<Feature>> shards = partitioner.split(features);
+        for (List<Feature> shard : shards) {
+            // Reparto equilibrado: cada shard con una séptima parte, salvo empates dentro de una tesela
+            assertTrue(Math.abs(shard.size() - features.size() / 7) < 50, "shard size " + shard.size());
+        }
+
+        for (int i = 0; i < 500; i++) {
+            int lat1 = RANDOM.nextInt(1_800_000_001) - 900_000_000;
+            int lon1 = RANDOM.nextInt(Integer.MAX_VALUE) - 1_800_000_000;
+            int lat2 = lat1 + RANDOM.nextInt(200_000_000);
+            int lon2 = lon1 + RANDOM.nextInt(400_000_000);
+            List<Integer> overlapping = Arrays.stream(partitioner.shardsFor(lon1, lon2, lat2, lat1)).boxed().toList();
+            for (Feature feature : features) {
+                Point location = feature.getLocation();
+                if (location.getLatitude() >= lat1 && location.getLatitude() <= lat2
+                        && location.getLongitude() >= lon1 && location.getLongitude() <= lon2) {
+                    assertTrue(overlapping.contains(partitioner.shardFor(location)));
+                }
+            }
+        }
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6), Arrays.stream(partitioner.shardsFor(
+                -1_800_000_000, 1_800_000_000, 900_000_000, -900_000_000)).boxed().toList());
+    }
+
+    private static Rectangle randomArea() {
+        int lat = 400000000 + RANDOM.nextInt(20000000);
+        int lon = -750000000 + RANDOM.nextInt(20000000);
+        return area(lat, lon, lat + RANDOM.nextInt(5000000), lon + RANDOM.nextInt(5000000));
+    }
+
+    private static Rectangle area(int lat1, int lon1, int lat2, int lon2) {
+        return Rectangle.newBuilder()
+                .setLo(Point.newBuilder().setLatitude(lat1).setLongitude(lon1))
+                .setHi(Point.newBuilder().setLatitude(lat2).setLongitude(lon2))
+                .build();
+    }
+
+    private static List<Feature> list(RouteGuideGrpc.RouteGuideBlockingStub stub, Rectangle area) {
+        List<Feature> result = new ArrayList<>();
+        stub.listFeatures(area).forEachRemaining(result::add);
+        return result;
+    }
+
+    private static List<Feature> listByPages(RouteGuideGrpc.RouteGuideBlockingStub stub, Rectangle area, int pageSize) {
+        AtomicReference<Metadata> trailers = new AtomicReference<>();
+        RouteGuideGrpc.RouteGuideBlockingStub capturing =
+                stub.withInterceptors(MetadataUtils.newCaptureMetadataInterceptor(new AtomicReference<>(), trailers));
+        List<Feature> result = new ArrayList<>();
+        String token = "";
+        do {
+            int before = result.size();
+            capturing.listFeatures(area.toBuilder().setMaxResults(pageSize).setPageToken(token).build())
+                    .forEachRemaining(result::add);
+            assertTrue(result.size() - before <= pageSize);
+            token = trailers.get().get(NextPageTokenInterceptor.NEXT_PAGE_TOKEN);
+        } while (token != null);
+        return result;
+    }
+
+    private static List<String> sorted(List<Feature> features) {
+        return features.stream().map(Feature::toString).sorted(Comparator.naturalOrder()).collect(Collectors.toList());
+    }
+
+    private static List<Integer> distances(NearestResponse response) {
+        return response.getFeaturesList().stream().map(NearestFeature::getDistance).collect(Collectors.toList());
+    }
+}
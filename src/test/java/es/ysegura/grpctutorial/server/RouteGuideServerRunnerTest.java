@@ -1,27 +1,54 @@
 package es.ysegura.grpctutorial.server;
 
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.chat.ChatDeliveryMode;
+import es.ysegura.grpctutorial.client.RouteGuideClient;
 import es.ysegura.grpctutorial.protobuff.*;
+import es.ysegura.grpctutorial.reactive.FlowOperators;
+import es.ysegura.grpctutorial.server.metrics.MethodMetrics;
+import es.ysegura.grpctutorial.server.metrics.MetricsServerInterceptor;
+import es.ysegura.grpctutorial.server.metrics.RpcMetrics;
+import es.ysegura.grpctutorial.service.NextPageTokenInterceptor;
+import es.ysegura.grpctutorial.service.RouteGuideService;
+import es.ysegura.grpctutorial.store.InMemoryFeatureStore;
+import io.grpc.Metadata;
 import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.MetadataUtils;
 import io.grpc.stub.StreamObserver;
-import io.grpc.testing.GrpcCleanupRule;
-import org.junit.After;
-import org.junit.Before;
-import org.junit.Rule;
-import org.junit.Test;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
-import static junit.framework.TestCase.fail;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -34,59 +61,249 @@ import static org.mockito.Mockito.*;
  *
  */
 public class RouteGuideServerRunnerTest {
-    /**
-     * This rule manages automatic graceful shutdown for the registered channel at the end of test.
-     */
-    @Rule
-    public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+    // Canales y servidores que se cierran al acabar cada test
+    private final List<ManagedChannel> channels = new ArrayList<>();
+    private final List<Server> servers = new ArrayList<>();
+    private final List<RouteGuideClient> clients = new ArrayList<>();
 
     private RouteGuideServerRunner server;
     private ManagedChannel inProcessChannel;
     private Collection<Feature> features;
 
-    @Before
+    @BeforeEach
     public void setUp() throws Exception {
+        features = new ArrayList<>();
+    }
+
+    /**
+     * The server indexes its features when it is built, so each test fills {@code features} first.
+     */
+    private void startServer() throws Exception {
+        startServer(RouteGuideConfig.defaults());
+    }
+
+    private void startServer(RouteGuideConfig config) throws Exception {
         // Generate a unique in-process server name.
         String serverName = InProcessServerBuilder.generateName();
-        features = new ArrayList<>();
         // Use directExecutor for both InProcessServerBuilder and InProcessChannelBuilder can reduce the
         // usage timeouts and latches in test. But we still add timeout and latches where they would be
         // needed if no directExecutor were used, just for demo purpose.
         server = new RouteGuideServerRunner(
-                InProcessServerBuilder.forName(serverName).directExecutor(), 0, features);
+                InProcessServerBuilder.forName(serverName).directExecutor(), 0, features, config);
         server.start();
-        // Create a client channel and register for automatic graceful shutdown.
-        inProcessChannel = grpcCleanup.register(
+        // Create a client channel and register it to be shut down after the test.
+        inProcessChannel = register(
                 InProcessChannelBuilder.forName(serverName).directExecutor().build());
     }
 
-    @After
+    @AfterEach
     public void tearDown() throws Exception {
-        server.stop();
+        for (RouteGuideClient client : clients) {
+            client.close();
+        }
+        for (ManagedChannel channel : channels) {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        for (Server registered : servers) {
+            registered.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private ManagedChannel register(ManagedChannel channel) {
+        channels.add(channel);
+        return channel;
+    }
+
+    private Server register(Server registered) {
+        servers.add(registered);
+        return registered;
+    }
+
+    private RouteGuideClient register(RouteGuideClient client) {
+        clients.add(client);
+        return client;
     }
 
     @Test
-    public void getFeature() {
+    public void getFeature() throws Exception {
         Point point = Point.newBuilder().setLongitude(1).setLatitude(1).build();
+        Point missingPoint = Point.newBuilder().setLongitude(2).setLatitude(2).build();
         Feature unnamedFeature = Feature.newBuilder()
-                .setName("").setLocation(point).build();
+                .setName("").setLocation(missingPoint).build();
+        Feature namedFeature = Feature.newBuilder()
+                .setName("name").setLocation(point).build();
+        features.add(namedFeature);
+        startServer();
         RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(inProcessChannel);
 
         // feature not found in the server
-        Feature feature = stub.getFeature(point);
+        Feature feature = stub.getFeature(missingPoint);
 
         assertEquals(unnamedFeature, feature);
 
         // feature found in the server
-        Feature namedFeature = Feature.newBuilder()
-                .setName("name").setLocation(point).build();
-        features.add(namedFeature);
-
         feature = stub.getFeature(point);
 
         assertEquals(namedFeature, feature);
     }
 
+    @Test
+    public void batchGetFeature() throws Exception {
+        Point point = Point.newBuilder().setLongitude(1).setLatitude(1).build();
+        Point missingPoint = Point.newBuilder().setLongitude(2).setLatitude(2).build();
+        Feature namedFeature = Feature.newBuilder().setName("name").setLocation(point).build();
+        features.add(namedFeature);
+        startServer();
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(inProcessChannel);
+
+        FeatureList result = stub.batchGetFeature(
+                PointList.newBuilder().addPoints(missingPoint).addPoints(point).addPoints(point).build());
+
+        assertEquals(Arrays.asList(Feature.newBuilder().setLocation(missingPoint).build(), namedFeature, namedFeature),
+                result.getFeaturesList());
+    }
+
+    @Test
+    public void getFeatures() throws Exception {
+        Point point = Point.newBuilder().setLongitude(1).setLatitude(1).build();
+        Point missingPoint = Point.newBuilder().setLongitude(2).setLatitude(2).build();
+        Feature namedFeature = Feature.newBuilder().setName("name").setLocation(point).build();
+        features.add(namedFeature);
+        startServer();
+        @SuppressWarnings("unchecked")
+        StreamObserver<Feature> responseObserver = (StreamObserver<Feature>) mock(StreamObserver.class);
+
+        StreamObserver<Point> requestObserver = RouteGuideGrpc.newStub(inProcessChannel).getFeatures(responseObserver);
+        requestObserver.onNext(point);
+        requestObserver.onNext(missingPoint);
+        requestObserver.onCompleted();
+
+        ArgumentCaptor<Feature> featureCaptor = ArgumentCaptor.forClass(Feature.class);
+        verify(responseObserver, timeout(100).times(2)).onNext(featureCaptor.capture());
+        assertEquals(Arrays.asList(namedFeature, Feature.newBuilder().setLocation(missingPoint).build()),
+                featureCaptor.getAllValues());
+        verify(responseObserver, timeout(100)).onCompleted();
+        verify(responseObserver, never()).onError(any(Throwable.class));
+    }
+
+    @Test
+    public void getFeatureBatched() throws Exception {
+        Point point = Point.newBuilder().setLongitude(1).setLatitude(1).build();
+        Feature namedFeature = Feature.newBuilder().setName("name").setLocation(point).build();
+        features.add(namedFeature);
+        startServer();
+        RouteGuideClient client = register(new RouteGuideClient(inProcessChannel, Duration.ofMillis(50), 3));
+
+        // Los tres primeros llenan un lote; el cuarto sale cuando acaba su ventana
+        List<CompletableFuture<Feature>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(client.getFeatureBatched(1, 1 - i % 2));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            Feature feature = results.get(i).get(1, TimeUnit.SECONDS);
+            assertEquals(i % 2 == 0 ? "name" : "", feature.getName());
+        }
+        String batchMethod = RouteGuideGrpc.getBatchGetFeatureMethod().getFullMethodName();
+        assertEquals(2, server.getMetrics().snapshot().stream()
+                .filter(method -> method.method().equals(batchMethod))
+                .findFirst().orElseThrow().started());
+    }
+
+    @Test
+    public void findNearest() throws Exception {
+        Point origin = Point.newBuilder().setLatitude(0).setLongitude(0).build();
+        Feature near = Feature.newBuilder().setName("near")
+                .setLocation(Point.newBuilder().setLatitude(10).setLongitude(0)).build();
+        Feature far = Feature.newBuilder().setName("far")
+                .setLocation(Point.newBuilder().setLatitude(0).setLongitude(100_000)).build();
+        Feature unnamed = Feature.newBuilder()
+                .setLocation(Point.newBuilder().setLatitude(1).setLongitude(1)).build();
+        features.addAll(Arrays.asList(far, unnamed, near));
+        startServer();
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(inProcessChannel);
+
+        NearestResponse response = stub.findNearest(NearestRequest.newBuilder().setPoint(origin).setK(5).build());
+
+        assertEquals(2, response.getFeaturesCount());
+        assertEquals(near, response.getFeatures(0).getFeature());
+        assertEquals(RouteGuideUtil.calcDistance(origin, near.getLocation()), response.getFeatures(0).getDistance());
+        assertEquals(far, response.getFeatures(1).getFeature());
+
+        // 100 metros: solo queda la más cercana
+        response = stub.findNearest(NearestRequest.newBuilder().setPoint(origin).setK(5).setMaxDistance(100).build());
+        assertEquals(1, response.getFeaturesCount());
+
+        try {
+            stub.findNearest(NearestRequest.newBuilder().setPoint(origin).build());
+            fail("k = 0 must be rejected");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+        }
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        Point point = Point.newBuilder().setLongitude(1).setLatitude(1).build();
+        features.add(Feature.newBuilder().setName("name").setLocation(point).build());
+        startServer(RouteGuideConfig.builder().metricsHttpPort(0).build());
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(inProcessChannel);
+
+        stub.getFeature(point);
+        stub.getFeature(point);
+
+        List<MethodMetrics.Snapshot> snapshot = server.getMetrics().snapshot();
+        assertEquals(1, snapshot.size());
+        MethodMetrics.Snapshot getFeature = snapshot.get(0);
+        assertEquals(RouteGuideGrpc.getGetFeatureMethod().getFullMethodName(), getFeature.method());
+        assertEquals(2, getFeature.started());
+        assertEquals(0, getFeature.inFlight());
+        assertEquals(2, getFeature.messagesReceived());
+        assertEquals(2, getFeature.messagesSent());
+        assertEquals(Long.valueOf(2), getFeature.byStatus().get(Status.Code.OK));
+        assertEquals(2, getFeature.latencyMicros().getTotalCount());
+
+        URL url = new URL("http://localhost:" + server.getMetricsHttpPort() + "/metrics");
+        try (InputStream in = url.openStream()) {
+            String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(text.contains("grpc_server_started_total{method=\"" + getFeature.method() + "\"} 2"));
+        }
+    }
+
+    @Test
+    public void metricsFinishCallsThatFailToStart() throws Exception {
+        RpcMetrics metrics = new RpcMetrics();
+        ServerInterceptor failing = new ServerInterceptor() {
+            @Override
+            public <Q, R> ServerCall.Listener<Q> interceptCall(ServerCall<Q, R> call, Metadata headers,
+                                                              ServerCallHandler<Q, R> next) {
+                throw new IllegalStateException("handler failed to start");
+            }
+        };
+        String serverName = InProcessServerBuilder.generateName();
+        register(InProcessServerBuilder.forName(serverName).directExecutor()
+                .addService(ServerInterceptors.intercept(new RouteGuideService(features).serviceDefinition(), failing))
+                .intercept(new MetricsServerInterceptor(metrics))
+                .build()
+                .start());
+        ManagedChannel channel = register(
+                InProcessChannelBuilder.forName(serverName).directExecutor().build());
+
+        try {
+            RouteGuideGrpc.newBlockingStub(channel).getFeature(Point.getDefaultInstance());
+            fail("Expected StatusRuntimeException");
+        } catch (StatusRuntimeException expected) {
+        }
+
+        MethodMetrics.Snapshot getFeature = metrics.snapshot().get(0);
+        assertEquals(1, getFeature.started());
+        assertEquals(0, getFeature.inFlight());
+        assertEquals(1, getFeature.latencyMicros().getTotalCount());
+    }
+
     @Test
     public void listFeatures() throws Exception {
         // setup
@@ -113,6 +330,7 @@ public class RouteGuideServerRunnerTest {
         features.add(f2);
         features.add(f3);
         features.add(f4);
+        startServer();
         final List<Feature> result = new ArrayList<Feature>();
         final CountDownLatch latch = new CountDownLatch(1);
         StreamObserver<Feature> responseObserver =
@@ -143,7 +361,198 @@ public class RouteGuideServerRunnerTest {
     }
 
     @Test
-    public void recordRoute() {
+    public void listFeaturesByPages() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            features.add(Feature.newBuilder()
+                    .setLocation(Point.newBuilder().setLongitude(i).setLatitude(i).build())
+                    .setName("f" + i)
+                    .build());
+        }
+        startServer();
+        Rectangle.Builder rect = Rectangle.newBuilder()
+                .setLo(Point.newBuilder().setLongitude(0).setLatitude(0).build())
+                .setHi(Point.newBuilder().setLongitude(10).setLatitude(10).build())
+                .setMaxResults(4);
+        AtomicReference<Metadata> trailers = new AtomicReference<>();
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(inProcessChannel)
+                .withInterceptors(MetadataUtils.newCaptureMetadataInterceptor(new AtomicReference<>(), trailers));
+
+        List<Feature> result = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String token = "";
+        String firstToken = null;
+        do {
+            int before = result.size();
+            stub.listFeatures(rect.setPageToken(token).build()).forEachRemaining(result::add);
+            pageSizes.add(result.size() - before);
+            token = trailers.get().get(NextPageTokenInterceptor.NEXT_PAGE_TOKEN);
+            firstToken = firstToken == null ? token : firstToken;
+        } while (token != null);
+
+        assertEquals(Arrays.asList(4, 4, 2), pageSizes);
+        assertEquals(features, result);
+
+        // Un token de antes de recargar no apunta a nada de las features nuevas
+        server.reloadFeatures(features).get(5, TimeUnit.SECONDS);
+        try {
+            stub.listFeatures(rect.setPageToken(firstToken).build()).forEachRemaining(feature -> { });
+            fail("Expected INVALID_ARGUMENT");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+        }
+        stub.listFeatures(rect.setPageToken("").build()).forEachRemaining(feature -> { });
+    }
+
+    @Test
+    public void listFeaturesRejectsNegativeMaxResults() throws Exception {
+        features.add(Feature.newBuilder().setName("f").setLocation(Point.newBuilder().setLatitude(1).setLongitude(1)).build());
+        // Con la caché activa ListFeatures va por el camino de las respuestas serializadas
+        for (RouteGuideConfig config : List.of(RouteGuideConfig.defaults(),
+                RouteGuideConfig.builder().listFeaturesCacheBytes(1024 * 1024).build())) {
+            startServer(config);
+            Rectangle rect = Rectangle.newBuilder()
+                    .setLo(Point.newBuilder().setLongitude(0).setLatitude(0).build())
+                    .setHi(Point.newBuilder().setLongitude(10).setLatitude(10).build())
+                    .setMaxResults(-1)
+                    .build();
+            try {
+                RouteGuideGrpc.newBlockingStub(inProcessChannel).listFeatures(rect).forEachRemaining(feature -> { });
+                fail("Expected INVALID_ARGUMENT");
+            } catch (StatusRuntimeException e) {
+                assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+            }
+            server.stop();
+        }
+    }
+
+    @Test
+    public void listFeaturesCache() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            features.add(feature("f" + i, i, i));
+        }
+        startServer(RouteGuideConfig.builder().listFeaturesCacheBytes(1024 * 1024).build());
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(inProcessChannel);
+        Rectangle rect = Rectangle.newBuilder()
+                .setLo(Point.newBuilder().setLongitude(0).setLatitude(0).build())
+                .setHi(Point.newBuilder().setLongitude(10).setLatitude(10).build())
+                .build();
+        // Las mismas esquinas en otro orden son la misma zona
+        Rectangle swapped = rect.toBuilder().setLo(rect.getHi()).setHi(rect.getLo()).build();
+
+        List<Feature> first = new ArrayList<>();
+        stub.listFeatures(rect).forEachRemaining(first::add);
+        List<Feature> second = new ArrayList<>();
+        stub.listFeatures(swapped).forEachRemaining(second::add);
+
+        assertEquals(features, first);
+        assertEquals(features, second);
+        assertEquals(1, server.getListFeaturesCache().missCount());
+        assertEquals(1, server.getListFeaturesCache().hitCount());
+
+        // Las páginas salen de la misma entrada
+        AtomicReference<Metadata> trailers = new AtomicReference<>();
+        List<Feature> paged = new ArrayList<>();
+        String token = "";
+        do {
+            stub.withInterceptors(MetadataUtils.newCaptureMetadataInterceptor(new AtomicReference<>(), trailers))
+                    .listFeatures(rect.toBuilder().setMaxResults(4).setPageToken(token).build())
+                    .forEachRemaining(paged::add);
+            token = trailers.get().get(NextPageTokenInterceptor.NEXT_PAGE_TOKEN);
+        } while (token != null);
+        assertEquals(features, paged);
+        assertEquals(4, server.getListFeaturesCache().hitCount());
+
+        // Tras recargar no se sirve nada de la caché antigua
+        server.reloadFeatures(List.of(feature("reloaded", 5, 5))).get(5, TimeUnit.SECONDS);
+        List<Feature> reloaded = new ArrayList<>();
+        stub.listFeatures(rect).forEachRemaining(reloaded::add);
+        assertEquals(List.of(feature("reloaded", 5, 5)), reloaded);
+        assertEquals(2, server.getListFeaturesCache().missCount());
+        assertEquals(1, server.getListFeaturesCache().entryCount());
+    }
+
+    @Test
+    public void listFeaturesCacheSkipsLargeAreas() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            features.add(feature("f" + i, i, i));
+        }
+        // Una octava parte de 1 KiB no da ni para la entrada vacía
+        startServer(RouteGuideConfig.builder().listFeaturesCacheBytes(1024).build());
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(inProcessChannel);
+        Rectangle rect = Rectangle.newBuilder()
+                .setLo(Point.newBuilder().setLongitude(0).setLatitude(0).build())
+                .setHi(Point.newBuilder().setLongitude(10).setLatitude(10).build())
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            List<Feature> result = new ArrayList<>();
+            stub.listFeatures(rect).forEachRemaining(result::add);
+            assertEquals(features, result);
+        }
+        assertEquals(1, server.getListFeaturesCache().missCount());
+        assertEquals(2, server.getListFeaturesCache().skippedCount());
+        assertEquals(0, server.getListFeaturesCache().entryCount());
+    }
+
+    @Test
+    public void preSerializedFeatures() throws Exception {
+        List<Feature> named = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            named.add(feature("f" + i, i, i));
+        }
+        features.addAll(named);
+        Feature unnamed = Feature.newBuilder().setLocation(Point.newBuilder().setLatitude(20).setLongitude(20)).build();
+        features.add(unnamed);
+        startServer(RouteGuideConfig.builder().preSerializedFeatures(true).build());
+        RouteGuideGrpc.RouteGuideBlockingStub stub = RouteGuideGrpc.newBlockingStub(inProcessChannel);
+
+        for (Feature feature : features) {
+            assertEquals(feature, stub.getFeature(feature.getLocation()));
+        }
+        Point missing = Point.newBuilder().setLatitude(30).setLongitude(30).build();
+        assertEquals(Feature.newBuilder().setLocation(missing).build(), stub.getFeature(missing));
+
+        Rectangle rect = Rectangle.newBuilder()
+                .setLo(Point.newBuilder().setLongitude(0).setLatitude(0).build())
+                .setHi(Point.newBuilder().setLongitude(30).setLatitude(30).build())
+                .build();
+        List<Feature> all = new ArrayList<>();
+        stub.listFeatures(rect).forEachRemaining(all::add);
+        assertEquals(named, all);
+
+        AtomicReference<Metadata> trailers = new AtomicReference<>();
+        List<Feature> paged = new ArrayList<>();
+        String token = "";
+        do {
+            stub.withInterceptors(MetadataUtils.newCaptureMetadataInterceptor(new AtomicReference<>(), trailers))
+                    .listFeatures(rect.toBuilder().setMaxResults(4).setPageToken(token).build())
+                    .forEachRemaining(paged::add);
+            token = trailers.get().get(NextPageTokenInterceptor.NEXT_PAGE_TOKEN);
+        } while (token != null);
+        assertEquals(named, paged);
+
+        // Tras recargar se responde con los bytes de las features nuevas
+        Feature reloaded = feature("reloaded", 5, 5);
+        server.reloadFeatures(List.of(reloaded)).get(5, TimeUnit.SECONDS);
+        assertEquals(reloaded, stub.getFeature(reloaded.getLocation()));
+        List<Feature> afterReload = new ArrayList<>();
+        stub.listFeatures(rect).forEachRemaining(afterReload::add);
+        assertEquals(List.of(reloaded), afterReload);
+
+        // Copiar al heap el store mapeado anularía su razón de ser
+        RouteGuideConfig mapped = RouteGuideConfig.builder()
+                .preSerializedFeatures(true)
+                .featureStoreFile(Path.of("features.store"))
+                .build();
+        try {
+            new RouteGuideService(new InMemoryFeatureStore(features), mapped);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void recordRoute() throws Exception {
         Point p1 = Point.newBuilder().setLongitude(1000).setLatitude(1000).build();
         Point p2 = Point.newBuilder().setLongitude(2000).setLatitude(2000).build();
         Point p3 = Point.newBuilder().setLongitude(3000).setLatitude(3000).build();
@@ -156,6 +565,7 @@ public class RouteGuideServerRunnerTest {
         features.add(f2);
         features.add(f3);
         features.add(f4);
+        startServer();
 
         @SuppressWarnings("unchecked")
         StreamObserver<RouteSummary> responseObserver =
@@ -184,7 +594,126 @@ public class RouteGuideServerRunnerTest {
     }
 
     @Test
-    public void routeChat() {
+    public void recordRouteNearFeatures() throws Exception {
+        // La ruta cruza el antimeridiano
+        Point p1 = Point.newBuilder().setLatitude(0).setLongitude(1_799_900_000).build();
+        Point p2 = Point.newBuilder().setLatitude(0).setLongitude(-1_799_900_000).build();
+        Point p3 = Point.newBuilder().setLatitude(0).setLongitude(-1_799_800_000).build();
+        features.add(feature("near first segment", 300, 1_800_000_000));
+        features.add(feature("near both segments", 200, -1_799_900_000));
+        features.add(feature("too far", 100_000, -1_799_850_000));
+        features.add(feature("", 0, -1_799_850_000));
+        features.add(feature("other side of the world", 0, 0));
+        startServer(RouteGuideConfig.builder().routeFeatureRadius(50).build());
+
+        @SuppressWarnings("unchecked")
+        StreamObserver<RouteSummary> responseObserver =
+                (StreamObserver<RouteSummary>) mock(StreamObserver.class);
+        StreamObserver<Point> requestObserver = RouteGuideGrpc.newStub(inProcessChannel).recordRoute(responseObserver);
+        requestObserver.onNext(p1);
+        requestObserver.onNext(p2);
+        requestObserver.onNext(p3);
+        requestObserver.onCompleted();
+
+        ArgumentCaptor<RouteSummary> routeSummaryCaptor = ArgumentCaptor.forClass(RouteSummary.class);
+        verify(responseObserver, timeout(100)).onNext(routeSummaryCaptor.capture());
+        RouteSummary summary = routeSummaryCaptor.getValue();
+        int first = RouteGuideUtil.calcDistance(p1, p2);
+        int second = RouteGuideUtil.calcDistance(p2, p3);
+        assertEquals(2, summary.getFeatureCount());
+        assertEquals(3, summary.getPointCount());
+        assertEquals(first + second, summary.getDistance());
+        assertEquals(2, summary.getSegmentCount());
+        assertEquals(first, summary.getMaxSegmentLength());
+        assertEquals((first + second) / 2.0, summary.getMeanSegmentLength(), 1e-9);
+        assertEquals((first - second) / 2.0, summary.getSegmentLengthStddev(), 1e-9);
+    }
+
+    @Test
+    public void recordRouteBatched() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < 2_000; i++) {
+            features.add(feature(i % 5 == 0 ? "" : "f" + i, random.nextInt(2_000_000), random.nextInt(2_000_000)));
+        }
+        // Paseo aleatorio que pasa por encima de algunas features y cerca de muchas otras
+        List<Point> route = new ArrayList<>();
+        List<Feature> featureList = new ArrayList<>(features);
+        int lat = 1_000_000;
+        int lon = 1_000_000;
+        for (int i = 0; i < 40_000; i++) {
+            if (i % 100 == 0) {
+                Point location = featureList.get(random.nextInt(featureList.size())).getLocation();
+                lat = location.getLatitude();
+                lon = location.getLongitude();
+            } else {
+                lat += random.nextInt(2_001) - 1_000;
+                lon += random.nextInt(2_001) - 1_000;
+            }
+            route.add(Point.newBuilder().setLatitude(lat).setLongitude(lon).build());
+        }
+        // Con varios hilos los lotes grandes se suman por trozos en paralelo
+        startServer(RouteGuideConfig.builder().routeFeatureRadius(20).routeBatchThreads(3).build());
+        RouteGuideClient client = register(new RouteGuideClient(inProcessChannel));
+
+        RouteSummary batched = client.recordRouteBatched(route, 17_000);
+
+        @SuppressWarnings("unchecked")
+        StreamObserver<RouteSummary> responseObserver =
+                (StreamObserver<RouteSummary>) mock(StreamObserver.class);
+        StreamObserver<Point> requestObserver = RouteGuideGrpc.newStub(inProcessChannel).recordRoute(responseObserver);
+        route.forEach(requestObserver::onNext);
+        requestObserver.onCompleted();
+        ArgumentCaptor<RouteSummary> routeSummaryCaptor = ArgumentCaptor.forClass(RouteSummary.class);
+        verify(responseObserver, timeout(1000)).onNext(routeSummaryCaptor.capture());
+        RouteSummary expected = routeSummaryCaptor.getValue();
+
+        assertEquals(40_000, batched.getPointCount());
+        assertTrue(batched.getFeatureCount() > 400);
+        assertEquals(expected.toBuilder().clearElapsedTime().clearAverageSpeed().build(),
+                batched.toBuilder().clearElapsedTime().clearAverageSpeed().build());
+
+        // Un lote con más latitudes que longitudes no se puede decodificar
+        @SuppressWarnings("unchecked")
+        StreamObserver<RouteSummary> invalidObserver =
+                (StreamObserver<RouteSummary>) mock(StreamObserver.class);
+        StreamObserver<PointBatch> batchObserver = RouteGuideGrpc.newStub(inProcessChannel).recordRouteBatched(invalidObserver);
+        batchObserver.onNext(PointBatch.newBuilder().addLatitudeDeltas(1).build());
+        batchObserver.onCompleted();
+        ArgumentCaptor<Throwable> errorCaptor = ArgumentCaptor.forClass(Throwable.class);
+        verify(invalidObserver, timeout(100)).onError(errorCaptor.capture());
+        assertEquals(Status.Code.INVALID_ARGUMENT, Status.fromThrowable(errorCaptor.getValue()).getCode());
+    }
+
+    @Test
+    public void reloadFeatures() throws Exception {
+        Point p1 = Point.newBuilder().setLongitude(1).setLatitude(1).build();
+        Point p2 = Point.newBuilder().setLongitude(2).setLatitude(2).build();
+        Feature f1 = Feature.newBuilder().setName("f1").setLocation(p1).build();
+        Feature f2 = Feature.newBuilder().setName("f2").setLocation(p2).build();
+        features.add(f1);
+        startServer();
+        RouteGuideGrpc.RouteGuideBlockingStub blockingStub = RouteGuideGrpc.newBlockingStub(inProcessChannel);
+        @SuppressWarnings("unchecked")
+        StreamObserver<RouteSummary> responseObserver =
+                (StreamObserver<RouteSummary>) mock(StreamObserver.class);
+        StreamObserver<Point> requestObserver = RouteGuideGrpc.newStub(inProcessChannel).recordRoute(responseObserver);
+        requestObserver.onNext(p1);
+
+        server.reloadFeatures(List.of(f2)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(f2, blockingStub.getFeature(p2));
+        assertEquals("", blockingStub.getFeature(p1).getName());
+        // la ruta empezada antes de la recarga sigue viendo las features antiguas
+        requestObserver.onNext(p1);
+        requestObserver.onNext(p2);
+        requestObserver.onCompleted();
+        ArgumentCaptor<RouteSummary> routeSummaryCaptor = ArgumentCaptor.forClass(RouteSummary.class);
+        verify(responseObserver, timeout(100)).onNext(routeSummaryCaptor.capture());
+        assertEquals(2, routeSummaryCaptor.getValue().getFeatureCount());
+    }
+
+    @Test
+    public void routeChat() throws Exception {
         Point p1 = Point.newBuilder().setLongitude(1).setLatitude(1).build();
         Point p2 = Point.newBuilder().setLongitude(2).setLatitude(2).build();
         RouteNote n1 = RouteNote.newBuilder().setLocation(p1).setMessage("m1").build();
@@ -194,6 +723,7 @@ public class RouteGuideServerRunnerTest {
         RouteNote n5 = RouteNote.newBuilder().setLocation(p1).setMessage("m5").build();
         RouteNote n6 = RouteNote.newBuilder().setLocation(p1).setMessage("m6").build();
         int timesOnNext = 0;
+        startServer();
 
         @SuppressWarnings("unchecked")
         StreamObserver<RouteNote> responseObserver =
@@ -252,4 +782,122 @@ public class RouteGuideServerRunnerTest {
         verify(responseObserver, timeout(100)).onCompleted();
         verify(responseObserver, never()).onError(any(Throwable.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void routeChatIncremental() throws Exception {
+        Point p1 = Point.newBuilder().setLongitude(1).setLatitude(1).build();
+        Point p2 = Point.newBuilder().setLongitude(2).setLatitude(2).build();
+        startServer(RouteGuideConfig.builder().chatDeliveryMode(ChatDeliveryMode.INCREMENTAL).build());
+
+        @SuppressWarnings("unchecked")
+        StreamObserver<RouteNote> responseObserver =
+                (StreamObserver<RouteNote>) mock(StreamObserver.class);
+        RouteGuideGrpc.RouteGuideStub stub = RouteGuideGrpc.newStub(inProcessChannel);
+        StreamObserver<RouteNote> requestObserver = stub.routeChat(responseObserver);
+
+        // each previous note at the same location is sent back exactly once
+        for (int i = 1; i <= 6; i++) {
+            Point location = i % 3 == 2 ? p2 : p1;
+            requestObserver.onNext(RouteNote.newBuilder().setLocation(location).setMessage("m" + i).build());
+        }
+        requestObserver.onCompleted();
+
+        ArgumentCaptor<RouteNote> routeNoteCaptor = ArgumentCaptor.forClass(RouteNote.class);
+        verify(responseObserver, timeout(100)).onCompleted();
+        verify(responseObserver, times(4)).onNext(routeNoteCaptor.capture());
+        List<String> messages = new ArrayList<>();
+        routeNoteCaptor.getAllValues().forEach(note -> messages.add(note.getMessage()));
+        assertEquals(Arrays.asList("m1", "m3", "m2", "m4"), messages);
+        verify(responseObserver, never()).onError(any(Throwable.class));
+    }
+
+    @Test
+    public void routeChatBroadcast() throws Exception {
+        Point p1 = Point.newBuilder().setLongitude(1).setLatitude(1).build();
+        startServer(RouteGuideConfig.builder().chatDeliveryMode(ChatDeliveryMode.BROADCAST).build());
+        RouteGuideGrpc.RouteGuideStub stub = RouteGuideGrpc.newStub(inProcessChannel);
+
+        @SuppressWarnings("unchecked")
+        StreamObserver<RouteNote> aliceObserver = (StreamObserver<RouteNote>) mock(StreamObserver.class);
+        @SuppressWarnings("unchecked")
+        StreamObserver<RouteNote> bobObserver = (StreamObserver<RouteNote>) mock(StreamObserver.class);
+        StreamObserver<RouteNote> alice = stub.routeChat(aliceObserver);
+        StreamObserver<RouteNote> bob = stub.routeChat(bobObserver);
+
+        RouteNote a1 = RouteNote.newBuilder().setLocation(p1).setMessage("a1").build();
+        RouteNote a2 = RouteNote.newBuilder().setLocation(p1).setMessage("a2").build();
+        RouteNote b1 = RouteNote.newBuilder().setLocation(p1).setMessage("b1").build();
+
+        alice.onNext(a1);
+        // an empty note only subscribes bob to p1, who gets its history
+        bob.onNext(RouteNote.newBuilder().setLocation(p1).build());
+        verify(bobObserver, timeout(1000)).onNext(a1);
+
+        alice.onNext(a2);
+        verify(bobObserver, timeout(1000)).onNext(a2);
+
+        bob.onNext(b1);
+        verify(aliceObserver, timeout(1000)).onNext(b1);
+
+        alice.onCompleted();
+        bob.onCompleted();
+        verify(aliceObserver, timeout(1000)).onCompleted();
+        verify(bobObserver, timeout(1000)).onCompleted();
+        // nobody gets their own notes back
+        verify(aliceObserver, times(1)).onNext(any(RouteNote.class));
+        verify(bobObserver, times(2)).onNext(any(RouteNote.class));
+    }
+
+    @Test
+    public void reactiveStreaming() throws Exception {
+        // Los mismos casos que recordRoute y routeChatIncremental, con servidor y cliente sobre Flow
+        Point p1 = Point.newBuilder().setLongitude(1000).setLatitude(1000).build();
+        Point p2 = Point.newBuilder().setLongitude(2000).setLatitude(2000).build();
+        Point p3 = Point.newBuilder().setLongitude(3000).setLatitude(3000).build();
+        Point p4 = Point.newBuilder().setLongitude(4000).setLatitude(4000).build();
+        features.add(Feature.newBuilder().setLocation(p1).build());
+        features.add(Feature.newBuilder().setLocation(p2).setName("f2").build());
+        features.add(Feature.newBuilder().setLocation(p3).setName("f3").build());
+        features.add(Feature.newBuilder().setLocation(p4).build());
+        startServer(RouteGuideConfig.builder()
+                .reactiveStreaming(true)
+                .chatDeliveryMode(ChatDeliveryMode.INCREMENTAL)
+                .build());
+        RouteGuideClient client = register(new RouteGuideClient(inProcessChannel));
+
+        RouteSummary summary = client.recordRouteAsync(FlowOperators.fromIterable(List.of(p1, p2, p3, p4)))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(4, summary.getPointCount());
+        assertEquals(45, summary.getDistance());
+        assertEquals(2, summary.getFeatureCount());
+
+        Point c1 = Point.newBuilder().setLongitude(1).setLatitude(1).build();
+        Point c2 = Point.newBuilder().setLongitude(2).setLatitude(2).build();
+        List<RouteNote> notes = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            notes.add(RouteNote.newBuilder().setLocation(i % 3 == 2 ? c2 : c1).setMessage("m" + i).build());
+        }
+        // Con prefetch 2 las respuestas se piden de una en una
+        List<String> messages = FlowOperators.reduce(client.routeChatAsync(FlowOperators.fromIterable(notes)),
+                        new ArrayList<String>(), (received, note) -> received.add(note.getMessage()), 2)
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("m1", "m3", "m2", "m4"), messages);
+
+        // Un error del servidor llega al futuro del cliente
+        server.stop();
+        try {
+            client.recordRouteAsync(FlowOperators.fromIterable(List.of(p1))).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(Status.Code.UNAVAILABLE, Status.fromThrowable(e.getCause()).getCode());
+        }
+        server = null;
+    }
+
+    private static Feature feature(String name, int lat, int lon) {
+        return Feature.newBuilder()
+                .setName(name)
+                .setLocation(Point.newBuilder().setLatitude(lat).setLongitude(lon).build())
+                .build();
+    }
+}
@@ -0,0 +1,83 @@
+package es.ysegura.grpctutorial.server;
+
+import es.ysegura.grpctutorial.RouteGuideConfig;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.protobuff.RouteGuideGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerExecutorModeTest {
+
+    @ParameterizedTest
+    @EnumSource(ServerExecutorMode.class)
+    void resolvesEveryModeFromItsProperty(ServerExecutorMode mode) {
+        // Se acepta el nombre en minúsculas y con guiones, como en la línea de comandos
+        String property = "routeguide.server.executor";
+        System.setProperty(property, mode.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        try {
+            assertEquals(mode, RouteGuideConfig.fromSystemProperties().getServerExecutor());
+        } finally {
+            System.clearProperty(property);
+        }
+    }
+
+    @Test
+    void onlyFixedAndVirtualCreateAnExecutor() throws InterruptedException {
+        assertNull(ServerExecutorMode.DEFAULT.apply(InProcessServerBuilder.forName("default"), 2));
+        assertNull(ServerExecutorMode.DIRECT.apply(InProcessServerBuilder.forName("direct"), 2));
+
+        ExecutorService fixed = ServerExecutorMode.FIXED.apply(InProcessServerBuilder.forName("fixed"), 2);
+        assertNotNull(fixed);
+        fixed.shutdownNow();
+        assertTrue(fixed.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void virtualWorksOrExplainsWhy() throws Exception {
+        if (Runtime.version().feature() >= 21) {
+            ExecutorService virtual = ServerExecutorMode.VIRTUAL.apply(InProcessServerBuilder.forName("virtual"), 2);
+            assertNotNull(virtual);
+            assertEquals(Boolean.TRUE, virtual.submit(() -> Thread.class.getMethod("isVirtual")
+                    .invoke(Thread.currentThread())).get(5, TimeUnit.SECONDS));
+            virtual.shutdownNow();
+        } else {
+            IllegalStateException exception = assertThrows(IllegalStateException.class,
+                    () -> ServerExecutorMode.VIRTUAL.apply(InProcessServerBuilder.forName("virtual"), 2));
+            assertTrue(exception.getMessage().startsWith("Virtual threads"), exception.getMessage());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ServerExecutorMode.class, names = {"FIXED", "DIRECT"})
+    void servesGetFeature(ServerExecutorMode mode) throws Exception {
+        Point point = Point.newBuilder().setLatitude(1).setLongitude(2).build();
+        Feature feature = Feature.newBuilder().setName("f").setLocation(point).build();
+        String name = InProcessServerBuilder.generateName();
+        RouteGuideServerRunner server = new RouteGuideServerRunner(InProcessServerBuilder.forName(name), 0,
+                List.of(feature), RouteGuideConfig.builder().serverExecutor(mode).serverExecutorThreads(2).build());
+        server.start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).build();
+        try {
+            assertEquals(feature, RouteGuideGrpc.newBlockingStub(channel).getFeature(point));
+        } finally {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            server.stop();
+        }
+    }
+}
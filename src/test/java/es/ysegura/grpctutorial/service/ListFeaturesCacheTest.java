@@ -0,0 +1,110 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.store.FeatureStore;
+import es.ysegura.grpctutorial.store.InMemoryFeatureStore;
+import es.ysegura.grpctutorial.store.SpatialIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ListFeaturesCacheTest {
+
+    // Una feature en cada punto (i, i) de 1 a 10, todas del mismo tamaño serializadas
+    private final List<Feature> features = features(10);
+    private final FeatureStore store = new InMemoryFeatureStore(features);
+
+    @Test
+    void weighsEntriesByTheirSerializedFeatures() {
+        ListFeaturesCache cache = new ListFeaturesCache(1024 * 1024);
+
+        ListFeaturesCache.Result result = get(cache, store, 1, 3);
+
+        assertEquals(3, result.features().length);
+        SpatialIndex.Cursor ids = store.getSpatialIndex().query(1, 3, 3, 1);
+        for (int i = 0; i < result.features().length; i++) {
+            assertEquals(ids.position(), result.positions()[i]);
+            assertArrayEquals(store.getFeature(ids.nextInt()).toByteArray(), result.features()[i]);
+        }
+        assertEquals(weight(3), cache.size());
+        assertEquals(1, cache.entryCount());
+        assertSame(result, get(cache, store, 1, 3));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedArea() {
+        // Ninguna entrada puede pasar de un octavo del límite: caben justo ocho zonas de un punto
+        ListFeaturesCache cache = new ListFeaturesCache(8 * weight(1));
+        for (int i = 1; i <= 8; i++) {
+            get(cache, store, i, i);
+        }
+        // Usar la primera la deja como la más reciente, así que sale la segunda
+        get(cache, store, 1, 1);
+        get(cache, store, 9, 9);
+
+        assertEquals(1, cache.evictionCount());
+        assertEquals(8, cache.entryCount());
+        assertEquals(8 * weight(1), cache.size());
+        get(cache, store, 1, 1);
+        assertEquals(2, cache.hitCount());
+        get(cache, store, 2, 2);
+        assertEquals(10, cache.missCount());
+    }
+
+    @Test
+    void skipsAreasLargerThanAnEighthOfTheBound() {
+        ListFeaturesCache cache = new ListFeaturesCache(8 * weight(2));
+
+        assertNotNull(get(cache, store, 1, 2));
+        assertNull(get(cache, store, 1, 3));
+        assertNull(get(cache, store, 1, 3));
+
+        assertEquals(2, cache.missCount());
+        assertEquals(1, cache.skippedCount());
+        assertEquals(1, cache.entryCount());
+        assertEquals(weight(2), cache.size());
+    }
+
+    @Test
+    void dropsEverythingWhenTheStoreChanges() {
+        ListFeaturesCache cache = new ListFeaturesCache(1024 * 1024);
+        get(cache, store, 1, 10);
+
+        FeatureStore reloaded = new InMemoryFeatureStore(features(3));
+        ListFeaturesCache.Result result = get(cache, reloaded, 1, 10);
+
+        assertEquals(3, result.features().length);
+        assertEquals(2, cache.missCount());
+        assertEquals(1, cache.entryCount());
+        assertEquals(weight(3), cache.size());
+    }
+
+    // Zona cuadrada de (from, from) a (to, to)
+    private static ListFeaturesCache.Result get(ListFeaturesCache cache, FeatureStore store, int from, int to) {
+        return cache.get(store, from, to, to, from);
+    }
+
+    // Mismo cálculo que la caché: 128 bytes por entrada y 20 más los propios bytes por feature
+    private long weight(int count) {
+        return 128 + count * (features.get(0).getSerializedSize() + 20L);
+    }
+
+    private static List<Feature> features(int count) {
+        List<Feature> features = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            features.add(Feature.newBuilder().setName("f" + i % 10)
+                    .setLocation(Point.newBuilder().setLatitude(i).setLongitude(i)).build());
+        }
+        return features;
+    }
+}
@@ -0,0 +1,73 @@
+package es.ysegura.grpctutorial.service;
+
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+import es.ysegura.grpctutorial.store.FeatureStore;
+import es.ysegura.grpctutorial.store.InMemoryFeatureStore;
+import io.grpc.Drainable;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SerializedFeaturesTest {
+
+    // Trozos de 32 bytes para que las features crucen muchas fronteras
+    private static final int CHUNK_BITS = 5;
+
+    @Test
+    void keepsEveryFeatureWholeAcrossChunkBoundaries() throws Exception {
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // Tamaños de unos pocos bytes hasta casi un trozo entero
+            features.add(feature("n".repeat(i % 12), i, -i));
+        }
+        // Una feature que llena un trozo exacto
+        Feature exact = feature("", 0, 0);
+        exact = feature("x".repeat(32 - exact.getSerializedSize() - 2), 0, 0);
+        assertEquals(32, exact.getSerializedSize());
+        features.add(exact);
+        features.add(exact);
+        FeatureStore store = new InMemoryFeatureStore(features);
+
+        SerializedFeatures serialized = SerializedFeatures.of(store, CHUNK_BITS);
+
+        long total = features.stream().mapToLong(Feature::getSerializedSize).sum();
+        assertTrue(serialized.chunkCount() > total / 32);
+        for (int id = 0; id < store.size(); id++) {
+            byte[] expected = store.getFeature(id).toByteArray();
+            assertArrayEquals(expected, serialized.stream(id).readAllBytes());
+            // gRPC escribe el trozo de una vez a través de Drainable
+            ByteArrayOutputStream drained = new ByteArrayOutputStream();
+            InputStream stream = serialized.stream(id);
+            assertEquals(expected.length, stream.available());
+            assertEquals(expected.length, ((Drainable) stream).drainTo(drained));
+            assertArrayEquals(expected, drained.toByteArray());
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    void rejectsFeaturesLargerThanAChunk() {
+        FeatureStore store = new InMemoryFeatureStore(List.of(feature("x".repeat(40), 1, 1)));
+
+        assertThrows(IllegalArgumentException.class, () -> SerializedFeatures.of(store, CHUNK_BITS));
+    }
+
+    @Test
+    void handlesEmptyStore() {
+        assertEquals(1, SerializedFeatures.of(new InMemoryFeatureStore(List.of()), CHUNK_BITS).chunkCount());
+    }
+
+    private static Feature feature(String name, int lat, int lon) {
+        return Feature.newBuilder().setName(name)
+                .setLocation(Point.newBuilder().setLatitude(lat).setLongitude(lon)).build();
+    }
+}
@@ -0,0 +1,104 @@
+package es.ysegura.grpctutorial.store;
+
+import com.google.protobuf.util.JsonFormat;
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.FeatureDatabase;
+import es.ysegura.grpctutorial.protobuff.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeatureLoaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void parsesTheSameFeaturesAsJsonFormat() throws Exception {
+        FeatureDatabase.Builder expected = FeatureDatabase.newBuilder();
+        try (Reader reader = new InputStreamReader(RouteGuideUtil.getDefaultFeaturesFile().openStream(), StandardCharsets.UTF_8)) {
+            JsonFormat.parser().merge(reader, expected);
+        }
+
+        assertEquals(expected.getFeatureList(), FeatureLoader.load(RouteGuideUtil.getDefaultFeaturesFile()));
+    }
+
+    @Test
+    void keepsOrderAcrossChunks() throws Exception {
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < FeatureLoader.CHUNK_SIZE * 2 + 5; i++) {
+            features.add(feature("f" + i, i, -i));
+        }
+        String json = JsonFormat.printer().print(FeatureDatabase.newBuilder().addAllFeature(features));
+
+        assertEquals(features, FeatureLoader.parseJson(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void writesAndReadsSnapshots() throws Exception {
+        List<Feature> features = List.of(feature("ñandú", 1, 2), feature("", -3, 4), feature("x", 0, 0));
+        Path snapshot = directory.resolve("features.bin");
+
+        URL json = writeJson(features);
+        assertEquals(features, FeatureLoader.load(json, snapshot));
+        assertTrue(Files.exists(snapshot));
+        FileTime written = Files.getLastModifiedTime(snapshot);
+        // Mientras el JSON no cambia, el snapshot no se vuelve a escribir
+        Files.setLastModifiedTime(snapshot, FileTime.fromMillis(written.toMillis() - 60_000));
+        written = Files.getLastModifiedTime(snapshot);
+        assertEquals(features, FeatureLoader.load(json, snapshot));
+        assertEquals(written, Files.getLastModifiedTime(snapshot));
+        assertEquals(features, FeatureLoader.load(snapshot.toUri().toURL()));
+    }
+
+    @Test
+    void rebuildsSnapshotsWhenTheJsonChanges() throws Exception {
+        List<Feature> features = List.of(feature("a", 1, 2), feature("b", 3, 4));
+        List<Feature> changed = List.of(feature("c", 5, 6));
+        Path snapshot = directory.resolve("features.bin");
+        Path json = directory.resolve("features.json");
+
+        assertEquals(features, FeatureLoader.load(writeJson(json, features), snapshot));
+        assertEquals(changed, FeatureLoader.load(writeJson(json, changed), snapshot));
+        assertEquals(changed, FeatureLoader.load(snapshot.toUri().toURL()));
+        // Un snapshot escrito desde features en memoria nunca se da por actual
+        FeatureSnapshot.write(features, snapshot);
+        assertEquals(changed, FeatureLoader.load(json.toUri().toURL(), snapshot));
+        // Tampoco uno de la versión 1, sin SourceStamp, que ya no se puede leer
+        byte[] versionOne = {'R', 'G', 'F', 'S', 1, 0, 0, 0, 0, 0, 0, 0};
+        assertThrows(IOException.class, () -> FeatureSnapshot.read(new ByteArrayInputStream(versionOne)));
+        Files.write(snapshot, versionOne);
+        assertEquals(changed, FeatureLoader.load(json.toUri().toURL(), snapshot));
+        assertEquals(changed, FeatureLoader.load(snapshot.toUri().toURL()));
+    }
+
+    private URL writeJson(List<Feature> features) throws Exception {
+        return writeJson(Files.createTempFile(directory, "features", ".json"), features);
+    }
+
+    private URL writeJson(Path json, List<Feature> features) throws Exception {
+        Files.writeString(json, JsonFormat.printer().print(FeatureDatabase.newBuilder().addAllFeature(features)));
+        return json.toUri().toURL();
+    }
+
+    private static Feature feature(String name, int lat, int lon) {
+        return Feature.newBuilder().setName(name)
+                .setLocation(Point.newBuilder().setLatitude(lat).setLongitude(lon)).build();
+    }
+}
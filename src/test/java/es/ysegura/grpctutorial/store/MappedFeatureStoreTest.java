@@ -0,0 +1,97 @@
+package es.ysegura.grpctutorial.store;
+
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks that {@link MappedFeatureStore} answers exactly like {@link InMemoryFeatureStore}.
+ */
+class MappedFeatureStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void matchesHeapStoreOnDefaultDatabase() throws Exception {
+        List<Feature> features = RouteGuideUtil.parseFeatures(RouteGuideUtil.getDefaultFeaturesFile());
+
+        assertSameStore(features, 400000000, -750000000, 420000000, -730000000);
+    }
+
+    @Test
+    void matchesHeapStoreWithDuplicatesAndNegativeCoordinates() throws Exception {
+        Random random = new Random(7);
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            // Pocos puntos distintos para que haya repetidos, y un nombre multibyte de vez en cuando
+            int lat = (random.nextInt(200) - 100) * 1_000_000;
+            int lon = (random.nextInt(200) - 100) * 1_000_000;
+            String name = i % 7 == 0 ? "" : i % 5 == 0 ? "Peñíscola " + i : "feature " + i;
+            features.add(Feature.newBuilder().setName(name)
+                    .setLocation(Point.newBuilder().setLatitude(lat).setLongitude(lon)).build());
+        }
+
+        assertSameStore(features, -50_000_000, -50_000_000, 50_000_000, 50_000_000);
+    }
+
+    @Test
+    void handlesEmptyStore() throws Exception {
+        assertSameStore(List.of(), -1, -1, 1, 1);
+    }
+
+    @Test
+    void recordsTheSourceFile() throws Exception {
+        Path file = directory.resolve("features.rgfc");
+        SourceStamp source = new SourceStamp(1234, 1_700_000_000_000L);
+        MappedFeatureStore.write(List.of(), file, source);
+        assertEquals(source, MappedFeatureStore.readSource(file));
+        assertEquals(0, MappedFeatureStore.open(file).size());
+
+        MappedFeatureStore.write(List.of(), file);
+        assertEquals(SourceStamp.UNKNOWN, MappedFeatureStore.readSource(file));
+
+        Files.writeString(file, "not a store");
+        assertNull(MappedFeatureStore.readSource(file));
+    }
+
+    private void assertSameStore(List<Feature> features, int bottom, int left, int top, int right) throws Exception {
+        Path file = directory.resolve("features.rgfc");
+        MappedFeatureStore.write(features, file);
+        FeatureStore mapped = MappedFeatureStore.open(file);
+        FeatureStore heap = new InMemoryFeatureStore(features);
+
+        assertEquals(heap.size(), mapped.size());
+        for (int id = 0; id < features.size(); id++) {
+            assertEquals(heap.getFeature(id), mapped.getFeature(id));
+            Point location = features.get(id).getLocation();
+            assertEquals(heap.findFeature(location.getLatitude(), location.getLongitude()),
+                    mapped.findFeature(location.getLatitude(), location.getLongitude()));
+            assertEquals(heap.getFeature(location), mapped.getFeature(location));
+            assertEquals(heap.hasFeature(location), mapped.hasFeature(location));
+        }
+        Point missing = Point.newBuilder().setLatitude(1).setLongitude(-1).build();
+        assertEquals(heap.getFeature(missing), mapped.getFeature(missing));
+        assertEquals(ids(heap.getSpatialIndex().query(left, right, top, bottom)),
+                ids(mapped.getSpatialIndex().query(left, right, top, bottom)));
+    }
+
+    private static List<Integer> ids(PrimitiveIterator.OfInt iterator) {
+        List<Integer> ids = new ArrayList<>();
+        iterator.forEachRemaining((int id) -> ids.add(id));
+        ids.sort(null);
+        return ids;
+    }
+}
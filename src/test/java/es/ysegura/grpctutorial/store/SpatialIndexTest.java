@@ -0,0 +1,180 @@
+package es.ysegura.grpctutorial.store;
+
+import es.ysegura.grpctutorial.RouteGuideUtil;
+import es.ysegura.grpctutorial.protobuff.Feature;
+import es.ysegura.grpctutorial.protobuff.Point;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares every {@link SpatialIndex} against the linear scan that {@code listFeatures} used to do.
+ */
+class SpatialIndexTest {
+
+    private static final Random RANDOM = new Random(42);
+
+    @ParameterizedTest
+    @EnumSource(SpatialIndexType.class)
+    void matchesScanOnDefaultDatabase(SpatialIndexType type) throws IOException {
+        List<Feature> features = RouteGuideUtil.parseFeatures(RouteGuideUtil.getDefaultFeaturesFile());
+        FeatureStore store = new InMemoryFeatureStore(features, type);
+
+        assertSameResults(features, store, 400000000, -750000000, 420000000, -730000000);
+        assertSameResults(features, store, 0, 0, 0, 0);
+        assertSameResults(features, store, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        for (int i = 0; i < 200; i++) {
+            int lat = 400000000 + RANDOM.nextInt(20000000);
+            int lon = -750000000 + RANDOM.nextInt(20000000);
+            assertSameResults(features, store, lat, lon, lat + RANDOM.nextInt(5000000), lon + RANDOM.nextInt(5000000));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpatialIndexType.class)
+    void matchesScanOnRandomFeatures(SpatialIndexType type) {
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            // Algunos puntos repetidos y algunos sin nombre, como en la base de datos real
+            int lat = RANDOM.nextInt(1800) * 1_000_000 - 900_000_000;
+            int lon = RANDOM.nextInt(3600) * 1_000_000 - 1_800_000_000;
+            String name = i % 10 == 0 ? "" : "feature " + i;
+            features.add(feature(name, lat, lon));
+        }
+        FeatureStore store = new InMemoryFeatureStore(features, type);
+
+        for (int i = 0; i < 500; i++) {
+            int lat1 = RANDOM.nextInt(1_800_000_000) - 900_000_000;
+            int lon1 = RANDOM.nextInt(Integer.MAX_VALUE) - 1_800_000_000;
+            int lat2 = lat1 + RANDOM.nextInt(100_000_000) - 50_000_000;
+            int lon2 = lon1 + RANDOM.nextInt(200_000_000) - 100_000_000;
+            assertSameResults(features, store, lat1, lon1, lat2, lon2);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpatialIndexType.class)
+    void resumesFromAnyPosition(SpatialIndexType type) {
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            features.add(feature("feature " + i, RANDOM.nextInt(1000) * 1000, RANDOM.nextInt(1000) * 1000));
+        }
+        SpatialIndex index = new InMemoryFeatureStore(features, type).getSpatialIndex();
+
+        for (int i = 0; i < 20; i++) {
+            int left = RANDOM.nextInt(800_000);
+            int bottom = RANDOM.nextInt(800_000);
+            int right = left + RANDOM.nextInt(200_000);
+            int top = bottom + RANDOM.nextInt(200_000);
+            List<Integer> ids = new ArrayList<>();
+            List<Integer> positions = new ArrayList<>();
+            SpatialIndex.Cursor all = index.query(left, right, top, bottom);
+            while (all.hasNext()) {
+                positions.add(all.position());
+                ids.add(all.nextInt());
+            }
+            for (int k = 0; k < ids.size(); k += 7) {
+                assertEquals(ids.subList(k, ids.size()), ids(index.query(left, right, top, bottom, positions.get(k))));
+                // Una posición entre dos resultados sigue por el siguiente
+                int between = k == 0 ? 0 : positions.get(k - 1) + 1;
+                assertEquals(ids.subList(k, ids.size()), ids(index.query(left, right, top, bottom, between)));
+            }
+            assertEquals(List.of(), ids(index.query(left, right, top, bottom, features.size())));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpatialIndexType.class)
+    void handlesEmptyStore(SpatialIndexType type) {
+        FeatureStore store = new InMemoryFeatureStore(List.of(), type);
+
+        assertSameResults(List.of(), store, -1, -1, 1, 1);
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpatialIndexType.class)
+    void nearestMatchesBruteForce(SpatialIndexType type) {
+        List<Feature> features = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            // Todo el globo, con polos y antimeridiano, y puntos repetidos para probar los empates
+            int lat = RANDOM.nextInt(1800) * 500_000 - 900_000_000;
+            int lon = RANDOM.nextInt(3600) * 1_000_000 - 1_800_000_000;
+            features.add(feature(i % 10 == 0 ? "" : "feature " + i, lat, lon));
+        }
+        FeatureStore store = new InMemoryFeatureStore(features, type);
+
+        for (int i = 0; i < 150; i++) {
+            int lat = RANDOM.nextInt(1_800_000_001) - 900_000_000;
+            int lon = RANDOM.nextInt(Integer.MAX_VALUE) - 1_800_000_000;
+            int k = 1 + RANDOM.nextInt(50);
+            int maxDistance = i % 3 == 0 ? 0 : RANDOM.nextInt(2_000_000);
+            assertEquals(bruteForceNearest(store, lat, lon, k, maxDistance),
+                    Arrays.stream(store.getNearestIndex().nearest(lat, lon, k, maxDistance)).boxed().toList());
+        }
+        assertEquals(List.of(), Arrays.stream(store.getNearestIndex().nearest(0, 0, 0, 0)).boxed().toList());
+        assertEquals(0, new InMemoryFeatureStore(List.of(), type).getNearestIndex().nearest(0, 0, 5, 0).length);
+    }
+
+    private static List<Integer> bruteForceNearest(FeatureStore store, int lat, int lon, int k, int maxDistance) {
+        return IntStream.range(0, store.size())
+                .filter(store::isNamed)
+                .boxed()
+                .filter(id -> maxDistance == 0 || distance(store, id, lat, lon) <= maxDistance)
+                .sorted(Comparator.<Integer>comparingInt(id -> distance(store, id, lat, lon)).thenComparing(id -> id))
+                .limit(k)
+                .toList();
+    }
+
+    private static int distance(FeatureStore store, int id, int lat, int lon) {
+        return RouteGuideUtil.calcDistance(lat, lon, store.getLatitude(id), store.getLongitude(id));
+    }
+
+    private static void assertSameResults(List<Feature> features, FeatureStore store, int lat1, int lon1, int lat2, int lon2) {
+        int left = Math.min(lon1, lon2);
+        int right = Math.max(lon1, lon2);
+        int top = Math.max(lat1, lat2);
+        int bottom = Math.min(lat1, lat2);
+
+        List<Feature> expected = features.stream()
+                .filter(RouteGuideUtil::exists)
+                .filter(feature -> feature.getLocation().getLongitude() >= left
+                        && feature.getLocation().getLongitude() <= right
+                        && feature.getLocation().getLatitude() >= bottom
+                        && feature.getLocation().getLatitude() <= top)
+                .collect(Collectors.toList());
+
+        List<Feature> actual = new ArrayList<>();
+        PrimitiveIterator.OfInt ids = store.getSpatialIndex().query(left, right, top, bottom);
+        ids.forEachRemaining((int id) -> actual.add(store.getFeature(id)));
+
+        assertEquals(sorted(expected), sorted(actual));
+    }
+
+    private static List<Integer> ids(PrimitiveIterator.OfInt ids) {
+        List<Integer> result = new ArrayList<>();
+        ids.forEachRemaining((int id) -> result.add(id));
+        return result;
+    }
+
+    private static List<String> sorted(List<Feature> features) {
+        return features.stream().map(Feature::toString).sorted().collect(Collectors.toList());
+    }
+
+    private static Feature feature(String name, int lat, int lon) {
+        return Feature.newBuilder()
+                .setName(name)
+                .setLocation(Point.newBuilder().setLatitude(lat).setLongitude(lon).build())
+                .build();
+    }
+}